@@ -0,0 +1,179 @@
+package org.dinigine.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.lang.Validate;
+
+/**
+ * Mixes any number of {@link Voice}s into one output stream in software, so
+ * a single OpenAL source can play them all. Every voice is resampled to the
+ * mixer's rate and converted to its channel count, then summed into a bus of
+ * {@link #getBlockSize()} frames per channel. Output latency is therefore one
+ * block, plus whatever the output queues.
+ * <p>
+ * {@link #play(Voice)} may be called from any thread; mixing happens on one.
+ */
+public class Mixer {
+
+	public static final int DEFAULT_BLOCK_SIZE = 512;
+
+	private final int sampleRate;
+	private final int channels;
+	private final int blockSize;
+
+	private final ConcurrentLinkedQueue<Voice> pending = new ConcurrentLinkedQueue<>();
+	private final List<Voice> voices = new ArrayList<>();
+
+	/** The mix, one array per channel */
+	private final float[][] bus;
+	/** A voice's resampled frames, for up to 8 channels */
+	private final float[][] voiceOut;
+	private float[] window;
+	private short[] pcm;
+
+	private volatile float gain = 1;
+	private long framesMixed;
+
+	public Mixer(int sampleRate, int channels) {
+		this(sampleRate, channels, DEFAULT_BLOCK_SIZE);
+	}
+
+	public Mixer(int sampleRate, int channels, int blockSize) {
+		Validate.isTrue(sampleRate > 0, "Invalid sample rate: %d", sampleRate);
+		Validate.isTrue(channels == 1 || channels == 2, "Only mono or stereo output is supported");
+		Validate.isTrue(blockSize > 0, "Invalid block size: %d", blockSize);
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+		this.blockSize = blockSize;
+		this.bus = new float[channels][blockSize];
+		this.voiceOut = new float[8][blockSize];
+	}
+
+	/**
+	 * Starts mixing a voice from the next block.
+	 */
+	public void play(Voice voice) {
+		Validate.isTrue(voice.getChannels() <= voiceOut.length, "Too many channels: %d", voice.getChannels());
+		pending.add(voice);
+	}
+
+	/**
+	 * Mixes the next block.
+	 *
+	 * @return the mix, one array of {@link #getBlockSize()} frames per
+	 *         channel, valid until the next call
+	 */
+	public float[][] mix() {
+		for (Voice v; (v = pending.poll()) != null;) {
+			voices.add(v);
+		}
+		for (float[] channel : bus) {
+			Arrays.fill(channel, 0);
+		}
+
+		final float master = gain;
+		for (int i = 0; i < voices.size(); i++) {
+			Voice voice = voices.get(i);
+			if (voice.isStopped()) {
+				voices.remove(i--);
+				continue;
+			}
+
+			double step = (double) voice.sampleRate * voice.getPitch() / sampleRate;
+			window = voice.render(voiceOut, blockSize, step, window);
+			accumulate(voice.getChannels(), voice.getGain() * master);
+		}
+		framesMixed += blockSize;
+		return bus;
+	}
+
+	/**
+	 * Adds a rendered voice to the bus, converting its channels.
+	 */
+	private void accumulate(int inputs, float gain) {
+		if (inputs == channels) {
+			for (int c = 0; c < channels; c++) {
+				Resampler.mix(voiceOut[c], gain, bus[c], blockSize);
+			}
+		} else if (inputs == 1) {
+			for (int c = 0; c < channels; c++) {
+				Resampler.mix(voiceOut[0], gain, bus[c], blockSize);
+			}
+		} else if (channels == 1 && inputs == 2) {
+			Resampler.mix(voiceOut[0], voiceOut[1], gain * 0.5f, bus[0], blockSize);
+		} else {
+			// fold extra channels onto the outputs, averaging them
+			for (int c = 0; c < inputs; c++) {
+				int folded = (inputs + channels - 1 - c % channels) / channels;
+				Resampler.mix(voiceOut[c], gain / folded, bus[c % channels], blockSize);
+			}
+		}
+	}
+
+	/**
+	 * Mixes the next block as interleaved 16 bit samples, in the buffer's
+	 * byte order, ready for {@code alBufferData}.
+	 */
+	public void mix(ByteBuffer out) {
+		mix(out.asShortBuffer());
+		out.position(out.position() + ((blockSize * channels) << 1));
+	}
+
+	public void mix(ShortBuffer out) {
+		mix();
+		if (pcm == null) pcm = new short[blockSize * channels];
+		Resampler.toPCM16(bus, pcm, blockSize);
+		out.put(pcm);
+	}
+
+	/**
+	 * Renders offline, without a device: mixes blocks until at least
+	 * {@code frames} have been written.
+	 */
+	public void render(WavWriter out, int frames) throws IOException {
+		Validate.isTrue(out.getChannels() == channels && out.getSampleRate() == sampleRate,
+				"WAV format doesn't match the mixer");
+		for (int done = 0; done < frames; done += blockSize) {
+			mix();
+			out.write(bus, blockSize);
+		}
+	}
+
+	public void setGain(float gain) {
+		this.gain = gain;
+	}
+
+	public float getGain() {
+		return gain;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public int getChannels() {
+		return channels;
+	}
+
+	public int getBlockSize() {
+		return blockSize;
+	}
+
+	/**
+	 * @return voices mixed in the last block
+	 */
+	public int getVoiceCount() {
+		return voices.size();
+	}
+
+	public long getFramesMixed() {
+		return framesMixed;
+	}
+
+}
@@ -0,0 +1,83 @@
+package org.dinigine.audio;
+
+/**
+ * Resampling and mixing kernels over plain float arrays. Each loop reads
+ * from a window of contiguous source samples, so there are no bounds or
+ * wrap checks per sample.
+ */
+public final class Resampler {
+
+	/** Static only */
+	private Resampler() {}
+
+	/**
+	 * Linear interpolation of {@code count} samples, the first at
+	 * {@code position} in {@code src}, then every {@code step}. Reads up to
+	 * {@code floor(position + (count - 1) * step) + 1}.
+	 */
+	public static void linear(float[] src, double position, double step, float[] dst, int count) {
+		for (int i = 0; i < count; i++) {
+			double p = position + i * step;
+			int k = (int) p;
+			float f = (float) (p - k);
+			float a = src[k];
+			dst[i] = a + f * (src[k + 1] - a);
+		}
+	}
+
+	/**
+	 * Windowed sinc interpolation, like {@link #linear}. Reads from
+	 * {@code floor(position) - TAPS / 2 + 1} to
+	 * {@code floor(position + (count - 1) * step) + TAPS / 2}, relative to
+	 * {@code offset}, which must leave room for the first taps.
+	 */
+	static void sinc(SincTable table, float[] src, int offset, double position, double step, float[] dst,
+			int count) {
+		final float[] weights = table.weights;
+		final int taps = SincTable.TAPS, phases = SincTable.PHASES;
+		for (int i = 0; i < count; i++) {
+			double p = position + i * step;
+			int k = (int) p;
+			int phase = (int) ((p - k) * phases + 0.5);
+			int s = offset + k - (taps / 2 - 1), w = phase * taps;
+			float sum = 0;
+			for (int t = 0; t < taps; t++) {
+				sum += src[s + t] * weights[w + t];
+			}
+			dst[i] = sum;
+		}
+	}
+
+	/**
+	 * {@code dst[i] += src[i] * gain}
+	 */
+	public static void mix(float[] src, float gain, float[] dst, int count) {
+		for (int i = 0; i < count; i++) {
+			dst[i] += src[i] * gain;
+		}
+	}
+
+	/**
+	 * {@code dst[i] += (a[i] + b[i]) * gain}, for folding stereo to mono
+	 */
+	public static void mix(float[] a, float[] b, float gain, float[] dst, int count) {
+		for (int i = 0; i < count; i++) {
+			dst[i] += (a[i] + b[i]) * gain;
+		}
+	}
+
+	/**
+	 * Interleaves channels into clamped 16 bit samples.
+	 */
+	public static void toPCM16(float[][] channels, short[] dst, int count) {
+		final int n = channels.length;
+		for (int c = 0; c < n; c++) {
+			final float[] src = channels[c];
+			for (int i = 0, j = c; i < count; i++, j += n) {
+				float v = src[i] * 32767f;
+				dst[j] = (short) (v > 32767f ? 32767 : v < -32768f ? -32768 : v);
+			}
+		}
+	}
+
+}
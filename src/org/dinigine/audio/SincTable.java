@@ -0,0 +1,61 @@
+package org.dinigine.audio;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Windowed sinc filter kernels for fractional positions, one row of
+ * {@link #TAPS} weights for each of {@link #PHASES} positions between two
+ * samples. The cutoff drops below the source's Nyquist frequency when
+ * downsampling, to keep it from aliasing.
+ */
+final class SincTable {
+
+	static final int TAPS = 16;
+	static final int PHASES = 256;
+
+	/** Cutoffs are rounded so similar rates share a table */
+	private static final int CUTOFF_STEPS = 64;
+	private static final ConcurrentMap<Integer, SincTable> TABLES = new ConcurrentHashMap<>();
+
+	/** Weights by phase then tap, for samples {@code -TAPS/2 + 1} to {@code TAPS/2} */
+	final float[] weights;
+
+	private SincTable(double cutoff) {
+		weights = new float[(PHASES + 1) * TAPS];
+		for (int p = 0; p <= PHASES; p++) {
+			double frac = (double) p / PHASES;
+			double sum = 0;
+			for (int t = 0; t < TAPS; t++) {
+				double x = t - (TAPS / 2 - 1) - frac;
+				double sinc = x == 0 ? 1 : Math.sin(Math.PI * cutoff * x) / (Math.PI * cutoff * x);
+				// Blackman window over the kernel's span
+				double w = (x + TAPS / 2.0) / TAPS;
+				double window = 0.42 - 0.5 * Math.cos(2 * Math.PI * w) + 0.08 * Math.cos(4 * Math.PI * w);
+				double v = cutoff * sinc * Math.max(0, window);
+				weights[p * TAPS + t] = (float) v;
+				sum += v;
+			}
+			// unity gain at DC
+			for (int t = 0; t < TAPS; t++) {
+				weights[p * TAPS + t] /= sum;
+			}
+		}
+	}
+
+	/**
+	 * @param step
+	 *            - source frames per output frame
+	 */
+	static SincTable forStep(double step) {
+		double cutoff = step <= 1 ? 1 : 1 / step;
+		int key = (int) Math.round(cutoff * CUTOFF_STEPS);
+		SincTable table = TABLES.get(key);
+		if (table == null) {
+			table = new SincTable(Math.max(1, key) / (double) CUTOFF_STEPS);
+			TABLES.putIfAbsent(key, table);
+		}
+		return table;
+	}
+
+}
@@ -0,0 +1,224 @@
+package org.dinigine.audio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.apache.lang.Validate;
+import org.dinigine.decoder.AudioDecoder;
+
+/**
+ * One sound playing on a {@link Mixer}: a clip of float samples, one array
+ * per channel, with its own rate, gain, pitch and interpolation. Clips can be
+ * shared between any number of voices.
+ */
+public class Voice {
+
+	/** Linear interpolation, cheap but dulls high frequencies */
+	public static final int LINEAR = 0;
+	/** Windowed sinc interpolation */
+	public static final int SINC = 1;
+
+	final float[][] samples;
+	final int sampleRate;
+	final int length;
+
+	private volatile float gain = 1;
+	private volatile float pitch = 1;
+	private volatile boolean looping;
+	private volatile boolean stopped;
+	private volatile int interpolation = LINEAR;
+
+	/** Position in source frames, only touched by the mixing thread */
+	double position;
+
+	public Voice(float[][] samples, int sampleRate) {
+		Validate.isTrue(samples.length > 0, "No channels");
+		Validate.isTrue(sampleRate > 0, "Invalid sample rate: %d", sampleRate);
+		this.samples = samples;
+		this.sampleRate = sampleRate;
+		this.length = samples[0].length;
+		for (float[] channel : samples) {
+			Validate.isTrue(channel.length == length, "Channels differ in length");
+		}
+	}
+
+	/**
+	 * @return a new voice playing the same clip
+	 */
+	public Voice copy() {
+		return new Voice(samples, sampleRate);
+	}
+
+	/**
+	 * Decodes a whole clip to floats in [-1, 1].
+	 */
+	public static Voice decode(AudioDecoder decoder) throws IOException {
+		int channels = decoder.getChannels();
+		int sampleBytes = decoder.is16Bit() ? 2 : 1;
+		ByteBuffer chunk = ByteBuffer.allocate(decoder.getFrameSize() * 4096).order(ByteOrder.LITTLE_ENDIAN);
+
+		float[][] samples = new float[channels][4096];
+		int frames = 0;
+		while (decoder.decode(chunk, chunk.remaining()) >= 0 || chunk.position() > 0) {
+			chunk.flip();
+			int n = chunk.remaining() / decoder.getFrameSize();
+			if (frames + n > samples[0].length) {
+				for (int c = 0; c < channels; c++) {
+					samples[c] = Arrays.copyOf(samples[c], Math.max(frames + n, samples[c].length << 1));
+				}
+			}
+			for (int i = 0; i < n; i++, frames++) {
+				for (int c = 0; c < channels; c++) {
+					samples[c][frames] = sampleBytes == 2 ? chunk.getShort() / 32768f
+							: decoder.isSigned() ? chunk.get() / 128f : ((chunk.get() & 255) - 128) / 128f;
+				}
+			}
+			chunk.clear();
+		}
+
+		for (int c = 0; c < channels; c++) {
+			samples[c] = Arrays.copyOf(samples[c], frames);
+		}
+		return new Voice(samples, decoder.getFrequency());
+	}
+
+	public int getChannels() {
+		return samples.length;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * @return the clip's length in frames
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	public void setGain(float gain) {
+		this.gain = gain;
+	}
+
+	public float getGain() {
+		return gain;
+	}
+
+	/**
+	 * Plays faster and higher above 1, slower and lower below.
+	 */
+	public void setPitch(float pitch) {
+		Validate.isTrue(pitch > 0, "Pitch must be positive");
+		this.pitch = pitch;
+	}
+
+	public float getPitch() {
+		return pitch;
+	}
+
+	public void setLooping(boolean looping) {
+		this.looping = looping;
+	}
+
+	public boolean isLooping() {
+		return looping;
+	}
+
+	/**
+	 * @param interpolation
+	 *            - {@link #LINEAR} or {@link #SINC}
+	 */
+	public void setInterpolation(int interpolation) {
+		Validate.isTrue(interpolation == LINEAR || interpolation == SINC, "Unknown interpolation: %d",
+				interpolation);
+		this.interpolation = interpolation;
+	}
+
+	public int getInterpolation() {
+		return interpolation;
+	}
+
+	/**
+	 * Removes the voice from its mixer at the next block.
+	 */
+	public void stop() {
+		stopped = true;
+	}
+
+	/**
+	 * @return true once stopped or played to the end
+	 */
+	public boolean isStopped() {
+		return stopped;
+	}
+
+	/**
+	 * Renders the next {@code count} frames at {@code step} source frames per
+	 * frame into {@code out}, one array per channel. Frames past the end of a
+	 * clip that doesn't loop are zeroed.
+	 *
+	 * @param window
+	 *            - scratch space from the mixer, grown as needed
+	 * @return the scratch space
+	 */
+	float[] render(float[][] out, int count, double step, float[] window) {
+		int frames = count;
+		if (!looping) {
+			frames = (int) Math.min(count, Math.max(0, Math.ceil((length - position) / step)));
+		}
+
+		if (frames > 0) {
+			boolean sinc = interpolation == SINC;
+			int before = sinc ? SincTable.TAPS / 2 - 1 : 0;
+			int after = sinc ? SincTable.TAPS / 2 : 1;
+			int first = (int) Math.floor(position) - before;
+			int last = (int) Math.floor(position + (frames - 1) * step) + after;
+			int span = last - first + 1;
+			if (window == null || window.length < span) {
+				window = new float[Math.max(span, 1024)];
+			}
+
+			SincTable table = sinc ? SincTable.forStep(step) : null;
+			double start = position - Math.floor(position);
+			for (int c = 0; c < samples.length; c++) {
+				fill(samples[c], first, span, window);
+				if (sinc) Resampler.sinc(table, window, before, start, step, out[c], frames);
+				else Resampler.linear(window, start, step, out[c], frames);
+			}
+
+			position += frames * step;
+			if (looping) position %= length;
+		}
+
+		for (int c = 0; c < samples.length; c++) {
+			Arrays.fill(out[c], frames, count, 0);
+		}
+		if (frames < count) stopped = true;
+		return window;
+	}
+
+	/**
+	 * Copies source frames {@code first} to {@code first + span} into the
+	 * window, wrapping around for looping clips and zero outside others.
+	 */
+	private void fill(float[] src, int first, int span, float[] window) {
+		if (first >= 0 && first + span <= length) {
+			System.arraycopy(src, first, window, 0, span);
+			return;
+		}
+		for (int i = 0; i < span; i++) {
+			int k = first + i;
+			if (looping) {
+				k %= length;
+				if (k < 0) k += length;
+				window[i] = src[k];
+			} else {
+				window[i] = k >= 0 && k < length ? src[k] : 0;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+package org.dinigine.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes 16 bit PCM WAV files, for rendering a {@link Mixer} offline. The
+ * header's sizes are filled in on {@link #close()}.
+ */
+public class WavWriter implements AutoCloseable {
+
+	private static final int HEADER_SIZE = 44;
+
+	private final RandomAccessFile file;
+	private final int sampleRate;
+	private final int channels;
+	private short[] pcm = new short[0];
+	private byte[] bytes = new byte[0];
+	private long frames;
+
+	public WavWriter(File file, int sampleRate, int channels) throws IOException {
+		this.file = new RandomAccessFile(file, "rw");
+		this.file.setLength(0);
+		this.file.write(new byte[HEADER_SIZE]);
+		this.sampleRate = sampleRate;
+		this.channels = channels;
+	}
+
+	/**
+	 * Writes {@code count} frames, one array per channel.
+	 */
+	public void write(float[][] samples, int count) throws IOException {
+		int n = count * channels;
+		if (pcm.length < n) {
+			pcm = new short[n];
+			bytes = new byte[n << 1];
+		}
+		Resampler.toPCM16(samples, pcm, count);
+		ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(pcm, 0, n);
+		file.write(bytes, 0, n << 1);
+		frames += count;
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public int getChannels() {
+		return channels;
+	}
+
+	public long getFrames() {
+		return frames;
+	}
+
+	@Override
+	public void close() throws IOException {
+		int data = (int) (frames * channels * 2);
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(0x46464952); // RIFF
+		header.putInt(36 + data);
+		header.putInt(0x45564157); // WAVE
+		header.putInt(0x20746D66); // fmt
+		header.putInt(16);
+		header.putShort((short) 1); // PCM
+		header.putShort((short) channels);
+		header.putInt(sampleRate);
+		header.putInt(sampleRate * channels * 2);
+		header.putShort((short) (channels * 2));
+		header.putShort((short) 16);
+		header.putInt(0x61746164); // data
+		header.putInt(data);
+		file.seek(0);
+		file.write(header.array());
+		file.close();
+	}
+
+}
@@ -5,7 +5,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.nio.ShortBuffer;
 
 import javax.sound.sampled.AudioFormat;
 import javax.sound.sampled.AudioInputStream;
@@ -19,6 +18,8 @@ import org.lwjgl.openal.AL10;
  */
 public class AudioDecoder {
 
+	private static final int MAX_CHUNK = 16 << 10;
+
 	private AudioInputStream in;
 
 	private ByteOrder byteOrder;
@@ -29,6 +30,11 @@ public class AudioDecoder {
 	private int datalen;
 	private int openal;
 	private boolean is16bit;
+	private boolean signed;
+	private boolean finished;
+
+	/** Reused between chunks */
+	private byte[] chunk;
 
 	public AudioDecoder(InputStream res) throws IOException {
 		try {
@@ -41,7 +47,7 @@ public class AudioDecoder {
 		
 		datalen = in.available();
 		if (datalen <= 0) {
-			datalen = framelen * channels * (is16bit ? 2 : 1);
+			datalen = framelen * getFrameSize();
 		}
 	}
 	
@@ -53,33 +59,104 @@ public class AudioDecoder {
 		return freq;
 	}
 
+	public int getChannels() {
+		return channels;
+	}
+
+	public boolean is16Bit() {
+		return is16bit;
+	}
+
+	/**
+	 * @return true if samples are signed, as 16 bit samples always are
+	 */
+	public boolean isSigned() {
+		return signed;
+	}
+
+	/**
+	 * @return bytes per sample frame, one sample for each channel
+	 */
+	public int getFrameSize() {
+		return channels * (is16bit ? 2 : 1);
+	}
+
 	public int getSuggestedCapacity() {
 		return datalen;
 	}
+
+	/**
+	 * @return true once the stream has been decoded to the end
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
 	
 	public void decode(ByteBuffer buffer) throws IOException {
-		byte[] data = new byte[datalen];
-		int read = 0, total = 0;
-		while ((read = in.read(data, total, datalen - total)) != -1 && total < datalen) {
-			total += read;
+		int limit = buffer.limit();
+		buffer.limit(Math.min(limit, buffer.position() + datalen));
+		try {
+			while (buffer.remaining() >= getFrameSize() && decode(buffer, buffer.remaining()) > 0);
+		} finally {
+			buffer.limit(limit);
 		}
-		
-		if (buffer.order().equals(byteOrder)) buffer.put(data);
-		else {
-			ByteBuffer src = ByteBuffer.wrap(data).order(byteOrder);
-			if (is16bit) {
-				ShortBuffer dest_short = buffer.asShortBuffer();
-				ShortBuffer src_short = src.asShortBuffer();
-				while (src_short.hasRemaining()) {
-					dest_short.put(src_short.get());
-				}
-			} else {
-				while (src.hasRemaining()) {
-					buffer.put(src.get());
+	}
+
+	/**
+	 * Decodes the next chunk of whole frames, up to {@code maxBytes} and what
+	 * {@code buffer} has room for, in the buffer's byte order. Reads go through
+	 * one reusable array, so memory doesn't depend on the clip's length.
+	 *
+	 * @return the bytes decoded, or -1 at the end of the stream
+	 */
+	public int decode(ByteBuffer buffer, int maxBytes) throws IOException {
+		if (finished) return -1;
+		int frame = getFrameSize();
+		int want = Math.min(maxBytes, buffer.remaining());
+		want -= want % frame;
+		if (want <= 0) return 0;
+		if (chunk == null || chunk.length < Math.min(want, MAX_CHUNK)) {
+			chunk = new byte[Math.min(want, MAX_CHUNK - MAX_CHUNK % frame)];
+		}
+
+		int total = 0;
+		while (total < want) {
+			int size = Math.min(want - total, chunk.length);
+			int filled = 0;
+			while (filled < size) {
+				int read = in.read(chunk, filled, size - filled);
+				if (read < 0) {
+					finished = true;
+					break;
 				}
+				filled += read;
 			}
+			filled -= filled % frame;
+
+			if (is16bit && !buffer.order().equals(byteOrder)) {
+				swap16(chunk, filled);
+			}
+			buffer.put(chunk, 0, filled);
+			total += filled;
+			if (finished) break;
+		}
+		return total == 0 && finished ? -1 : total;
+	}
+
+	/**
+	 * Swaps the bytes of each 16 bit sample in place.
+	 */
+	private static void swap16(byte[] data, int length) {
+		for (int i = 0; i + 1 < length; i += 2) {
+			byte t = data[i];
+			data[i] = data[i + 1];
+			data[i + 1] = t;
 		}
 	}
+
+	public void close() throws IOException {
+		in.close();
+	}
 	
 	private void readAudioFormat() throws IOException {
 		AudioFormat format = in.getFormat();
@@ -89,6 +166,7 @@ public class AudioDecoder {
 		freq = (int) format.getSampleRate();
 		framelen = (int) in.getFrameLength();
 		is16bit = samplesize == 16;
+		signed = format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED;
 		
 		if (!is16bit && samplesize != 8) {
 			throw new IOException("Sample size was " + samplesize + "-bit, must be 8-bit or 16-bit");
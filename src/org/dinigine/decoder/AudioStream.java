@@ -0,0 +1,134 @@
+package org.dinigine.decoder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+
+import org.dinigine.util.Buffers;
+
+/**
+ * Streams a clip through a fixed set of reusable chunks, for queueing on an
+ * OpenAL source a few buffers at a time. Memory is {@code chunks * chunkSize}
+ * however long the clip is.
+ *
+ * <pre>
+ * AudioStream music = new AudioStream(() -&gt; new FileInputStream("theme.wav"), 32 &lt;&lt; 10, 3);
+ * for (ByteBuffer chunk; (chunk = music.next()) != null;) {
+ * 	AL10.alBufferData(buffer, music.getOpenALFormat(), chunk, music.getFrequency());
+ * 	...
+ * }
+ * </pre>
+ */
+public class AudioStream implements AutoCloseable {
+
+	private final Callable<? extends InputStream> source;
+	private final ByteBuffer[] chunks;
+	private AudioDecoder decoder;
+	private int next;
+	private boolean looping;
+	private long decodedBytes;
+
+	/**
+	 * @param chunkSize
+	 *            - bytes per chunk, rounded down to whole frames
+	 * @param chunks
+	 *            - how many chunks to cycle through, which must be at least
+	 *            the number of buffers queued at once
+	 */
+	public AudioStream(Callable<? extends InputStream> source, int chunkSize, int chunks) throws IOException {
+		if (chunks < 1) throw new IllegalArgumentException("Need at least one chunk");
+		this.source = source;
+		this.decoder = open();
+
+		int frame = decoder.getFrameSize();
+		int size = chunkSize - chunkSize % frame;
+		if (size <= 0) throw new IllegalArgumentException("Chunks must hold at least one frame");
+		this.chunks = new ByteBuffer[chunks];
+		for (int i = 0; i < chunks; i++) {
+			this.chunks[i] = Buffers.newByteBuffer(size);
+		}
+	}
+
+	private AudioDecoder open() throws IOException {
+		try {
+			return new AudioDecoder(source.call());
+		} catch (IOException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException("Couldn't open audio stream", e);
+		}
+	}
+
+	/**
+	 * Decodes the next chunk. The buffer returned is reused
+	 * {@link #getChunkCount()} calls later, so it must be consumed by then.
+	 *
+	 * @return the chunk, ready to read, or null at the end of a clip that
+	 *         isn't looping
+	 */
+	public ByteBuffer next() throws IOException {
+		ByteBuffer chunk = chunks[next];
+		chunk.clear();
+		boolean restarted = false;
+		while (chunk.hasRemaining()) {
+			int read = decoder.decode(chunk, chunk.remaining());
+			if (read > 0) {
+				restarted = false;
+			} else if (read < 0) {
+				// an empty clip would loop forever
+				if (!looping || restarted) break;
+				decoder.close();
+				decoder = open();
+				restarted = true;
+			}
+		}
+		chunk.flip();
+		if (!chunk.hasRemaining()) return null;
+
+		decodedBytes += chunk.remaining();
+		next = (next + 1) % chunks.length;
+		return chunk;
+	}
+
+	/**
+	 * Restarts from the beginning of the clip when it ends, reopening the
+	 * source.
+	 */
+	public void setLooping(boolean looping) {
+		this.looping = looping;
+	}
+
+	public boolean isLooping() {
+		return looping;
+	}
+
+	public int getOpenALFormat() {
+		return decoder.getOpenALFormat();
+	}
+
+	public int getFrequency() {
+		return decoder.getFrequency();
+	}
+
+	public int getChunkCount() {
+		return chunks.length;
+	}
+
+	public int getChunkSize() {
+		return chunks[0].capacity();
+	}
+
+	/**
+	 * @return bytes handed out by {@link #next()} so far
+	 */
+	public long getDecodedBytes() {
+		return decodedBytes;
+	}
+
+	@Override
+	public void close() throws IOException {
+		decoder.close();
+	}
+
+}
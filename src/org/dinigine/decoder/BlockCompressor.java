@@ -0,0 +1,475 @@
+package org.dinigine.decoder;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.dinigine.util.Buffers;
+
+/**
+ * Compresses RGBA images to BC1 (DXT1) and BC3 (DXT5) blocks on the CPU, so
+ * textures can be baked offline into a KTX file and loaded with
+ * {@link KTXDecoder}.
+ * <p>
+ * Each 4x4 block's colors are fitted along their principal axis, then the
+ * endpoints are refined once by least squares over the chosen indices. BC1
+ * blocks with pixels below half alpha use the punch-through mode. Decoding is
+ * included to measure quality with {@link #psnr}.
+ * <p>
+ * Run as a program to bake a PNG:
+ *
+ * <pre>
+ * java org.dinigine.decoder.BlockCompressor in.png out.ktx [bc1|bc3] [nomips]
+ * </pre>
+ */
+public final class BlockCompressor {
+
+	/** Static only */
+	private BlockCompressor() {}
+
+	public static int getBlockSize(int format) {
+		switch (format) {
+		case KTXDecoder.COMPRESSED_RGB_S3TC_DXT1:
+		case KTXDecoder.COMPRESSED_RGBA_S3TC_DXT1:
+			return 8;
+		case KTXDecoder.COMPRESSED_RGBA_S3TC_DXT5:
+			return 16;
+		default:
+			throw new IllegalArgumentException("Unsupported format: 0x" + Integer.toHexString(format));
+		}
+	}
+
+	/**
+	 * @return the bytes taken by a {@code width} x {@code height} image
+	 */
+	public static int getCompressedSize(int format, int width, int height) {
+		return ((width + 3) >> 2) * ((height + 3) >> 2) * getBlockSize(format);
+	}
+
+	/**
+	 * Compresses RGBA rows, read from the position of {@code rgba}, into
+	 * {@code out} at its position. Partial blocks at the edges repeat the last
+	 * row and column.
+	 */
+	public static void compress(int format, ByteBuffer rgba, int width, int height, ByteBuffer out) {
+		boolean alpha = format == KTXDecoder.COMPRESSED_RGBA_S3TC_DXT5;
+		boolean punchThrough = format == KTXDecoder.COMPRESSED_RGBA_S3TC_DXT1;
+		getBlockSize(format);
+
+		ByteBuffer src = rgba.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer dst = out.order(ByteOrder.LITTLE_ENDIAN);
+		int base = src.position();
+		int[] block = new int[16];
+		int[] indices = new int[16];
+		int[] scratch = new int[16];
+		int[] palette = new int[4];
+
+		for (int by = 0; by < height; by += 4) {
+			for (int bx = 0; bx < width; bx += 4) {
+				for (int i = 0; i < 16; i++) {
+					int x = Math.min(bx + (i & 3), width - 1);
+					int y = Math.min(by + (i >> 2), height - 1);
+					block[i] = src.getInt(base + ((y * width + x) << 2));
+				}
+				if (alpha) writeAlphaBlock(block, dst);
+				writeColorBlock(block, indices, scratch, palette, punchThrough, dst);
+			}
+		}
+	}
+
+	private static void writeAlphaBlock(int[] block, ByteBuffer out) {
+		int min = 255, max = 0;
+		for (int i = 0; i < 16; i++) {
+			int a = block[i] >>> 24;
+			if (a < min) min = a;
+			if (a > max) max = a;
+		}
+
+		long bits = 0;
+		if (max > min) {
+			// 8 value mode: 0 = max, 1 = min, 2..7 between them
+			for (int i = 0; i < 16; i++) {
+				int a = block[i] >>> 24;
+				int step = ((max - a) * 14 + (max - min)) / ((max - min) << 1);
+				int index = step == 0 ? 0 : step == 7 ? 1 : step + 1;
+				bits |= (long) index << (3 * i);
+			}
+		}
+		out.put((byte) max).put((byte) min);
+		for (int i = 0; i < 6; i++) {
+			out.put((byte) (bits >>> (i << 3)));
+		}
+	}
+
+	private static void writeColorBlock(int[] block, int[] indices, int[] scratch, int[] palette,
+			boolean punchThrough, ByteBuffer out) {
+		boolean transparent = false;
+		int count = 0;
+		float mr = 0, mg = 0, mb = 0;
+		for (int i = 0; i < 16; i++) {
+			int c = block[i];
+			if (punchThrough && (c >>> 24) < 128) {
+				transparent = true;
+				continue;
+			}
+			mr += c & 255;
+			mg += (c >> 8) & 255;
+			mb += (c >> 16) & 255;
+			count++;
+		}
+		if (count == 0) {
+			out.putShort((short) 0).putShort((short) 0).putInt(-1);
+			return;
+		}
+		mr /= count;
+		mg /= count;
+		mb /= count;
+
+		// covariance of the opaque colors
+		float rr = 0, rg = 0, rb = 0, gg = 0, gb = 0, bb = 0;
+		for (int i = 0; i < 16; i++) {
+			int c = block[i];
+			if (transparent && (c >>> 24) < 128) continue;
+			float r = (c & 255) - mr, g = ((c >> 8) & 255) - mg, b = ((c >> 16) & 255) - mb;
+			rr += r * r;
+			rg += r * g;
+			rb += r * b;
+			gg += g * g;
+			gb += g * b;
+			bb += b * b;
+		}
+
+		// principal axis by power iteration
+		float ar = 1, ag = 1, ab = 1;
+		for (int k = 0; k < 4; k++) {
+			float nr = rr * ar + rg * ag + rb * ab;
+			float ng = rg * ar + gg * ag + gb * ab;
+			float nb = rb * ar + gb * ag + bb * ab;
+			float len = Math.max(Math.abs(nr), Math.max(Math.abs(ng), Math.abs(nb)));
+			if (len < 1e-6f) break;
+			ar = nr / len;
+			ag = ng / len;
+			ab = nb / len;
+		}
+		float len2 = ar * ar + ag * ag + ab * ab;
+
+		float tmin = Float.MAX_VALUE, tmax = -Float.MAX_VALUE;
+		for (int i = 0; i < 16; i++) {
+			int c = block[i];
+			if (transparent && (c >>> 24) < 128) continue;
+			float t = ((c & 255) - mr) * ar + (((c >> 8) & 255) - mg) * ag + (((c >> 16) & 255) - mb) * ab;
+			if (t < tmin) tmin = t;
+			if (t > tmax) tmax = t;
+		}
+		tmin /= len2;
+		tmax /= len2;
+
+		int c0 = to565(mr + tmax * ar, mg + tmax * ag, mb + tmax * ab);
+		int c1 = to565(mr + tmin * ar, mg + tmin * ag, mb + tmin * ab);
+		int error = fit(block, indices, c0, c1, transparent, palette);
+		if (!transparent && c0 != c1) {
+			// least squares endpoints for the indices just chosen
+			long refined = refine(block, indices);
+			if (refined >= 0) {
+				int r0 = (int) (refined >>> 16), r1 = (int) (refined & 0xFFFF);
+				if (fit(block, scratch, r0, r1, false, palette) < error) {
+					c0 = r0;
+					c1 = r1;
+					System.arraycopy(scratch, 0, indices, 0, 16);
+				}
+			}
+		}
+
+		// 4 color mode needs c0 > c1, punch-through needs c0 <= c1
+		if (transparent ? c0 > c1 : c0 < c1) {
+			int t = c0;
+			c0 = c1;
+			c1 = t;
+			for (int i = 0; i < 16; i++) {
+				int index = indices[i];
+				if (transparent) indices[i] = index < 2 ? index ^ 1 : index;
+				else indices[i] = index ^ 1;
+			}
+		} else if (!transparent && c0 == c1) {
+			for (int i = 0; i < 16; i++) {
+				indices[i] = 0;
+			}
+		}
+
+		int bits = 0;
+		for (int i = 0; i < 16; i++) {
+			bits |= indices[i] << (i << 1);
+		}
+		out.putShort((short) c0).putShort((short) c1).putInt(bits);
+	}
+
+	/**
+	 * Picks the closest palette entry for each pixel, as if {@code c0} and
+	 * {@code c1} were stored in that order.
+	 *
+	 * @return the squared error
+	 */
+	private static int fit(int[] block, int[] indices, int c0, int c1, boolean transparent, int[] palette) {
+		buildPalette(c0, c1, transparent, palette);
+		int error = 0;
+		for (int i = 0; i < 16; i++) {
+			int c = block[i];
+			if (transparent && (c >>> 24) < 128) {
+				indices[i] = 3;
+				continue;
+			}
+			int best = 0, bestError = Integer.MAX_VALUE;
+			for (int p = 0, n = transparent ? 3 : 4; p < n; p++) {
+				int e = distance(c, palette[p]);
+				if (e < bestError) {
+					best = p;
+					bestError = e;
+				}
+			}
+			indices[i] = best;
+			error += bestError;
+		}
+		return error;
+	}
+
+	/**
+	 * @return {@code c0 << 16 | c1} fitted to the 4 color indices, or -1 if
+	 *         the system is degenerate
+	 */
+	private static long refine(int[] block, int[] indices) {
+		float aa = 0, ab = 0, bb = 0;
+		float ar = 0, ag = 0, abl = 0, br = 0, bg = 0, bbl = 0;
+		for (int i = 0; i < 16; i++) {
+			float w;
+			switch (indices[i]) {
+			case 0: w = 1; break;
+			case 1: w = 0; break;
+			case 2: w = 2 / 3f; break;
+			default: w = 1 / 3f; break;
+			}
+			float v = 1 - w;
+			int c = block[i];
+			float r = c & 255, g = (c >> 8) & 255, b = (c >> 16) & 255;
+			aa += w * w;
+			ab += w * v;
+			bb += v * v;
+			ar += w * r;
+			ag += w * g;
+			abl += w * b;
+			br += v * r;
+			bg += v * g;
+			bbl += v * b;
+		}
+		float det = aa * bb - ab * ab;
+		if (Math.abs(det) < 1e-6f) return -1;
+		float inv = 1 / det;
+		int c0 = to565((ar * bb - br * ab) * inv, (ag * bb - bg * ab) * inv, (abl * bb - bbl * ab) * inv);
+		int c1 = to565((br * aa - ar * ab) * inv, (bg * aa - ag * ab) * inv, (bbl * aa - abl * ab) * inv);
+		return ((long) c0 << 16) | c1;
+	}
+
+	private static void buildPalette(int c0, int c1, boolean transparent, int[] palette) {
+		int r0 = expand5(c0 >> 11), g0 = expand6((c0 >> 5) & 63), b0 = expand5(c0 & 31);
+		int r1 = expand5(c1 >> 11), g1 = expand6((c1 >> 5) & 63), b1 = expand5(c1 & 31);
+		palette[0] = pack(r0, g0, b0, 255);
+		palette[1] = pack(r1, g1, b1, 255);
+		if (transparent) {
+			palette[2] = pack((r0 + r1) >> 1, (g0 + g1) >> 1, (b0 + b1) >> 1, 255);
+			palette[3] = 0;
+		} else {
+			palette[2] = pack((2 * r0 + r1) / 3, (2 * g0 + g1) / 3, (2 * b0 + b1) / 3, 255);
+			palette[3] = pack((r0 + 2 * r1) / 3, (g0 + 2 * g1) / 3, (b0 + 2 * b1) / 3, 255);
+		}
+	}
+
+	private static int distance(int a, int b) {
+		int dr = (a & 255) - (b & 255);
+		int dg = ((a >> 8) & 255) - ((b >> 8) & 255);
+		int db = ((a >> 16) & 255) - ((b >> 16) & 255);
+		return dr * dr + dg * dg + db * db;
+	}
+
+	private static int to565(float r, float g, float b) {
+		int ri = clamp(Math.round(r * 31 / 255f), 31);
+		int gi = clamp(Math.round(g * 63 / 255f), 63);
+		int bi = clamp(Math.round(b * 31 / 255f), 31);
+		return (ri << 11) | (gi << 5) | bi;
+	}
+
+	private static int clamp(int v, int max) {
+		return v < 0 ? 0 : v > max ? max : v;
+	}
+
+	private static int expand5(int v) {
+		return (v << 3) | (v >> 2);
+	}
+
+	private static int expand6(int v) {
+		return (v << 2) | (v >> 4);
+	}
+
+	private static int pack(int r, int g, int b, int a) {
+		return r | (g << 8) | (b << 16) | (a << 24);
+	}
+
+	/**
+	 * Decompresses blocks, read from the position of {@code in}, into RGBA
+	 * rows at the position of {@code rgba}.
+	 */
+	public static void decompress(int format, ByteBuffer in, int width, int height, ByteBuffer rgba) {
+		boolean alpha = format == KTXDecoder.COMPRESSED_RGBA_S3TC_DXT5;
+		boolean punchThrough = format != KTXDecoder.COMPRESSED_RGB_S3TC_DXT1;
+		getBlockSize(format);
+
+		ByteBuffer src = in.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		ByteBuffer dst = rgba.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		int base = dst.position();
+		int[] palette = new int[4];
+		int[] alphas = new int[8];
+
+		for (int by = 0; by < height; by += 4) {
+			for (int bx = 0; bx < width; bx += 4) {
+				long alphaBits = 0;
+				if (alpha) {
+					int a0 = src.get() & 255, a1 = src.get() & 255;
+					for (int i = 0; i < 6; i++) {
+						alphaBits |= (long) (src.get() & 255) << (i << 3);
+					}
+					alphas[0] = a0;
+					alphas[1] = a1;
+					if (a0 > a1) {
+						for (int i = 1; i < 7; i++) {
+							alphas[i + 1] = ((7 - i) * a0 + i * a1) / 7;
+						}
+					} else {
+						for (int i = 1; i < 5; i++) {
+							alphas[i + 1] = ((5 - i) * a0 + i * a1) / 5;
+						}
+						alphas[6] = 0;
+						alphas[7] = 255;
+					}
+				}
+
+				int c0 = src.getShort() & 0xFFFF, c1 = src.getShort() & 0xFFFF;
+				int bits = src.getInt();
+				// BC3 color blocks always use 4 colors
+				buildPalette(c0, c1, !alpha && c0 <= c1, palette);
+
+				for (int i = 0; i < 16; i++) {
+					int x = bx + (i & 3), y = by + (i >> 2);
+					if (x >= width || y >= height) continue;
+					int c = palette[(bits >>> (i << 1)) & 3];
+					if (alpha) c = (c & 0xFFFFFF) | (alphas[(int) (alphaBits >>> (3 * i)) & 7] << 24);
+					else if (!punchThrough) c |= 0xFF000000;
+					dst.putInt(base + ((y * width + x) << 2), c);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return the peak signal to noise ratio between two RGBA images in
+	 *         decibels, over RGB and optionally alpha
+	 */
+	public static double psnr(ByteBuffer a, ByteBuffer b, int width, int height, boolean alpha) {
+		long sum = 0;
+		int channels = alpha ? 4 : 3;
+		int pa = a.position(), pb = b.position();
+		for (int i = 0, n = width * height; i < n; i++) {
+			for (int c = 0; c < channels; c++) {
+				int d = (a.get(pa + (i << 2) + c) & 255) - (b.get(pb + (i << 2) + c) & 255);
+				sum += d * d;
+			}
+		}
+		if (sum == 0) return Double.POSITIVE_INFINITY;
+		double mse = (double) sum / ((long) width * height * channels);
+		return 10 * Math.log10(255 * 255 / mse);
+	}
+
+	/**
+	 * Halves an RGBA image with a 2x2 box filter.
+	 *
+	 * @return the next mip level
+	 */
+	public static ByteBuffer downsample(ByteBuffer rgba, int width, int height) {
+		int w = Math.max(1, width >> 1), h = Math.max(1, height >> 1);
+		ByteBuffer out = Buffers.newByteBuffer((w * h) << 2);
+		int base = rgba.position();
+		for (int y = 0; y < h; y++) {
+			int y0 = Math.min(y << 1, height - 1), y1 = Math.min((y << 1) + 1, height - 1);
+			for (int x = 0; x < w; x++) {
+				int x0 = Math.min(x << 1, width - 1), x1 = Math.min((x << 1) + 1, width - 1);
+				for (int c = 0; c < 4; c++) {
+					int sum = (rgba.get(base + ((y0 * width + x0) << 2) + c) & 255)
+							+ (rgba.get(base + ((y0 * width + x1) << 2) + c) & 255)
+							+ (rgba.get(base + ((y1 * width + x0) << 2) + c) & 255)
+							+ (rgba.get(base + ((y1 * width + x1) << 2) + c) & 255);
+					out.put((byte) ((sum + 2) >> 2));
+				}
+			}
+		}
+		out.flip();
+		return out;
+	}
+
+	/**
+	 * Decodes a PNG, compresses it and its mip chain and writes a KTX file.
+	 */
+	public static void bake(ImageDecoder decoder, int format, boolean mipmaps, OutputStream out) throws Exception {
+		int width = decoder.getWidth(), height = decoder.getHeight();
+		ByteBuffer rgba = Buffers.newByteBuffer(decoder.getSuggestedCapacity());
+		decoder.decode(rgba);
+		rgba.position(0);
+
+		List<ByteBuffer> levels = new ArrayList<>();
+		for (int w = width, h = height;; w = Math.max(1, w >> 1), h = Math.max(1, h >> 1)) {
+			ByteBuffer level = Buffers.newByteBuffer(getCompressedSize(format, w, h));
+			compress(format, rgba, w, h, level);
+			level.flip();
+			levels.add(level);
+			if (!mipmaps || (w == 1 && h == 1)) break;
+			rgba = downsample(rgba, w, h);
+		}
+
+		int base = format == KTXDecoder.COMPRESSED_RGB_S3TC_DXT1 ? KTXDecoder.RGB : KTXDecoder.RGBA;
+		KTXDecoder.write(out, 0, 0, format, base, width, height, levels.toArray(new ByteBuffer[0]));
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 2) {
+			System.err.println("Usage: BlockCompressor <in.png> <out.ktx> [bc1|bc3] [nomips]");
+			System.exit(1);
+		}
+		int format = KTXDecoder.COMPRESSED_RGBA_S3TC_DXT5;
+		boolean mipmaps = true;
+		for (int i = 2; i < args.length; i++) {
+			if (args[i].equalsIgnoreCase("bc1")) format = KTXDecoder.COMPRESSED_RGBA_S3TC_DXT1;
+			else if (args[i].equalsIgnoreCase("bc3")) format = KTXDecoder.COMPRESSED_RGBA_S3TC_DXT5;
+			else if (args[i].equalsIgnoreCase("nomips")) mipmaps = false;
+			else throw new IllegalArgumentException("Unknown option: " + args[i]);
+		}
+
+		long start = System.nanoTime();
+		ImageDecoder decoder;
+		try (InputStream in = new FileInputStream(args[0])) {
+			decoder = new ImageDecoder(in);
+			try (OutputStream out = new BufferedOutputStream(new FileOutputStream(args[1]))) {
+				bake(decoder, format, mipmaps, out);
+			}
+		} catch (IOException e) {
+			System.err.println("Couldn't bake " + args[0] + ": " + e.getMessage());
+			System.exit(1);
+			return;
+		}
+		System.out.printf("Baked %s (%dx%d) in %.1f ms%n", args[1], decoder.getWidth(), decoder.getHeight(),
+				(System.nanoTime() - start) / 1e6);
+	}
+
+}
@@ -5,12 +5,28 @@ import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.zip.CRC32;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 import org.dinigine.math.Maths;
+import org.dinigine.util.Buffers;
+import org.lwjgl.system.MemoryUtil;
 
 public class ImageDecoder {
 
@@ -20,10 +36,47 @@ public class ImageDecoder {
 	private static final int PLTE = 0x504C5445;
 	private static final int tRNS = 0x74524E53;
 	private static final int IDAT = 0x49444154;
+	private static final int GRAY = 0;
 	private static final int TRUECOLOR = 2;
 	private static final int INDEXED = 3;
+	private static final int GRAY_ALPHA = 4;
 	private static final int ALPHA = 6;
 
+	/** Output of 8 bit RGBA, the default */
+	public static final int RGBA8 = 0;
+	/** Output of 16 bit unsigned RGBA, as for {@code GL_RGBA16} */
+	public static final int RGBA16 = 1;
+	/** Output of half float RGBA in [0, 1], as for {@code GL_RGBA16F} */
+	public static final int RGBA16F = 2;
+
+	/** Start column, start row, column step and row step of each Adam7 pass */
+	private static final int[] ADAM7_X = { 0, 4, 0, 2, 0, 1, 0 };
+	private static final int[] ADAM7_Y = { 0, 0, 4, 0, 2, 0, 1 };
+	private static final int[] ADAM7_DX = { 8, 8, 4, 4, 2, 2, 1 };
+	private static final int[] ADAM7_DY = { 8, 8, 8, 4, 4, 2, 2 };
+
+	/** Rows handed to a worker at once by {@link #decode(ByteBuffer, Executor)} */
+	private static final int BLOCK_BYTES = 256 << 10;
+	private static final int MAX_BLOCKS_IN_FLIGHT = 4;
+	/** Keeps the sum of a box of 16 bit samples in an int */
+	private static final int MAX_SCALE = 128;
+
+	/** A fully decoded image, from {@link ImageDecoder#decodeAll} */
+	public static final class Image {
+		public final int width;
+		public final int height;
+		public final boolean alpha;
+		/** RGBA rows */
+		public final ByteBuffer pixels;
+
+		Image(int width, int height, boolean alpha, ByteBuffer pixels) {
+			this.width = width;
+			this.height = height;
+			this.alpha = alpha;
+			this.pixels = pixels;
+		}
+	}
+
 	private final DataInputStream in;
 	private final CRC32 crc = new CRC32();
 	private final byte[] iobuffer = new byte[4096];
@@ -36,7 +89,10 @@ public class ImageDecoder {
 	private int height;
 	private int bitdepth;
 	private int color_type;
+	private int channels;
 	private int bpp;
+	private boolean interlaced;
+	private int output = RGBA8;
 
 	private byte[] palette;
 	private byte[] palette_alpha;
@@ -82,20 +138,54 @@ public class ImageDecoder {
 	}
 
 	public boolean hasAlpha() {
-		return color_type == ALPHA ||
+		return color_type == ALPHA || color_type == GRAY_ALPHA ||
 				palette_alpha != null || transPixel != null;
 	}
 
+	/**
+	 * @return the bits per sample in the file, 16 for high precision images
+	 */
+	public int getBitDepth() {
+		return bitdepth;
+	}
+
+	public boolean isInterlaced() {
+		return interlaced;
+	}
+
+	/**
+	 * Chooses what {@link #decode(ByteBuffer)} writes: {@link #RGBA8},
+	 * {@link #RGBA16} or {@link #RGBA16F}. Images with fewer than 16 bits
+	 * per sample are scaled up to the full range.
+	 */
+	public void setOutputFormat(int format) {
+		if (format != RGBA8 && format != RGBA16 && format != RGBA16F) {
+			throw new IllegalArgumentException("Unknown output format: " + format);
+		}
+		this.output = format;
+	}
+
+	public int getOutputFormat() {
+		return output;
+	}
+
+	public int getBytesPerPixel() {
+		return output == RGBA8 ? 4 : 8;
+	}
+
 	public int getSuggestedCapacity() {
-		return (width * height) << 2;
+		return width * height * getBytesPerPixel();
 	}
+
 	
 	public void overwriteTRNS(byte r, byte g, byte b) {
-		if (color_type == ALPHA) {
+		if (color_type == ALPHA || color_type == GRAY_ALPHA) {
 			throw new UnsupportedOperationException("image has an alpha channel");
 		}
-		byte[] pal = palette;
-		if (pal == null) {
+		byte[] pal = color_type == INDEXED ? palette : null;
+		if (color_type == GRAY) {
+			transPixel = new byte[] { 0, r };
+		} else if (pal == null) {
 			transPixel = new byte[] { 0, r, 0, g, 0, b };
 		} else {
 			palette_alpha = new byte[pal.length / 3];
@@ -108,196 +198,649 @@ public class ImageDecoder {
 	}
 
 	public void decode(ByteBuffer buffer) throws Exception {
-		final int line = width << 2;
-		final int lineSize = ((width * bitdepth + 7) / 8) * bpp;
+		decode(buffer, 0, 0, width, height, 1);
+	}
+
+	/**
+	 * Decodes rows {@code first} to {@code first + count}. Rows below them
+	 * aren't inflated at all.
+	 */
+	public void decodeRows(ByteBuffer buffer, int first, int count) throws Exception {
+		decode(buffer, 0, first, width, count, 1);
+	}
+
+	/**
+	 * Decodes a rectangle of the image, packed with a stride of {@code w}
+	 * pixels. Rows above it still have to be inflated, but only the rectangle
+	 * is converted.
+	 */
+	public void decode(ByteBuffer buffer, int x, int y, int w, int h) throws Exception {
+		decode(buffer, x, y, w, h, 1);
+	}
+
+	/**
+	 * Decodes the image shrunk by {@code factor} with a box filter, into
+	 * {@link #getScaledWidth(int)} x {@link #getScaledHeight(int)} pixels. The
+	 * last row and column of boxes average only the pixels they cover.
+	 */
+	public void decodeScaled(ByteBuffer buffer, int factor) throws Exception {
+		decode(buffer, 0, 0, width, height, factor);
+	}
+
+	public int getScaledWidth(int factor) {
+		return (width + factor - 1) / factor;
+	}
+
+	public int getScaledHeight(int factor) {
+		return (height + factor - 1) / factor;
+	}
+
+	/**
+	 * Decodes a rectangle of the image shrunk by {@code factor}. Memory used
+	 * apart from {@code buffer} is proportional to the output: a row of boxes
+	 * being summed, or all of them for interlaced images.
+	 */
+	public void decode(ByteBuffer buffer, int x, int y, int w, int h, int factor) throws Exception {
+		if (x < 0 || y < 0 || w <= 0 || h <= 0 || x + w > width || y + h > height) {
+			throw new IllegalArgumentException("Region " + x + "," + y + " " + w + "x" + h + " is outside the image");
+		}
+		if (factor < 1 || factor > MAX_SCALE) {
+			throw new IllegalArgumentException("Scale must be between 1 and " + MAX_SCALE + ": " + factor);
+		}
+		RowWriter writer = new RowWriter(buffer, expandTable(), x, y, w, h, factor);
+		if (buffer.capacity() < writer.getCapacity()) {
+			throw new IllegalArgumentException("Buffer too small: " + buffer.capacity() + " < " + writer.getCapacity());
+		}
+
+		byte[] curLine = new byte[lineSize(width) + 1];
+		byte[] prevLine = new byte[curLine.length];
+
+		final Inflater inflater = new Inflater();
+		try {
+			if (interlaced) {
+				for (int pass = 0; pass < 7; pass++) {
+					int x0 = ADAM7_X[pass], dx = ADAM7_DX[pass];
+					int y0 = ADAM7_Y[pass], dy = ADAM7_DY[pass];
+					int columns = (width - x0 + dx - 1) / dx, rows = (height - y0 + dy - 1) / dy;
+					if (columns == 0 || rows == 0) continue;
+
+					// each pass is filtered as an image of its own
+					int n = lineSize(columns) + 1;
+					Arrays.fill(prevLine, (byte) 0);
+					for (int r = 0; r < rows; r++) {
+						readChunkUnzip(inflater, curLine, 0, n);
+						unfilter(curLine, prevLine, n);
+						writer.write(curLine, 0, y0 + r * dy, x0, dx, columns);
+
+						byte[] tmp = curLine;
+						curLine = prevLine;
+						prevLine = tmp;
+					}
+				}
+			} else {
+				for (int row = 0, end = y + h; row < end; row++) {
+					readChunkUnzip(inflater, curLine, 0, curLine.length);
+					unfilter(curLine, prevLine, curLine.length);
+					writer.write(curLine, 0, row);
+
+					byte[] tmp = curLine;
+					curLine = prevLine;
+					prevLine = tmp;
+				}
+			}
+			writer.flush();
+		} finally {
+			inflater.end();
+		}
+		buffer.position(writer.getCapacity());
+	}
+
+	/**
+	 * @return the bytes in a row of {@code pixels} pixels, without the filter
+	 *         byte
+	 */
+	private int lineSize(int pixels) {
+		return (pixels * channels * bitdepth + 7) >> 3;
+	}
+
+	/**
+	 * Decodes straight to off-heap memory, which must hold at least
+	 * {@link #getSuggestedCapacity()} bytes.
+	 */
+	public void decode(long address) throws Exception {
+		decode(MemoryUtil.memByteBuffer(address, getSuggestedCapacity()));
+	}
+
+	/**
+	 * Decodes like {@link #decode(ByteBuffer)}, but converts rows to RGBA on
+	 * {@code executor} while this thread keeps inflating and unfiltering, which
+	 * can't be split up since each row depends on the one before it. Rows are
+	 * handed over in blocks of about {@value #BLOCK_BYTES} bytes, with at most
+	 * a few blocks in flight. Interlaced images are decoded on this thread.
+	 */
+	public void decode(final ByteBuffer buffer, Executor executor) throws Exception {
+		if (interlaced) {
+			decode(buffer);
+			return;
+		}
+
+		final int lineSize = lineSize(width);
+		final int rowsPerBlock = Math.max(1, BLOCK_BYTES / (lineSize + 1));
+		final int blocks = Math.min((height + rowsPerBlock - 1) / rowsPerBlock, MAX_BLOCKS_IN_FLIGHT);
+		final BlockingQueue<byte[]> free = new ArrayBlockingQueue<>(blocks);
+		for (int i = 0; i < blocks; i++) {
+			free.add(new byte[rowsPerBlock * (lineSize + 1)]);
+		}
+		final int[] table = expandTable();
+
 		byte[] curLine = new byte[lineSize + 1];
 		byte[] prevLine = new byte[lineSize + 1];
-		byte[] palLine = (bitdepth < 8) ? new byte[width + 1] : null;
+		List<Future<Void>> tasks = new ArrayList<>();
 
 		final Inflater inflater = new Inflater();
 		try {
-			for (int y = 0; y < height; y++) {
-				readChunkUnzip(inflater, curLine, 0, curLine.length);
-				unfilter(curLine, prevLine);
+			for (int y = 0; y < height; y += rowsPerBlock) {
+				final byte[] block = free.take();
+				final int first = y;
+				final int rows = Math.min(rowsPerBlock, height - y);
+				for (int r = 0; r < rows; r++) {
+					readChunkUnzip(inflater, curLine, 0, curLine.length);
+					unfilter(curLine, prevLine, curLine.length);
+					System.arraycopy(curLine, 0, block, r * (lineSize + 1), lineSize + 1);
 
-				buffer.position(y * line);
+					byte[] tmp = curLine;
+					curLine = prevLine;
+					prevLine = tmp;
+				}
 
-				switch (color_type) {
-				case ALPHA:
-					buffer.put(curLine, 1, curLine.length - 1);
-					break;
-				case TRUECOLOR:
-					if (transPixel != null) {
-						byte tr = transPixel[1];
-						byte tg = transPixel[3];
-						byte tb = transPixel[5];
-						for (int i = 1, n = curLine.length; i < n; i += 3) {
-							byte r = curLine[i];
-							byte g = curLine[i + 1];
-							byte b = curLine[i + 2];
-							byte a = (byte) 0xFF;
-							if (r == tr && g == tg && b == tb) {
-								a = 0;
+				FutureTask<Void> task = new FutureTask<>(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							RowWriter writer = new RowWriter(buffer, table, 0, 0, width, height, 1);
+							for (int r = 0; r < rows; r++) {
+								writer.write(block, r * (lineSize + 1), first + r);
 							}
-							buffer.put(r).put(g).put(b).put(a);
-						}
-					} else {
-						for (int i = 1, n = curLine.length; i < n; i += 3) {
-							buffer.put(curLine[i]).put(curLine[i + 1]).put(curLine[i + 2]).put((byte) 0xFF);
+						} finally {
+							free.add(block);
 						}
 					}
-					break;
-				case INDEXED:
-					switch (bitdepth) {
-					case 8:
-						palLine = curLine;
-						break;
-					case 4:
-						expand4(curLine, palLine);
-						break;
-					case 2:
-						expand2(curLine, palLine);
-						break;
-					case 1:
-						expand1(curLine, palLine);
-						break;
-					default:
-						throw new UnsupportedOperationException("Unsupported bitdepth for this image");
+				}, null);
+				tasks.add(task);
+				executor.execute(task);
+			}
+		} finally {
+			inflater.end();
+			for (Future<Void> task : tasks) {
+				try {
+					task.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof Exception) throw (Exception) cause;
+					throw e;
+				}
+			}
+		}
+		buffer.position(getSuggestedCapacity());
+	}
+
+	/**
+	 * @return the palette, or the levels of a grayscale image of up to 8 bits,
+	 *         as packed RGBA, little endian, or null for other images
+	 */
+	private int[] expandTable() {
+		int[] table = new int[256];
+		if (color_type == INDEXED) {
+			for (int i = 0, n = palette.length / 3; i < n; i++) {
+				int a = palette_alpha != null && i < palette_alpha.length ? palette_alpha[i] & 255 : 255;
+				table[i] = (palette[i * 3] & 255) | (palette[i * 3 + 1] & 255) << 8
+						| (palette[i * 3 + 2] & 255) << 16 | a << 24;
+			}
+		} else if (color_type == GRAY && bitdepth <= 8) {
+			int max = (1 << bitdepth) - 1;
+			int key = transPixel != null ? sample16(transPixel, 0) : -1;
+			for (int v = 0; v <= max; v++) {
+				int g = v * 255 / max;
+				table[v] = g * 0x010101 | (v == key ? 0 : 0xFF000000);
+			}
+		} else {
+			return null;
+		}
+		return table;
+	}
+
+	private static int sample16(byte[] b, int i) {
+		return (b[i] & 255) << 8 | (b[i + 1] & 255);
+	}
+
+	/**
+	 * Converts unfiltered rows to the output format a whole row at a time:
+	 * pixels are packed into a reusable {@code int[]}, or {@code long[]} for
+	 * 16 bit output, and stored with one bulk put. Only pixels inside the
+	 * region are converted, and when scaling they are summed into boxes
+	 * instead. Each thread needs its own.
+	 */
+	private final class RowWriter {
+
+		private final ByteBuffer bytes;
+		private final IntBuffer ints;
+		private final LongBuffer longs;
+		private final int[] table;
+		private final int[] pixels;
+		private final long[] wide;
+
+		private final int left, top, right, bottom;
+		private final int scale;
+		private final int outWidth, outHeight;
+
+		/** Channel sums of each box, by output row then column */
+		private final int[] sums;
+		private final int sumRows;
+
+		RowWriter(ByteBuffer buffer, int[] table, int x, int y, int w, int h, int scale) {
+			ByteBuffer out = buffer.duplicate();
+			out.clear();
+			out.order(ByteOrder.LITTLE_ENDIAN);
+			this.bytes = out;
+			this.ints = out.asIntBuffer();
+			this.longs = output == RGBA8 ? null : out.asLongBuffer();
+			this.table = table;
+			this.pixels = new int[width];
+			this.wide = output == RGBA8 ? null : new long[width];
+
+			this.left = x;
+			this.top = y;
+			this.right = x + w;
+			this.bottom = y + h;
+			this.scale = scale;
+			this.outWidth = (w + scale - 1) / scale;
+			this.outHeight = (h + scale - 1) / scale;
+			this.sumRows = scale == 1 ? 0 : interlaced ? outHeight : 1;
+			this.sums = scale == 1 ? null : new int[sumRows * outWidth * 4];
+		}
+
+		int getCapacity() {
+			return outWidth * outHeight * getBytesPerPixel();
+		}
+
+		/**
+		 * Converts the row whose filter byte is at {@code offset} as row
+		 * {@code y} of the image.
+		 */
+		void write(byte[] line, int offset, int y) {
+			write(line, offset, y, 0, 1, width);
+		}
+
+		/**
+		 * Converts {@code count} pixels of a row as row {@code y} of the
+		 * image, at columns {@code x0}, {@code x0 + dx}, ...
+		 */
+		void write(byte[] line, int offset, int y, int x0, int dx, int count) {
+			if (y < top || y >= bottom) return;
+
+			// the pixels of this row inside the region
+			int first = x0 >= left ? 0 : (left - x0 + dx - 1) / dx;
+			int last = Math.min(count, (right - x0 + dx - 1) / dx);
+			if (first >= last) return;
+			final int n = last - first;
+			final int start = offset + 1;
+			final int ox = x0 + first * dx - left;
+
+			if (scale > 1) {
+				accumulate(line, start, first, n, ox, dx, y - top);
+				return;
+			}
+
+			final int base = (y - top) * outWidth + ox;
+			if (output != RGBA8) {
+				widen(line, start, first, n);
+				if (output == RGBA16F) toHalves(n);
+				if (dx == 1) {
+					longs.position(base);
+					longs.put(wide, 0, n);
+				} else {
+					for (int i = 0; i < n; i++) {
+						longs.put(base + i * dx, wide[i]);
 					}
-					if (palette_alpha != null) {
-						for (int i = 1, n = palLine.length; i < n; i++) {
-							int idx = palLine[i] & 255;
-							byte r = palette[idx * 3 + 0];
-							byte g = palette[idx * 3 + 1];
-							byte b = palette[idx * 3 + 2];
-							byte a = palette_alpha[idx];
-							buffer.put(r).put(g).put(b).put(a);
+				}
+				return;
+			}
+
+			if (color_type == ALPHA && bitdepth == 8 && dx == 1) {
+				bytes.position(base << 2);
+				bytes.put(line, start + (first << 2), n << 2);
+				return;
+			}
+
+			convert(line, start, first, n);
+			if (dx == 1) {
+				ints.position(base);
+				ints.put(pixels, 0, n);
+			} else {
+				for (int i = 0; i < n; i++) {
+					ints.put(base + i * dx, pixels[i]);
+				}
+			}
+		}
+
+		/**
+		 * Adds pixels to the sums of the boxes they fall in, storing a row of
+		 * boxes once its last image row has been added.
+		 */
+		private void accumulate(byte[] line, int start, int first, int n, int ox, int dx, int row) {
+			int outRow = row / scale;
+			int[] sums = this.sums;
+			int at = (interlaced ? outRow * outWidth : 0) << 2;
+
+			if (output == RGBA8) {
+				convert(line, start, first, n);
+				for (int i = 0, x = ox; i < n; i++, x += dx) {
+					int p = pixels[i], s = at + ((x / scale) << 2);
+					sums[s] += p & 255;
+					sums[s + 1] += (p >> 8) & 255;
+					sums[s + 2] += (p >> 16) & 255;
+					sums[s + 3] += p >>> 24;
+				}
+			} else {
+				widen(line, start, first, n);
+				for (int i = 0, x = ox; i < n; i++, x += dx) {
+					long p = wide[i];
+					int s = at + ((x / scale) << 2);
+					sums[s] += (int) p & 0xFFFF;
+					sums[s + 1] += (int) (p >>> 16) & 0xFFFF;
+					sums[s + 2] += (int) (p >>> 32) & 0xFFFF;
+					sums[s + 3] += (int) (p >>> 48);
+				}
+			}
+
+			if (!interlaced && (row % scale == scale - 1 || row == bottom - top - 1)) {
+				store(0, outRow);
+			}
+		}
+
+		/**
+		 * Stores what's left once every row has been written.
+		 */
+		void flush() {
+			if (scale > 1 && interlaced) {
+				for (int r = 0; r < outHeight; r++) {
+					store(r * outWidth << 2, r);
+				}
+			}
+		}
+
+		/**
+		 * Averages a row of boxes into the output and clears their sums.
+		 */
+		private void store(int at, int outRow) {
+			int h = Math.min(scale, (bottom - top) - outRow * scale);
+			for (int i = 0; i < outWidth; i++) {
+				int w = Math.min(scale, (right - left) - i * scale);
+				int count = w * h, half = count >> 1, s = at + (i << 2);
+				int r = (sums[s] + half) / count;
+				int g = (sums[s + 1] + half) / count;
+				int b = (sums[s + 2] + half) / count;
+				int a = (sums[s + 3] + half) / count;
+				sums[s] = sums[s + 1] = sums[s + 2] = sums[s + 3] = 0;
+				if (output == RGBA8) pixels[i] = r | g << 8 | b << 16 | a << 24;
+				else wide[i] = pack(r, g, b, a);
+			}
+
+			if (output == RGBA8) {
+				ints.position(outRow * outWidth);
+				ints.put(pixels, 0, outWidth);
+			} else {
+				if (output == RGBA16F) toHalves(outWidth);
+				longs.position(outRow * outWidth);
+				longs.put(wide, 0, outWidth);
+			}
+		}
+
+		/**
+		 * Packs pixels {@code first} to {@code first + count} of a row as 8
+		 * bit RGBA, keeping the high byte of 16 bit samples.
+		 */
+		private void convert(byte[] line, int start, int first, int count) {
+			final int[] pixels = this.pixels;
+			final int step = bitdepth >> 3;
+			switch (color_type) {
+			case ALPHA:
+				start += first * (step << 2);
+				for (int i = 0, j = start; i < count; i++, j += step << 2) {
+					pixels[i] = (line[j] & 255) | (line[j + step] & 255) << 8
+							| (line[j + 2 * step] & 255) << 16 | (line[j + 3 * step] & 255) << 24;
+				}
+				break;
+			case TRUECOLOR:
+				start += first * 3 * step;
+				for (int i = 0, j = start; i < count; i++, j += 3 * step) {
+					pixels[i] = (line[j] & 255) | (line[j + step] & 255) << 8 | (line[j + 2 * step] & 255) << 16
+							| 0xFF000000;
+				}
+				if (transPixel != null) {
+					if (bitdepth == 8) {
+						int key = (transPixel[1] & 255) | (transPixel[3] & 255) << 8 | (transPixel[5] & 255) << 16
+								| 0xFF000000;
+						for (int i = 0; i < count; i++) {
+							if (pixels[i] == key) pixels[i] = key & 0xFFFFFF;
 						}
 					} else {
-						for (int i = 1, n = palLine.length; i < n; i++) {
-							int idx = palLine[i] & 255;
-							byte r = palette[idx * 3 + 0];
-							byte g = palette[idx * 3 + 1];
-							byte b = palette[idx * 3 + 2];
-							byte a = (byte) 0xFF;
-							buffer.put(r).put(g).put(b).put(a);
+						for (int i = 0, j = start; i < count; i++, j += 6) {
+							if (isTransparent16(line, j)) pixels[i] &= 0xFFFFFF;
 						}
 					}
+				}
+				break;
+			case GRAY_ALPHA:
+				start += first * (step << 1);
+				for (int i = 0, j = start; i < count; i++, j += step << 1) {
+					pixels[i] = (line[j] & 255) * 0x010101 | (line[j + step] & 255) << 24;
+				}
+				break;
+			case GRAY:
+				if (bitdepth == 16) {
+					start += first << 1;
+					int key = transPixel != null ? sample16(transPixel, 0) : -1;
+					for (int i = 0, j = start; i < count; i++, j += 2) {
+						pixels[i] = (line[j] & 255) * 0x010101 | (sample16(line, j) == key ? 0 : 0xFF000000);
+					}
 					break;
-				default:
-					throw new UnsupportedOperationException();
 				}
+				// fall through, up to 8 bits uses the level table
+			case INDEXED:
+				final int[] table = this.table;
+				if (bitdepth == 8) {
+					start += first;
+					for (int i = 0; i < count; i++) {
+						pixels[i] = table[line[start + i] & 255];
+					}
+				} else {
+					final int mask = (1 << bitdepth) - 1;
+					for (int i = 0, bit = first * bitdepth; i < count; i++, bit += bitdepth) {
+						int shift = 8 - bitdepth - (bit & 7);
+						pixels[i] = table[(line[start + (bit >> 3)] >> shift) & mask];
+					}
+				}
+				break;
+			default:
+				throw new UnsupportedOperationException();
+			}
+		}
+
+		private boolean isTransparent16(byte[] line, int j) {
+			return sample16(line, j) == sample16(transPixel, 0) && sample16(line, j + 2) == sample16(transPixel, 2)
+					&& sample16(line, j + 4) == sample16(transPixel, 4);
+		}
+
+		/**
+		 * Packs pixels {@code first} to {@code first + count} of a row as 16
+		 * bit RGBA.
+		 */
+		private void widen(byte[] line, int start, int first, int count) {
+			final long[] wide = this.wide;
+			if (bitdepth < 16) {
+				convert(line, start, first, count);
+				for (int i = 0; i < count; i++) {
+					int p = pixels[i];
+					wide[i] = pack((p & 255) * 257, ((p >> 8) & 255) * 257, ((p >> 16) & 255) * 257,
+							(p >>> 24) * 257);
+				}
+				return;
+			}
 
-				byte[] tmp = curLine;
-				curLine = prevLine;
-				prevLine = tmp;
+			for (int i = 0, j = start + first * (channels << 1); i < count; i++) {
+				int r, g, b, a = 0xFFFF;
+				switch (color_type) {
+				case ALPHA:
+					r = sample16(line, j);
+					g = sample16(line, j + 2);
+					b = sample16(line, j + 4);
+					a = sample16(line, j + 6);
+					j += 8;
+					break;
+				case TRUECOLOR:
+					r = sample16(line, j);
+					g = sample16(line, j + 2);
+					b = sample16(line, j + 4);
+					if (transPixel != null && isTransparent16(line, j)) a = 0;
+					j += 6;
+					break;
+				case GRAY_ALPHA:
+					r = g = b = sample16(line, j);
+					a = sample16(line, j + 2);
+					j += 4;
+					break;
+				default:
+					r = g = b = sample16(line, j);
+					if (transPixel != null && r == sample16(transPixel, 0)) a = 0;
+					j += 2;
+					break;
+				}
+				wide[i] = pack(r, g, b, a);
 			}
-		} finally {
-			inflater.end();
 		}
-	}
 
-	private void expand4(byte[] src, byte[] dst) {
-		for (int i = 1, n = dst.length; i < n; i += 2) {
-			int val = src[1 + (i >> 1)] & 255;
-			switch (n - i) {
-			default:
-				dst[i + 1] = (byte) (val & 15);
-			case 1:
-				dst[i] = (byte) (val >> 4);
+		private void toHalves(int count) {
+			for (int i = 0; i < count; i++) {
+				long p = wide[i];
+				wide[i] = pack(toHalf((int) p & 0xFFFF), toHalf((int) (p >>> 16) & 0xFFFF),
+						toHalf((int) (p >>> 32) & 0xFFFF), toHalf((int) (p >>> 48)));
 			}
 		}
+
 	}
 
-	private void expand2(byte[] src, byte[] dst) {
-		for (int i = 1, n = dst.length; i < n; i += 4) {
-			int val = src[1 + (i >> 2)] & 255;
-			switch (n - i) {
-			default:
-				dst[i + 3] = (byte) ((val) & 3);
-			case 3:
-				dst[i + 2] = (byte) ((val >> 2) & 3);
-			case 2:
-				dst[i + 1] = (byte) ((val >> 4) & 3);
-			case 1:
-				dst[i] = (byte) ((val >> 6));
-			}
+	private static long pack(int r, int g, int b, int a) {
+		return r | (long) g << 16 | (long) b << 32 | (long) a << 48;
+	}
+
+	/**
+	 * @return {@code value / 65535} as half float bits, rounded to nearest
+	 */
+	static int toHalf(int value) {
+		if (value == 0) return 0;
+		int bits = Float.floatToRawIntBits(value / 65535f);
+		int exponent = ((bits >>> 23) & 0xFF) - 127 + 15;
+		int mantissa = bits & 0x7FFFFF;
+		if (exponent <= 0) {
+			// subnormal half
+			mantissa |= 0x800000;
+			int shift = 14 - exponent;
+			int half = mantissa >> shift;
+			if (((mantissa >> (shift - 1)) & 1) != 0) half++;
+			return half;
 		}
+		int half = exponent << 10 | mantissa >> 13;
+		if ((mantissa & 0x1000) != 0) half++;
+		return half;
 	}
 
-	private void expand1(byte[] src, byte[] dst) {
-		for (int i = 1, n = dst.length; i < n; i += 8) {
-			int val = src[1 + (i >> 3)] & 255;
-			switch (n - i) {
-			default:
-				dst[i + 7] = (byte) ((val) & 1);
-			case 7:
-				dst[i + 6] = (byte) ((val >> 1) & 1);
-			case 6:
-				dst[i + 5] = (byte) ((val >> 2) & 1);
-			case 5:
-				dst[i + 4] = (byte) ((val >> 3) & 1);
-			case 4:
-				dst[i + 3] = (byte) ((val >> 4) & 1);
-			case 3:
-				dst[i + 2] = (byte) ((val >> 5) & 1);
-			case 2:
-				dst[i + 1] = (byte) ((val >> 6) & 1);
-			case 1:
-				dst[i] = (byte) ((val >> 7));
+	/**
+	 * Decodes independent images in parallel, one per task on {@code pool}.
+	 * Each stream is opened and closed by the task decoding it.
+	 *
+	 * @return the images, in the order of {@code sources}
+	 */
+	public static List<Image> decodeAll(Collection<? extends Callable<? extends InputStream>> sources,
+			ExecutorService pool) throws Exception {
+		List<Callable<Image>> tasks = new ArrayList<>(sources.size());
+		for (final Callable<? extends InputStream> source : sources) {
+			tasks.add(new Callable<Image>() {
+				@Override
+				public Image call() throws Exception {
+					try (InputStream in = source.call()) {
+						ImageDecoder decoder = new ImageDecoder(in);
+						ByteBuffer pixels = Buffers.newByteBuffer(decoder.getSuggestedCapacity());
+						decoder.decode(pixels);
+						pixels.flip();
+						return new Image(decoder.width, decoder.height, decoder.hasAlpha(), pixels);
+					}
+				}
+			});
+		}
+
+		List<Image> images = new ArrayList<>(tasks.size());
+		for (Future<Image> f : pool.invokeAll(tasks)) {
+			try {
+				images.add(f.get());
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) throw (Exception) cause;
+				throw e;
 			}
 		}
+		return images;
 	}
 
-	private void unfilter(byte[] curLine, byte[] prevLine) throws IOException {
+	private void unfilter(byte[] curLine, byte[] prevLine, int n) throws IOException {
 		switch (curLine[0]) {
 		case 0: // none
 			break;
 		case 1:
-			unfilterSub(curLine);
+			unfilterSub(curLine, n);
 			break;
 		case 2:
-			unfilterUp(curLine, prevLine);
+			unfilterUp(curLine, prevLine, n);
 			break;
 		case 3:
-			unfilterAverage(curLine, prevLine);
+			unfilterAverage(curLine, prevLine, n);
 			break;
 		case 4:
-			unfilterPaeth(curLine, prevLine);
+			unfilterPaeth(curLine, prevLine, n);
 			break;
 		default:
 			throw new IOException("invalide filter type in scanline: " + curLine[0]);
 		}
 	}
 
-	private void unfilterSub(byte[] curLine) {
-		for (int i = bpp + 1, n = curLine.length; i < n; ++i) {
+	private void unfilterSub(byte[] curLine, int n) {
+		for (int i = bpp + 1; i < n; ++i) {
 			curLine[i] += curLine[i - bpp];
 		}
 	}
 
-	private void unfilterUp(byte[] curLine, byte[] prevLine) {
-		for (int i = 1, n = curLine.length; i < n; ++i) {
+	private void unfilterUp(byte[] curLine, byte[] prevLine, int n) {
+		for (int i = 1; i < n; ++i) {
 			curLine[i] += prevLine[i];
 		}
 	}
 
-	private void unfilterAverage(byte[] curLine, byte[] prevLine) {
+	private void unfilterAverage(byte[] curLine, byte[] prevLine, int n) {
 		int i;
-		for (i = 1; i <= bpp; ++i) {
+		for (i = 1; i <= bpp && i < n; ++i) {
 			curLine[i] += (byte) ((prevLine[i] & 0xFF) >>> 1);
 		}
-		for (int n = curLine.length; i < n; ++i) {
+		for (; i < n; ++i) {
 			curLine[i] += (byte) (((prevLine[i] & 0xFF) + (curLine[i - bpp] & 0xFF)) >>> 1);
 		}
 	}
 
-	private void unfilterPaeth(byte[] curLine, byte[] prevLine) {
+	private void unfilterPaeth(byte[] curLine, byte[] prevLine, int n) {
 		int i;
-		for (i = 1; i <= bpp; ++i) {
+		for (i = 1; i <= bpp && i < n; ++i) {
 			curLine[i] += prevLine[i];
 		}
-		for (int n = curLine.length; i < n; ++i) {
+		for (; i < n; ++i) {
 			int a = curLine[i - bpp] & 255;
 			int b = prevLine[i] & 255;
 			int c = prevLine[i - bpp] & 255;
@@ -324,34 +867,51 @@ public class ImageDecoder {
 		bitdepth = iobuffer[8] & 255;
 		color_type = iobuffer[9] & 255;
 
+		boolean lowDepths;
 		switch (color_type) {
+		case GRAY:
+			channels = 1;
+			lowDepths = true;
+			break;
 		case TRUECOLOR:
-			if (bitdepth != 8) {
-				throw new IOException("Unsupported bit depth: " + bitdepth);
-			}
-			bpp = 3;
+			channels = 3;
+			lowDepths = false;
+			break;
+		case INDEXED:
+			channels = 1;
+			lowDepths = true;
+			break;
+		case GRAY_ALPHA:
+			channels = 2;
+			lowDepths = false;
 			break;
 		case ALPHA:
-			if (bitdepth != 8) {
+			channels = 4;
+			lowDepths = false;
+			break;
+		default:
+			throw new IOException("unsupported color format: " + color_type);
+		}
+
+		switch (bitdepth) {
+		case 1:
+		case 2:
+		case 4:
+			if (!lowDepths) {
 				throw new IOException("Unsupported bit depth: " + bitdepth);
 			}
-			bpp = 4;
 			break;
-		case INDEXED:
-			switch (bitdepth) {
-			case 8:
-			case 4:
-			case 2:
-			case 1:
-				bpp = 1;
-				break;
-			default:
+		case 8:
+			break;
+		case 16:
+			if (color_type == INDEXED) {
 				throw new IOException("Unsupported bit depth: " + bitdepth);
 			}
 			break;
 		default:
-			throw new IOException("unsupported color format: " + color_type);
+			throw new IOException("Unsupported bit depth: " + bitdepth);
 		}
+		bpp = Math.max(1, (channels * bitdepth) >> 3);
 
 		if (iobuffer[10] != 0) {
 			throw new IOException("unsupported compression method");
@@ -359,9 +919,10 @@ public class ImageDecoder {
 		if (iobuffer[11] != 0) {
 			throw new IOException("unsupported filtering method");
 		}
-		if (iobuffer[12] != 0) {
+		if (iobuffer[12] != 0 && iobuffer[12] != 1) {
 			throw new IOException("unsupported interlace method");
 		}
+		interlaced = iobuffer[12] == 1;
 	}
 
 	private void readPLTE() throws IOException {
@@ -375,6 +936,11 @@ public class ImageDecoder {
 
 	private void readtRNS() throws IOException {
 		switch (color_type) {
+		case GRAY:
+			checkChunkLength(2);
+			transPixel = new byte[2];
+			readChunk(transPixel, 0, 2);
+			break;
 		case TRUECOLOR:
 			checkChunkLength(6);
 			transPixel = new byte[6];
@@ -0,0 +1,204 @@
+package org.dinigine.decoder;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import org.dinigine.util.Buffers;
+
+/**
+ * Reads a 2D texture and its mip chain from a KTX 1.1 file. Levels are kept
+ * exactly as stored, so block compressed data can go straight to
+ * {@code glCompressedTexImage2D}. Cube maps, arrays and 3D textures aren't
+ * supported.
+ */
+public class KTXDecoder {
+
+	private static final byte[] IDENTIFIER = { (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n',
+			0x1A, '\n' };
+	private static final int ENDIANNESS = 0x04030201;
+
+	public static final int COMPRESSED_RGB_S3TC_DXT1 = 0x83F0;
+	public static final int COMPRESSED_RGBA_S3TC_DXT1 = 0x83F1;
+	public static final int COMPRESSED_RGBA_S3TC_DXT5 = 0x83F3;
+	public static final int COMPRESSED_RGBA_BPTC_UNORM = 0x8E8C;
+	public static final int COMPRESSED_SRGB_ALPHA_BPTC_UNORM = 0x8E8D;
+
+	public static final int RGB = 0x1907;
+	public static final int RGBA = 0x1908;
+	public static final int UNSIGNED_BYTE = 0x1401;
+
+	private final int type;
+	private final int format;
+	private final int internalFormat;
+	private final int baseInternalFormat;
+	private final int width;
+	private final int height;
+	private final ByteBuffer[] levels;
+
+	public KTXDecoder(InputStream res) throws IOException {
+		DataInputStream in = new DataInputStream(res);
+
+		byte[] identifier = new byte[IDENTIFIER.length];
+		in.readFully(identifier);
+		if (!Arrays.equals(identifier, IDENTIFIER)) {
+			throw new IOException("Not a valid KTX file");
+		}
+
+		// swap is for the header, read big endian by DataInputStream
+		boolean swap;
+		int endianness = in.readInt();
+		if (endianness == ENDIANNESS) swap = false;
+		else if (endianness == Integer.reverseBytes(ENDIANNESS)) swap = true;
+		else throw new IOException("Bad endianness: 0x" + Integer.toHexString(endianness));
+		ByteOrder order = swap ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+		// levels go to GL as they are, so they must be in the host's order
+		boolean swapLevels = order != ByteOrder.nativeOrder();
+
+		int[] header = new int[12];
+		for (int i = 0; i < header.length; i++) {
+			header[i] = swap ? Integer.reverseBytes(in.readInt()) : in.readInt();
+		}
+		type = header[0];
+		int typeSize = header[1];
+		format = header[2];
+		internalFormat = header[3];
+		baseInternalFormat = header[4];
+		width = header[5];
+		height = header[6];
+		int depth = header[7], elements = header[8], faces = header[9];
+		int levelCount = Math.max(1, header[10]);
+		int keyValueBytes = header[11];
+
+		if (width <= 0 || height <= 0) {
+			throw new IOException("Bad size: " + width + "x" + height);
+		}
+		if (depth > 1 || elements > 0 || faces != 1) {
+			throw new IOException("Only plain 2D textures are supported");
+		}
+		if (levelCount > 32) {
+			throw new IOException("Bad level count: " + levelCount);
+		}
+		if (keyValueBytes < 0) throw new IOException("Bad key/value size: " + keyValueBytes);
+		in.readFully(new byte[keyValueBytes]);
+
+		levels = new ByteBuffer[levelCount];
+		byte[] bytes = new byte[0];
+		byte[] padding = new byte[3];
+		for (int i = 0; i < levelCount; i++) {
+			int size = swap ? Integer.reverseBytes(in.readInt()) : in.readInt();
+			if (size < 0) throw new IOException("Bad level size: " + size);
+			if (bytes.length < size) bytes = new byte[size];
+			in.readFully(bytes, 0, size);
+			in.readFully(padding, 0, 3 - ((size + 3) & 3));
+
+			if (swapLevels && typeSize > 1) swap(bytes, size, typeSize);
+			ByteBuffer level = Buffers.newByteBuffer(size);
+			level.put(bytes, 0, size).flip();
+			levels[i] = level;
+		}
+	}
+
+	private static void swap(byte[] bytes, int size, int typeSize) {
+		for (int i = 0; i + typeSize <= size; i += typeSize) {
+			for (int a = i, b = i + typeSize - 1; a < b; a++, b--) {
+				byte t = bytes[a];
+				bytes[a] = bytes[b];
+				bytes[b] = t;
+			}
+		}
+	}
+
+	/**
+	 * Writes a 2D texture, little endian.
+	 *
+	 * @param type
+	 *            - the GL pixel type, 0 for compressed data
+	 * @param format
+	 *            - the GL pixel format, 0 for compressed data
+	 */
+	public static void write(OutputStream out, int type, int format, int internalFormat,
+			int baseInternalFormat, int width, int height, ByteBuffer... levels) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(IDENTIFIER.length + 13 * 4).order(ByteOrder.LITTLE_ENDIAN);
+		header.put(IDENTIFIER);
+		header.putInt(ENDIANNESS);
+		header.putInt(type).putInt(1).putInt(format);
+		header.putInt(internalFormat).putInt(baseInternalFormat);
+		header.putInt(width).putInt(height).putInt(0).putInt(0).putInt(1);
+		header.putInt(levels.length).putInt(0);
+		out.write(header.array());
+
+		byte[] size = new byte[4];
+		byte[] padding = new byte[3];
+		for (ByteBuffer level : levels) {
+			int n = level.remaining();
+			ByteBuffer.wrap(size).order(ByteOrder.LITTLE_ENDIAN).putInt(n);
+			out.write(size);
+			byte[] bytes = new byte[n];
+			level.duplicate().get(bytes);
+			out.write(bytes);
+			out.write(padding, 0, 3 - ((n + 3) & 3));
+		}
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return true if the levels are block compressed
+	 */
+	public boolean isCompressed() {
+		return type == 0;
+	}
+
+	/**
+	 * @return the GL pixel type, 0 if compressed
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * @return the GL pixel format, 0 if compressed
+	 */
+	public int getFormat() {
+		return format;
+	}
+
+	public int getInternalFormat() {
+		return internalFormat;
+	}
+
+	public int getBaseInternalFormat() {
+		return baseInternalFormat;
+	}
+
+	public int getLevelCount() {
+		return levels.length;
+	}
+
+	public int getLevelWidth(int level) {
+		return Math.max(1, width >> level);
+	}
+
+	public int getLevelHeight(int level) {
+		return Math.max(1, height >> level);
+	}
+
+	/**
+	 * @return the level's data, shared with this decoder
+	 */
+	public ByteBuffer getLevel(int level) {
+		return levels[level].duplicate();
+	}
+
+}
@@ -0,0 +1,140 @@
+package org.dinigine.input;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Names game actions and binds any number of keys and mouse buttons to each,
+ * so game code asks about "jump" rather than the space bar. Each action keeps
+ * its bindings as a mask of the same bits as {@link InputState}, so checking
+ * one costs a handful of ANDs however many inputs it has.
+ *
+ * <pre>
+ * ActionMap actions = new ActionMap(Input.getState());
+ * int jump = actions.bindKey("jump", Input.KEY_SPACE);
+ * actions.bindMouseButton("jump", Input.MOUSE_BUTTON_RIGHT);
+ * if (actions.isPressed(jump)) ...
+ * </pre>
+ */
+public class ActionMap {
+
+	private final InputState state;
+	private final Map<String, Integer> ids = new HashMap<>();
+	private String[] names = new String[8];
+	/** {@link InputState#WORDS} longs per action */
+	private long[] masks = new long[8 * InputState.WORDS];
+	private int count;
+
+	public ActionMap(InputState state) {
+		this.state = state;
+	}
+
+	/**
+	 * @return the action's id, adding it with no bindings if it's new
+	 */
+	public int getAction(String name) {
+		Integer id = ids.get(name);
+		if (id != null) return id;
+
+		if (count == names.length) {
+			names = Arrays.copyOf(names, count * 2);
+			masks = Arrays.copyOf(masks, count * 2 * InputState.WORDS);
+		}
+		names[count] = name;
+		ids.put(name, count);
+		return count++;
+	}
+
+	public String getName(int action) {
+		check(action);
+		return names[action];
+	}
+
+	/**
+	 * @return the action's id
+	 */
+	public int bindKey(String action, int key) {
+		return bind(action, InputState.keyBit(key), "Unknown key: ", key);
+	}
+
+	/**
+	 * @return the action's id
+	 */
+	public int bindMouseButton(String action, int button) {
+		return bind(action, InputState.mouseBit(button), "Unknown mouse button: ", button);
+	}
+
+	private int bind(String action, int bit, String error, int code) {
+		if (bit < 0) throw new IllegalArgumentException(error + code);
+		int id = getAction(action);
+		masks[id * InputState.WORDS + (bit >>> 6)] |= 1L << bit;
+		return id;
+	}
+
+	/**
+	 * Removes every key and button bound to the action.
+	 */
+	public void unbind(String action) {
+		Integer id = ids.get(action);
+		if (id != null) Arrays.fill(masks, id * InputState.WORDS, (id + 1) * InputState.WORDS, 0);
+	}
+
+	/**
+	 * @return true while any of the action's inputs is held
+	 */
+	public boolean isDown(int action) {
+		return any(action, state.getHeld());
+	}
+
+	/**
+	 * @return true if any of the action's inputs went down this frame
+	 */
+	public boolean isPressed(int action) {
+		return any(action, state.getPressed());
+	}
+
+	/**
+	 * @return true if any of the action's inputs came up this frame
+	 */
+	public boolean isReleased(int action) {
+		return any(action, state.getReleased());
+	}
+
+	public boolean isDown(String action) {
+		Integer id = ids.get(action);
+		return id != null && isDown(id);
+	}
+
+	public boolean isPressed(String action) {
+		Integer id = ids.get(action);
+		return id != null && isPressed(id);
+	}
+
+	public boolean isReleased(String action) {
+		Integer id = ids.get(action);
+		return id != null && isReleased(id);
+	}
+
+	private boolean any(int action, long[] bits) {
+		check(action);
+		int offset = action * InputState.WORDS;
+		long hit = 0;
+		for (int i = 0; i < InputState.WORDS; i++) {
+			hit |= masks[offset + i] & bits[i];
+		}
+		return hit != 0;
+	}
+
+	private void check(int action) {
+		if (action < 0 || action >= count) throw new IllegalArgumentException("Unknown action: " + action);
+	}
+
+	/**
+	 * @return the number of actions
+	 */
+	public int size() {
+		return count;
+	}
+
+}
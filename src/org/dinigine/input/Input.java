@@ -1,11 +1,10 @@
 package org.dinigine.input;
 
-import java.nio.DoubleBuffer;
-
-import org.dinigine.opengl.Display;
-import org.dinigine.util.Buffers;
 import org.lwjgl.glfw.GLFW;
-import org.lwjgl.system.MemoryUtil;
+import org.lwjgl.glfw.GLFWCursorPosCallback;
+import org.lwjgl.glfw.GLFWKeyCallback;
+import org.lwjgl.glfw.GLFWMouseButtonCallback;
+import org.lwjgl.glfw.GLFWScrollCallback;
 
 /**
  * @author Robert Myers
@@ -142,29 +141,127 @@ public final class Input {
 			MOD_ALT = 0x4,
 			MOD_SUPER = 0x8;
 
+	public static final int MOUSE_BUTTON_1 = 0,
+			MOUSE_BUTTON_2 = 1,
+			MOUSE_BUTTON_3 = 2,
+			MOUSE_BUTTON_4 = 3,
+			MOUSE_BUTTON_5 = 4,
+			MOUSE_BUTTON_6 = 5,
+			MOUSE_BUTTON_7 = 6,
+			MOUSE_BUTTON_8 = 7,
+			MOUSE_BUTTON_LEFT = MOUSE_BUTTON_1,
+			MOUSE_BUTTON_RIGHT = MOUSE_BUTTON_2,
+			MOUSE_BUTTON_MIDDLE = MOUSE_BUTTON_3;
+
 	private Input() {}
 
-	private static final DoubleBuffer cursor_pos = Buffers.newDoubleBuffer(2);
-	private static final long cursor_pos_address = MemoryUtil.memAddress(cursor_pos);
+	private static final InputQueue queue = new InputQueue(1024);
+	private static final InputState state = new InputState();
+
+	/**
+	 * Listens to the window's input events, which are queued while GLFW polls
+	 * and applied by {@link #poll()}. The callbacks are freed with the window.
+	 */
+	public static void init(long window) {
+		GLFW.glfwSetKeyCallback(window, new GLFWKeyCallback() {
+			@Override
+			public void invoke(long window, int key, int scancode, int action, int mods) {
+				queue.pushKey(key, action, mods);
+			}
+		});
+		GLFW.glfwSetMouseButtonCallback(window, new GLFWMouseButtonCallback() {
+			@Override
+			public void invoke(long window, int button, int action, int mods) {
+				queue.pushMouseButton(button, action, mods);
+			}
+		});
+		GLFW.glfwSetCursorPosCallback(window, new GLFWCursorPosCallback() {
+			@Override
+			public void invoke(long window, double x, double y) {
+				queue.pushCursor(x, y);
+			}
+		});
+		GLFW.glfwSetScrollCallback(window, new GLFWScrollCallback() {
+			@Override
+			public void invoke(long window, double dx, double dy) {
+				queue.pushScroll(dx, dy);
+			}
+		});
+
+		// the cursor callback only fires once it moves
+		double[] x = new double[1], y = new double[1];
+		GLFW.glfwGetCursorPos(window, x, y);
+		queue.pushCursor(x[0], y[0]);
+	}
+
+	/**
+	 * Applies the events queued since the last poll, starting a new frame of
+	 * input.
+	 */
+	public static void poll() {
+		state.update(queue);
+	}
 
 	public static boolean isKeyDown(int code) {
-		return GLFW.glfwGetKey(Display.getHandle(), code) == GLFW.GLFW_PRESS;
+		return state.isKeyDown(code);
+	}
+
+	/**
+	 * @return true if the key went down since the last poll
+	 */
+	public static boolean isKeyPressed(int code) {
+		return state.isKeyPressed(code);
+	}
+
+	/**
+	 * @return true if the key came up since the last poll
+	 */
+	public static boolean isKeyReleased(int code) {
+		return state.isKeyReleased(code);
 	}
 
 	public static boolean isMouseButtonDown(int button) {
-		return GLFW.glfwGetMouseButton(Display.getHandle(), button) == GLFW.GLFW_PRESS;
+		return state.isMouseButtonDown(button);
+	}
+
+	public static boolean isMouseButtonPressed(int button) {
+		return state.isMouseButtonPressed(button);
+	}
+
+	public static boolean isMouseButtonReleased(int button) {
+		return state.isMouseButtonReleased(button);
 	}
 
 	public static float getMouseX() {
-		return (float) cursor_pos.get(0);
+		return state.getMouseX();
 	}
 
 	public static float getMouseY() {
-		return (float) cursor_pos.get(1);
+		return state.getMouseY();
 	}
 
-	public static void poll() {
-		GLFW.nglfwGetCursorPos(Display.getHandle(), cursor_pos_address, cursor_pos_address + 8);
+	public static float getMouseDX() {
+		return state.getMouseDX();
+	}
+
+	public static float getMouseDY() {
+		return state.getMouseDY();
+	}
+
+	public static float getScrollX() {
+		return state.getScrollX();
+	}
+
+	public static float getScrollY() {
+		return state.getScrollY();
+	}
+
+	public static InputState getState() {
+		return state;
+	}
+
+	public static InputQueue getQueue() {
+		return queue;
 	}
 
 }
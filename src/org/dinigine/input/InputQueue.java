@@ -0,0 +1,151 @@
+package org.dinigine.input;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size ring of input events, each packed into two longs so pushing
+ * one never allocates. One thread pushes, usually from the GLFW callbacks
+ * during {@code glfwPollEvents}, and one thread reads, without locks.
+ * <p>
+ * Reading works like a cursor: each {@link #poll()} moves to the next event,
+ * whose fields the getters then return.
+ */
+public class InputQueue {
+
+	public static final int KEY = 1, MOUSE_BUTTON = 2, CURSOR = 3, SCROLL = 4;
+
+	private final long[] events;
+	private final int mask;
+	/** Events pushed and events read, each only ever set by its own side */
+	private final AtomicLong tail = new AtomicLong(), head = new AtomicLong();
+	private long limit;
+	private volatile long dropped;
+
+	private long header, payload;
+
+	/**
+	 * @param capacity
+	 *            - events held before new ones are dropped, rounded up to a
+	 *            power of two
+	 */
+	public InputQueue(int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) size <<= 1;
+		events = new long[size * 2];
+		mask = size - 1;
+	}
+
+	public void pushKey(int key, int action, int mods) {
+		push(KEY, key, action, mods, 0);
+	}
+
+	public void pushMouseButton(int button, int action, int mods) {
+		push(MOUSE_BUTTON, button, action, mods, 0);
+	}
+
+	public void pushCursor(double x, double y) {
+		push(CURSOR, 0, 0, 0, pack(x, y));
+	}
+
+	public void pushScroll(double dx, double dy) {
+		push(SCROLL, 0, 0, 0, pack(dx, dy));
+	}
+
+	private static long pack(double x, double y) {
+		return (long) Float.floatToRawIntBits((float) x) << 32 | Float.floatToRawIntBits((float) y) & 0xFFFFFFFFL;
+	}
+
+	/**
+	 * Drops the event if the queue is full, since the GLFW thread can't wait
+	 * for the reader.
+	 */
+	private void push(int type, int code, int action, int mods, long payload) {
+		long t = tail.get();
+		if (t - head.get() > mask) {
+			dropped++;
+			return;
+		}
+		int i = (int) (t & mask) << 1;
+		events[i] = (long) type << 56 | (long) (action & 0xFF) << 48 | (long) (mods & 0xFFFF) << 32 | code & 0xFFFFFFFFL;
+		events[i + 1] = payload;
+		tail.lazySet(t + 1);
+	}
+
+	/**
+	 * Moves to the next event.
+	 *
+	 * @return false if there are no more
+	 */
+	public boolean poll() {
+		long h = head.get();
+		if (h == limit) {
+			limit = tail.get();
+			if (h == limit) return false;
+		}
+		int i = (int) (h & mask) << 1;
+		header = events[i];
+		payload = events[i + 1];
+		head.lazySet(h + 1);
+		return true;
+	}
+
+	/**
+	 * @return {@link #KEY}, {@link #MOUSE_BUTTON}, {@link #CURSOR} or
+	 *         {@link #SCROLL}
+	 */
+	public int getType() {
+		return (int) (header >>> 56);
+	}
+
+	/**
+	 * @return the key or mouse button
+	 */
+	public int getCode() {
+		return (int) header;
+	}
+
+	/**
+	 * @return GLFW_PRESS, GLFW_RELEASE or GLFW_REPEAT
+	 */
+	public int getAction() {
+		return (int) (header >>> 48) & 0xFF;
+	}
+
+	public int getMods() {
+		return (int) (header >>> 32) & 0xFFFF;
+	}
+
+	/**
+	 * @return the cursor's x, or the horizontal scroll
+	 */
+	public float getX() {
+		return Float.intBitsToFloat((int) (payload >>> 32));
+	}
+
+	/**
+	 * @return the cursor's y, or the vertical scroll
+	 */
+	public float getY() {
+		return Float.intBitsToFloat((int) payload);
+	}
+
+	/**
+	 * @return events pushed but not yet read
+	 */
+	public int size() {
+		return (int) (tail.get() - head.get());
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * @return events dropped because the queue was full
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+}
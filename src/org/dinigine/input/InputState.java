@@ -0,0 +1,186 @@
+package org.dinigine.input;
+
+import java.util.Arrays;
+
+import org.lwjgl.glfw.GLFW;
+
+/**
+ * What the keys, mouse buttons, cursor and scroll wheel did over one frame,
+ * built from an {@link InputQueue}. Buttons are bits, so checking one never
+ * calls into GLFW, and a press and release within the same frame still shows
+ * as pressed and released.
+ */
+public class InputState {
+
+	public static final int MOUSE_BUTTONS = 8;
+	/** Bit of the first mouse button, after the keys */
+	static final int MOUSE_OFFSET = Input.KEY_LAST + 1;
+	static final int BUTTONS = MOUSE_OFFSET + MOUSE_BUTTONS;
+	static final int WORDS = (BUTTONS + 63) >>> 6;
+
+	private final long[] held = new long[WORDS];
+	private final long[] pressed = new long[WORDS];
+	private final long[] released = new long[WORDS];
+
+	private int mods;
+	private float mouseX, mouseY, mouseDX, mouseDY;
+	private float scrollX, scrollY;
+
+	/**
+	 * Starts a new frame: forgets last frame's presses, releases and motion,
+	 * then applies every event waiting in {@code queue}.
+	 */
+	public void update(InputQueue queue) {
+		Arrays.fill(pressed, 0);
+		Arrays.fill(released, 0);
+		float lastX = mouseX, lastY = mouseY;
+		scrollX = scrollY = 0;
+
+		while (queue.poll()) {
+			switch (queue.getType()) {
+			case InputQueue.KEY:
+				int key = keyBit(queue.getCode());
+				if (key >= 0) setButton(key, queue.getAction(), queue.getMods());
+				break;
+			case InputQueue.MOUSE_BUTTON:
+				int button = mouseBit(queue.getCode());
+				if (button >= 0) setButton(button, queue.getAction(), queue.getMods());
+				break;
+			case InputQueue.CURSOR:
+				mouseX = queue.getX();
+				mouseY = queue.getY();
+				break;
+			case InputQueue.SCROLL:
+				scrollX += queue.getX();
+				scrollY += queue.getY();
+				break;
+			}
+		}
+
+		mouseDX = mouseX - lastX;
+		mouseDY = mouseY - lastY;
+	}
+
+	/**
+	 * @return the bit of a key, or -1 for unknown keys
+	 */
+	static int keyBit(int key) {
+		return key >= 0 && key < MOUSE_OFFSET ? key : -1;
+	}
+
+	/**
+	 * @return the bit of a mouse button, or -1 if there is no such button
+	 */
+	static int mouseBit(int button) {
+		return button >= 0 && button < MOUSE_BUTTONS ? MOUSE_OFFSET + button : -1;
+	}
+
+	private void setButton(int bit, int action, int mods) {
+		this.mods = mods;
+		long mask = 1L << bit;
+		int word = bit >>> 6;
+		if (action == GLFW.GLFW_PRESS) {
+			held[word] |= mask;
+			pressed[word] |= mask;
+		} else if (action == GLFW.GLFW_RELEASE) {
+			held[word] &= ~mask;
+			released[word] |= mask;
+		}
+	}
+
+	/**
+	 * Forgets everything, like when the window loses focus and releases won't
+	 * arrive.
+	 */
+	public void clear() {
+		Arrays.fill(held, 0);
+		Arrays.fill(pressed, 0);
+		Arrays.fill(released, 0);
+		mods = 0;
+		mouseDX = mouseDY = scrollX = scrollY = 0;
+	}
+
+	static boolean test(long[] bits, int bit) {
+		return bit >= 0 && (bits[bit >>> 6] & 1L << bit) != 0;
+	}
+
+	long[] getHeld() {
+		return held;
+	}
+
+	long[] getPressed() {
+		return pressed;
+	}
+
+	long[] getReleased() {
+		return released;
+	}
+
+	public boolean isKeyDown(int key) {
+		return test(held, keyBit(key));
+	}
+
+	/**
+	 * @return true if the key went down this frame
+	 */
+	public boolean isKeyPressed(int key) {
+		return test(pressed, keyBit(key));
+	}
+
+	/**
+	 * @return true if the key came up this frame
+	 */
+	public boolean isKeyReleased(int key) {
+		return test(released, keyBit(key));
+	}
+
+	public boolean isMouseButtonDown(int button) {
+		return test(held, mouseBit(button));
+	}
+
+	public boolean isMouseButtonPressed(int button) {
+		return test(pressed, mouseBit(button));
+	}
+
+	public boolean isMouseButtonReleased(int button) {
+		return test(released, mouseBit(button));
+	}
+
+	/**
+	 * @return the modifier keys of the latest key or button event
+	 */
+	public int getMods() {
+		return mods;
+	}
+
+	public float getMouseX() {
+		return mouseX;
+	}
+
+	public float getMouseY() {
+		return mouseY;
+	}
+
+	/**
+	 * @return how far the cursor moved this frame
+	 */
+	public float getMouseDX() {
+		return mouseDX;
+	}
+
+	public float getMouseDY() {
+		return mouseDY;
+	}
+
+	/**
+	 * @return the horizontal scroll this frame
+	 */
+	public float getScrollX() {
+		return scrollX;
+	}
+
+	public float getScrollY() {
+		return scrollY;
+	}
+
+}
@@ -0,0 +1,171 @@
+package org.dinigine.math;
+
+/**
+ * An axis aligned bounding box. A new box is empty, inside out, so including
+ * the first point or box sets it.
+ */
+public class AABB {
+
+	public float minX, minY, minZ;
+	public float maxX, maxY, maxZ;
+
+	public AABB() {
+		empty();
+	}
+
+	public AABB(AABB src) {
+		set(src);
+	}
+
+	public AABB(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		set(minX, minY, minZ, maxX, maxY, maxZ);
+	}
+
+	public AABB set(AABB src) {
+		return set(src.minX, src.minY, src.minZ, src.maxX, src.maxY, src.maxZ);
+	}
+
+	public AABB set(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		this.minX = minX;
+		this.minY = minY;
+		this.minZ = minZ;
+		this.maxX = maxX;
+		this.maxY = maxY;
+		this.maxZ = maxZ;
+		return this;
+	}
+
+	/**
+	 * Sets the box around a center point.
+	 */
+	public AABB setCenter(float x, float y, float z, float halfX, float halfY, float halfZ) {
+		return set(x - halfX, y - halfY, z - halfZ, x + halfX, y + halfY, z + halfZ);
+	}
+
+	public AABB empty() {
+		return set(Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+				Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+	}
+
+	public boolean isEmpty() {
+		return minX > maxX || minY > maxY || minZ > maxZ;
+	}
+
+	public AABB include(Vec3 v) {
+		return include(v.x, v.y, v.z);
+	}
+
+	public AABB include(float x, float y, float z) {
+		if (x < minX) minX = x;
+		if (y < minY) minY = y;
+		if (z < minZ) minZ = z;
+		if (x > maxX) maxX = x;
+		if (y > maxY) maxY = y;
+		if (z > maxZ) maxZ = z;
+		return this;
+	}
+
+	public AABB include(AABB other) {
+		if (other.minX < minX) minX = other.minX;
+		if (other.minY < minY) minY = other.minY;
+		if (other.minZ < minZ) minZ = other.minZ;
+		if (other.maxX > maxX) maxX = other.maxX;
+		if (other.maxY > maxY) maxY = other.maxY;
+		if (other.maxZ > maxZ) maxZ = other.maxZ;
+		return this;
+	}
+
+	/**
+	 * Grows the box by {@code n} on every side.
+	 */
+	public AABB expand(float n) {
+		return set(minX - n, minY - n, minZ - n, maxX + n, maxY + n, maxZ + n);
+	}
+
+	public boolean contains(float x, float y, float z) {
+		return x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ;
+	}
+
+	public boolean contains(AABB other) {
+		return other.minX >= minX && other.minY >= minY && other.minZ >= minZ
+				&& other.maxX <= maxX && other.maxY <= maxY && other.maxZ <= maxZ;
+	}
+
+	public boolean intersects(AABB other) {
+		return other.minX <= maxX && other.maxX >= minX
+				&& other.minY <= maxY && other.maxY >= minY
+				&& other.minZ <= maxZ && other.maxZ >= minZ;
+	}
+
+	public boolean intersects(Sphere s) {
+		float dx = Math.max(minX - s.x, Math.max(0, s.x - maxX));
+		float dy = Math.max(minY - s.y, Math.max(0, s.y - maxY));
+		float dz = Math.max(minZ - s.z, Math.max(0, s.z - maxZ));
+		return dx * dx + dy * dy + dz * dz <= s.radius * s.radius;
+	}
+
+	public Vec3 getCenter(Vec3 dest) {
+		return dest.set((minX + maxX) * .5f, (minY + maxY) * .5f, (minZ + maxZ) * .5f);
+	}
+
+	/**
+	 * @return half the size on each axis
+	 */
+	public Vec3 getExtents(Vec3 dest) {
+		return dest.set((maxX - minX) * .5f, (maxY - minY) * .5f, (maxZ - minZ) * .5f);
+	}
+
+	public float surfaceArea() {
+		float x = maxX - minX, y = maxY - minY, z = maxZ - minZ;
+		return 2 * (x * y + y * z + z * x);
+	}
+
+	/**
+	 * Sets {@code dest}, which may be this, to the box around this one
+	 * transformed by {@code m}, which must have a bottom row of 0 0 0 1.
+	 */
+	public AABB transform(Mat4 m, AABB dest) {
+		float cx = (minX + maxX) * .5f, cy = (minY + maxY) * .5f, cz = (minZ + maxZ) * .5f;
+		float ex = (maxX - minX) * .5f, ey = (maxY - minY) * .5f, ez = (maxZ - minZ) * .5f;
+		float x = m.m00 * cx + m.m10 * cy + m.m20 * cz + m.m30;
+		float y = m.m01 * cx + m.m11 * cy + m.m21 * cz + m.m31;
+		float z = m.m02 * cx + m.m12 * cy + m.m22 * cz + m.m32;
+		// each new extent is the sum of the absolute contributions
+		float hx = Math.abs(m.m00) * ex + Math.abs(m.m10) * ey + Math.abs(m.m20) * ez;
+		float hy = Math.abs(m.m01) * ex + Math.abs(m.m11) * ey + Math.abs(m.m21) * ez;
+		float hz = Math.abs(m.m02) * ex + Math.abs(m.m12) * ey + Math.abs(m.m22) * ez;
+		return dest.setCenter(x, y, z, hx, hy, hz);
+	}
+
+	public AABB copy() {
+		return new AABB(this);
+	}
+
+	@Override
+	public String toString() {
+		return minX + " " + minY + " " + minZ + " -> " + maxX + " " + maxY + " " + maxZ;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 31 + Float.floatToIntBits(minX);
+		hash = hash * 31 + Float.floatToIntBits(minY);
+		hash = hash * 31 + Float.floatToIntBits(minZ);
+		hash = hash * 31 + Float.floatToIntBits(maxX);
+		hash = hash * 31 + Float.floatToIntBits(maxY);
+		return hash * 31 + Float.floatToIntBits(maxZ);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) return true;
+		if (o == null) return false;
+		if (o instanceof AABB) {
+			AABB b = (AABB) o;
+			return minX == b.minX && minY == b.minY && minZ == b.minZ
+					&& maxX == b.maxX && maxY == b.maxY && maxZ == b.maxZ;
+		}
+		return false;
+	}
+
+}
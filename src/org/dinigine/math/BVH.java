@@ -0,0 +1,604 @@
+package org.dinigine.math;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.lang.Validate;
+
+/**
+ * A dynamic bounding volume hierarchy of boxes, for culling and overlap
+ * queries over scenes too big to test object by object.
+ * <p>
+ * Each object is a leaf holding its box, grown by a margin, and an int of the
+ * caller's, usually an index into its own arrays. Leaves are inserted next to
+ * the sibling that grows the tree's surface area least, and the tree is kept
+ * balanced with rotations, so queries stay logarithmic as objects come and go.
+ * <p>
+ * Moving objects can either be reinserted with {@link #move(int, AABB)}, which
+ * does nothing while an object stays inside its margin, or updated in place
+ * with {@link #setBounds(int, AABB)} and refit in one pass, which is cheaper
+ * when most objects move every frame but slowly loosens the tree.
+ */
+public class BVH {
+
+	private static final int NULL = -1;
+	private static final int PARENT = 0, CHILD1 = 1, CHILD2 = 2, HEIGHT = 3;
+	/** Subtrees handed out by {@link #cull(Frustum, int[], Executor)} */
+	private static final int PARALLEL_SUBTREES = 32;
+
+	private final float margin;
+
+	/** minX, minY, minZ, maxX, maxY, maxZ per node */
+	private float[] bounds;
+	/**
+	 * Parent, children and height per node, together so a visit touches as
+	 * few cache lines as possible. Free nodes keep the next free node as
+	 * their parent and a height of -1, leaves have a height of 0.
+	 */
+	private int[] nodes;
+	private int[] data;
+	private int capacity;
+
+	private int root = NULL;
+	private int free = NULL;
+	private int leaves;
+	private boolean refitNeeded;
+
+	private final Worker main = new Worker();
+	private Worker[] workers = new Worker[0];
+
+	public BVH() {
+		this(0);
+	}
+
+	/**
+	 * @param margin
+	 *            - how far past its bounds an object can move before
+	 *            {@link #move(int, AABB)} reinserts it
+	 */
+	public BVH(float margin) {
+		Validate.isTrue(margin >= 0, "Margin can't be negative");
+		this.margin = margin;
+		allocate(16);
+	}
+
+	private void allocate(int capacity) {
+		int old = this.capacity;
+		bounds = old == 0 ? new float[capacity * 6] : Arrays.copyOf(bounds, capacity * 6);
+		nodes = old == 0 ? new int[capacity * 4] : Arrays.copyOf(nodes, capacity * 4);
+		data = old == 0 ? new int[capacity] : Arrays.copyOf(data, capacity);
+		this.capacity = capacity;
+		for (int i = old; i < capacity; i++) {
+			nodes[i * 4 + PARENT] = i + 1 < capacity ? i + 1 : free;
+			nodes[i * 4 + HEIGHT] = -1;
+		}
+		free = old;
+	}
+
+	private int allocateNode() {
+		if (free == NULL) allocate(capacity * 2);
+		int node = free;
+		free = nodes[node * 4 + PARENT];
+		nodes[node * 4 + PARENT] = NULL;
+		nodes[node * 4 + CHILD1] = NULL;
+		nodes[node * 4 + CHILD2] = NULL;
+		nodes[node * 4 + HEIGHT] = 0;
+		return node;
+	}
+
+	private void freeNode(int node) {
+		nodes[node * 4 + PARENT] = free;
+		nodes[node * 4 + HEIGHT] = -1;
+		free = node;
+	}
+
+	/**
+	 * @return the object's proxy, which stays the same until it's removed
+	 */
+	public int insert(AABB box, int data) {
+		int leaf = allocateNode();
+		setLeaf(leaf, box);
+		this.data[leaf] = data;
+		insertLeaf(leaf);
+		leaves++;
+		return leaf;
+	}
+
+	public void remove(int proxy) {
+		checkProxy(proxy);
+		removeLeaf(proxy);
+		freeNode(proxy);
+		leaves--;
+	}
+
+	/**
+	 * Reinserts the object if it's left its margin.
+	 *
+	 * @return true if it was reinserted
+	 */
+	public boolean move(int proxy, AABB box) {
+		checkProxy(proxy);
+		int b = proxy * 6;
+		if (bounds[b] <= box.minX && bounds[b + 1] <= box.minY && bounds[b + 2] <= box.minZ
+				&& bounds[b + 3] >= box.maxX && bounds[b + 4] >= box.maxY && bounds[b + 5] >= box.maxZ) {
+			return false;
+		}
+		removeLeaf(proxy);
+		setLeaf(proxy, box);
+		insertLeaf(proxy);
+		return true;
+	}
+
+	/**
+	 * Changes an object's bounds without moving it in the tree. The boxes
+	 * above it are brought up to date by {@link #refit()}, which queries call
+	 * first if needed.
+	 */
+	public void setBounds(int proxy, AABB box) {
+		checkProxy(proxy);
+		setLeaf(proxy, box);
+		refitNeeded = true;
+	}
+
+	/**
+	 * Recomputes every inner box from its children after
+	 * {@link #setBounds(int, AABB)}.
+	 */
+	public void refit() {
+		refitNeeded = false;
+		if (root == NULL) return;
+		// parents come before children in the order visited, so go backwards
+		Worker w = main;
+		int n = 0;
+		w.top = 0;
+		w.push(root, 0);
+		while (w.top > 0) {
+			int node = w.nodes[--w.top];
+			if (nodes[node * 4 + HEIGHT] == 0) continue;
+			w.emit(node, n++);
+			w.push(nodes[node * 4 + CHILD1], 0);
+			w.push(nodes[node * 4 + CHILD2], 0);
+		}
+		for (int i = n - 1; i >= 0; i--) {
+			int node = w.out[i];
+			union(node, nodes[node * 4 + CHILD1], nodes[node * 4 + CHILD2]);
+		}
+	}
+
+	public int getData(int proxy) {
+		checkProxy(proxy);
+		return data[proxy];
+	}
+
+	/**
+	 * @return the object's bounds grown by the margin
+	 */
+	public AABB getBounds(int proxy, AABB dest) {
+		checkProxy(proxy);
+		int b = proxy * 6;
+		return dest.set(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4], bounds[b + 5]);
+	}
+
+	/**
+	 * @return the number of objects
+	 */
+	public int size() {
+		return leaves;
+	}
+
+	/**
+	 * @return the longest path from the root to a leaf, 0 with one object
+	 */
+	public int getHeight() {
+		return root == NULL ? 0 : nodes[root * 4 + HEIGHT];
+	}
+
+	public void clear() {
+		for (int i = 0; i < capacity; i++) {
+			nodes[i * 4 + PARENT] = i + 1 < capacity ? i + 1 : NULL;
+			nodes[i * 4 + HEIGHT] = -1;
+		}
+		free = 0;
+		root = NULL;
+		leaves = 0;
+		refitNeeded = false;
+	}
+
+	/**
+	 * Writes the data of every object at least partly inside the frustum.
+	 *
+	 * @param out
+	 *            - the results, which must have room for {@link #size()}
+	 * @return how many were written
+	 */
+	public int cull(Frustum frustum, int[] out) {
+		Validate.isTrue(out.length >= leaves, "Output has room for %d of %d objects", out.length, leaves);
+		if (refitNeeded) refit();
+		if (root == NULL) return 0;
+		int[] own = main.out;
+		main.out = out;
+		main.count = 0;
+		try {
+			cull(main, frustum, root, Frustum.ALL_PLANES);
+		} finally {
+			main.out = own;
+		}
+		return main.count;
+	}
+
+	/**
+	 * Culls like {@link #cull(Frustum, int[])}, splitting the top of the tree
+	 * into about {@value #PARALLEL_SUBTREES} subtrees that are culled on
+	 * {@code executor}, one of them on this thread. Results come in a
+	 * different order.
+	 */
+	public int cull(Frustum frustum, int[] out, Executor executor) throws InterruptedException {
+		Validate.isTrue(out.length >= leaves, "Output has room for %d of %d objects", out.length, leaves);
+		if (refitNeeded) refit();
+		if (root == NULL) return 0;
+
+		// walk down level by level until there are enough subtrees
+		Worker w = main;
+		int count = 0;
+		int[] level = new int[PARALLEL_SUBTREES * 2], masks = new int[PARALLEL_SUBTREES * 2];
+		int[] next = new int[PARALLEL_SUBTREES * 2], nextMasks = new int[PARALLEL_SUBTREES * 2];
+		int size = 1;
+		level[0] = root;
+		masks[0] = Frustum.ALL_PLANES;
+		while (size > 0 && size < PARALLEL_SUBTREES) {
+			int n = 0;
+			for (int i = 0; i < size; i++) {
+				int node = level[i];
+				int mask = test(frustum, node, masks[i]);
+				if (mask < 0) continue;
+				if (nodes[node * 4 + HEIGHT] == 0) {
+					out[count++] = data[node];
+					continue;
+				}
+				next[n] = nodes[node * 4 + CHILD1];
+				nextMasks[n++] = mask;
+				next[n] = nodes[node * 4 + CHILD2];
+				nextMasks[n++] = mask;
+			}
+			int[] t = level;
+			level = next;
+			next = t;
+			t = masks;
+			masks = nextMasks;
+			nextMasks = t;
+			size = n;
+		}
+		if (size == 0) return count;
+
+		if (workers.length < size) {
+			workers = Arrays.copyOf(workers, size);
+			for (int i = 0; i < size; i++) {
+				if (workers[i] == null) workers[i] = new Worker();
+			}
+		}
+		List<Future<Void>> tasks = new ArrayList<>(size - 1);
+		for (int i = 1; i < size; i++) {
+			final Worker worker = workers[i];
+			final int node = level[i], mask = masks[i];
+			FutureTask<Void> task = new FutureTask<>(new Callable<Void>() {
+				@Override
+				public Void call() {
+					worker.count = 0;
+					cull(worker, frustum, node, mask);
+					return null;
+				}
+			});
+			tasks.add(task);
+			executor.execute(task);
+		}
+
+		int[] own = w.out;
+		w.out = out;
+		w.count = count;
+		try {
+			cull(w, frustum, level[0], masks[0]);
+			count = w.count;
+		} finally {
+			w.out = own;
+			for (Future<Void> task : tasks) {
+				try {
+					task.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+					if (cause instanceof Error) throw (Error) cause;
+					throw new IllegalStateException(cause);
+				}
+			}
+		}
+		for (int i = 1; i < size; i++) {
+			Worker worker = workers[i];
+			System.arraycopy(worker.out, 0, out, count, worker.count);
+			count += worker.count;
+		}
+		return count;
+	}
+
+	private void cull(Worker w, Frustum frustum, int start, int startMask) {
+		w.top = 0;
+		w.push(start, startMask);
+		while (w.top > 0) {
+			int node = w.nodes[--w.top];
+			int mask = w.masks[w.top];
+			// subtrees fully inside have no planes left to test
+			if (mask != 0) {
+				mask = test(frustum, node, mask);
+				if (mask < 0) continue;
+			}
+			if (nodes[node * 4 + HEIGHT] == 0) {
+				w.emit(data[node], w.count++);
+			} else {
+				w.push(nodes[node * 4 + CHILD1], mask);
+				w.push(nodes[node * 4 + CHILD2], mask);
+			}
+		}
+	}
+
+	private int test(Frustum frustum, int node, int mask) {
+		int b = node * 6;
+		return frustum.test(bounds[b], bounds[b + 1], bounds[b + 2], bounds[b + 3], bounds[b + 4], bounds[b + 5], mask);
+	}
+
+	/**
+	 * Writes the data of every object whose bounds, grown by the margin,
+	 * overlap {@code box}.
+	 *
+	 * @param out
+	 *            - the results, which must have room for {@link #size()}
+	 * @return how many were written
+	 */
+	public int query(AABB box, int[] out) {
+		Validate.isTrue(out.length >= leaves, "Output has room for %d of %d objects", out.length, leaves);
+		if (refitNeeded) refit();
+		if (root == NULL) return 0;
+		Worker w = main;
+		int count = 0;
+		w.top = 0;
+		w.push(root, 0);
+		while (w.top > 0) {
+			int node = w.nodes[--w.top];
+			int b = node * 6;
+			if (bounds[b] > box.maxX || bounds[b + 3] < box.minX
+					|| bounds[b + 1] > box.maxY || bounds[b + 4] < box.minY
+					|| bounds[b + 2] > box.maxZ || bounds[b + 5] < box.minZ) {
+				continue;
+			}
+			if (nodes[node * 4 + HEIGHT] == 0) {
+				out[count++] = data[node];
+			} else {
+				w.push(nodes[node * 4 + CHILD1], 0);
+				w.push(nodes[node * 4 + CHILD2], 0);
+			}
+		}
+		return count;
+	}
+
+	private void setLeaf(int leaf, AABB box) {
+		int b = leaf * 6;
+		bounds[b] = box.minX - margin;
+		bounds[b + 1] = box.minY - margin;
+		bounds[b + 2] = box.minZ - margin;
+		bounds[b + 3] = box.maxX + margin;
+		bounds[b + 4] = box.maxY + margin;
+		bounds[b + 5] = box.maxZ + margin;
+	}
+
+	private void insertLeaf(int leaf) {
+		if (root == NULL) {
+			root = leaf;
+			nodes[leaf * 4 + PARENT] = NULL;
+			return;
+		}
+
+		// find the sibling that adds the least surface area on the way down
+		int l = leaf * 6;
+		float[] b = bounds;
+		int node = root;
+		while (nodes[node * 4 + HEIGHT] != 0) {
+			int n = node * 6;
+			float area = area(b[n], b[n + 1], b[n + 2], b[n + 3], b[n + 4], b[n + 5]);
+			float combined = unionArea(n, l);
+			// pairing with this node makes a new parent of the combined size
+			float cost = 2 * combined;
+			// descending grows this node and every node above it
+			float inherited = 2 * (combined - area);
+			float cost1 = descendCost(nodes[node * 4 + CHILD1], l) + inherited;
+			float cost2 = descendCost(nodes[node * 4 + CHILD2], l) + inherited;
+			if (cost < cost1 && cost < cost2) break;
+			node = cost1 < cost2 ? nodes[node * 4 + CHILD1] : nodes[node * 4 + CHILD2];
+		}
+
+		int sibling = node;
+		int oldParent = nodes[sibling * 4 + PARENT];
+		int parent = allocateNode();
+		nodes[parent * 4 + PARENT] = oldParent;
+		nodes[parent * 4 + CHILD1] = sibling;
+		nodes[parent * 4 + CHILD2] = leaf;
+		nodes[sibling * 4 + PARENT] = parent;
+		nodes[leaf * 4 + PARENT] = parent;
+		if (oldParent == NULL) {
+			root = parent;
+		} else if (nodes[oldParent * 4 + CHILD1] == sibling) {
+			nodes[oldParent * 4 + CHILD1] = parent;
+		} else {
+			nodes[oldParent * 4 + CHILD2] = parent;
+		}
+		fixUpwards(parent);
+	}
+
+	private void removeLeaf(int leaf) {
+		if (leaf == root) {
+			root = NULL;
+			return;
+		}
+		int parent = nodes[leaf * 4 + PARENT];
+		int grandParent = nodes[parent * 4 + PARENT];
+		int sibling = nodes[parent * 4 + CHILD1] == leaf ? nodes[parent * 4 + CHILD2] : nodes[parent * 4 + CHILD1];
+		freeNode(parent);
+		nodes[sibling * 4 + PARENT] = grandParent;
+		if (grandParent == NULL) {
+			root = sibling;
+			return;
+		}
+		if (nodes[grandParent * 4 + CHILD1] == parent) {
+			nodes[grandParent * 4 + CHILD1] = sibling;
+		} else {
+			nodes[grandParent * 4 + CHILD2] = sibling;
+		}
+		fixUpwards(grandParent);
+	}
+
+	/**
+	 * Rebalances and refits from {@code node} up to the root.
+	 */
+	private void fixUpwards(int node) {
+		while (node != NULL) {
+			node = balance(node);
+			int c1 = nodes[node * 4 + CHILD1], c2 = nodes[node * 4 + CHILD2];
+			nodes[node * 4 + HEIGHT] = 1 + Math.max(nodes[c1 * 4 + HEIGHT], nodes[c2 * 4 + HEIGHT]);
+			union(node, c1, c2);
+			node = nodes[node * 4 + PARENT];
+		}
+	}
+
+	/**
+	 * Rotates the taller child up if one child is more than one level taller
+	 * than the other.
+	 *
+	 * @return the node now where {@code a} was
+	 */
+	private int balance(int a) {
+		if (nodes[a * 4 + HEIGHT] < 2) return a;
+		int b = nodes[a * 4 + CHILD1], c = nodes[a * 4 + CHILD2];
+		int balance = nodes[c * 4 + HEIGHT] - nodes[b * 4 + HEIGHT];
+		if (balance > 1) {
+			rotateUp(a, c, b, false);
+			return c;
+		}
+		if (balance < -1) {
+			rotateUp(a, b, c, true);
+			return b;
+		}
+		return a;
+	}
+
+	/**
+	 * Puts {@code up} in place of its parent {@code a}, which becomes its
+	 * first child. The shorter of {@code up}'s children replaces it under
+	 * {@code a}.
+	 *
+	 * @param other
+	 *            - {@code a}'s other child
+	 * @param first
+	 *            - true if {@code up} was {@code a}'s first child
+	 */
+	private void rotateUp(int a, int up, int other, boolean first) {
+		int f = nodes[up * 4 + CHILD1], g = nodes[up * 4 + CHILD2];
+		nodes[up * 4 + CHILD1] = a;
+		nodes[up * 4 + PARENT] = nodes[a * 4 + PARENT];
+		nodes[a * 4 + PARENT] = up;
+		int p = nodes[up * 4 + PARENT];
+		if (p == NULL) {
+			root = up;
+		} else if (nodes[p * 4 + CHILD1] == a) {
+			nodes[p * 4 + CHILD1] = up;
+		} else {
+			nodes[p * 4 + CHILD2] = up;
+		}
+
+		int keep = nodes[f * 4 + HEIGHT] > nodes[g * 4 + HEIGHT] ? f : g;
+		int move = keep == f ? g : f;
+		nodes[up * 4 + CHILD2] = keep;
+		if (first) {
+			nodes[a * 4 + CHILD1] = move;
+		} else {
+			nodes[a * 4 + CHILD2] = move;
+		}
+		nodes[move * 4 + PARENT] = a;
+
+		union(a, other, move);
+		union(up, a, keep);
+		nodes[a * 4 + HEIGHT] = 1 + Math.max(nodes[other * 4 + HEIGHT], nodes[move * 4 + HEIGHT]);
+		nodes[up * 4 + HEIGHT] = 1 + Math.max(nodes[a * 4 + HEIGHT], nodes[keep * 4 + HEIGHT]);
+	}
+
+	private void union(int dest, int c1, int c2) {
+		float[] b = bounds;
+		int d = dest * 6, i = c1 * 6, j = c2 * 6;
+		b[d] = Math.min(b[i], b[j]);
+		b[d + 1] = Math.min(b[i + 1], b[j + 1]);
+		b[d + 2] = Math.min(b[i + 2], b[j + 2]);
+		b[d + 3] = Math.max(b[i + 3], b[j + 3]);
+		b[d + 4] = Math.max(b[i + 4], b[j + 4]);
+		b[d + 5] = Math.max(b[i + 5], b[j + 5]);
+	}
+
+	/**
+	 * @return the area {@code child} adds when a leaf at {@code l} goes in
+	 *         under it
+	 */
+	private float descendCost(int child, int l) {
+		int c = child * 6;
+		float combined = unionArea(c, l);
+		if (nodes[child * 4 + HEIGHT] == 0) return combined;
+		float[] b = bounds;
+		return combined - area(b[c], b[c + 1], b[c + 2], b[c + 3], b[c + 4], b[c + 5]);
+	}
+
+	private float unionArea(int i, int j) {
+		float[] b = bounds;
+		return area(Math.min(b[i], b[j]), Math.min(b[i + 1], b[j + 1]), Math.min(b[i + 2], b[j + 2]),
+				Math.max(b[i + 3], b[j + 3]), Math.max(b[i + 4], b[j + 4]), Math.max(b[i + 5], b[j + 5]));
+	}
+
+	private static float area(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+		float x = maxX - minX, y = maxY - minY, z = maxZ - minZ;
+		return 2 * (x * y + y * z + z * x);
+	}
+
+	private void checkProxy(int proxy) {
+		if (proxy < 0 || proxy >= capacity || nodes[proxy * 4 + HEIGHT] != 0) {
+			throw new IllegalArgumentException("Not an object: " + proxy);
+		}
+	}
+
+	/**
+	 * A traversal stack and results, one per thread.
+	 */
+	private static class Worker {
+
+		int[] nodes = new int[64];
+		int[] masks = new int[64];
+		int top;
+		/** Results, or the caller's array while culling straight into it */
+		int[] out = new int[64];
+		int count;
+
+		void push(int node, int mask) {
+			if (top == nodes.length) {
+				nodes = Arrays.copyOf(nodes, top * 2);
+				masks = Arrays.copyOf(masks, top * 2);
+			}
+			nodes[top] = node;
+			masks[top++] = mask;
+		}
+
+		void emit(int value, int i) {
+			if (i >= out.length) out = Arrays.copyOf(out, Math.max(i + 1, out.length * 2));
+			out[i] = value;
+		}
+
+	}
+
+}
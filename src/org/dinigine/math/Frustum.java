@@ -0,0 +1,111 @@
+package org.dinigine.math;
+
+/**
+ * The six planes of a view frustum, taken from a view-projection matrix as
+ * built by {@link Mat4#perspective} or {@link Mat4#ortho}. Plane normals point
+ * inwards.
+ */
+public class Frustum {
+
+	public static final int OUTSIDE = 0;
+	public static final int INTERSECTS = 1;
+	public static final int INSIDE = 2;
+
+	/** Bits of the planes an intersecting box still has to be tested against */
+	static final int ALL_PLANES = 0x3F;
+
+	/** a, b, c, d per plane, for ax + by + cz + d >= 0 inside */
+	private final float[] planes = new float[24];
+
+	public Frustum() {}
+
+	public Frustum(Mat4 viewProjection) {
+		set(viewProjection);
+	}
+
+	/**
+	 * Extracts the planes in world space from projection * view, or in view
+	 * space from the projection alone.
+	 */
+	public Frustum set(Mat4 m) {
+		// each plane is the fourth row of the matrix plus or minus another
+		setPlane(0, m.m03 + m.m00, m.m13 + m.m10, m.m23 + m.m20, m.m33 + m.m30); // left
+		setPlane(1, m.m03 - m.m00, m.m13 - m.m10, m.m23 - m.m20, m.m33 - m.m30); // right
+		setPlane(2, m.m03 + m.m01, m.m13 + m.m11, m.m23 + m.m21, m.m33 + m.m31); // bottom
+		setPlane(3, m.m03 - m.m01, m.m13 - m.m11, m.m23 - m.m21, m.m33 - m.m31); // top
+		setPlane(4, m.m03 + m.m02, m.m13 + m.m12, m.m23 + m.m22, m.m33 + m.m32); // near
+		setPlane(5, m.m03 - m.m02, m.m13 - m.m12, m.m23 - m.m22, m.m33 - m.m32); // far
+		return this;
+	}
+
+	private void setPlane(int i, float a, float b, float c, float d) {
+		float l = Maths.sqrt(a * a + b * b + c * c);
+		float n = l != 0 ? 1 / l : 0;
+		planes[i * 4] = a * n;
+		planes[i * 4 + 1] = b * n;
+		planes[i * 4 + 2] = c * n;
+		planes[i * 4 + 3] = d * n;
+	}
+
+	/**
+	 * @param plane
+	 *            - left, right, bottom, top, near, far
+	 * @return the normalized plane, normal in xyz and distance in w
+	 */
+	public Vec4 getPlane(int plane, Vec4 dest) {
+		int p = plane * 4;
+		return dest.set(planes[p], planes[p + 1], planes[p + 2], planes[p + 3]);
+	}
+
+	public boolean contains(float x, float y, float z) {
+		for (int p = 0; p < 24; p += 4) {
+			if (planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < 0) return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return {@link #OUTSIDE}, {@link #INTERSECTS} or {@link #INSIDE}
+	 */
+	public int test(Sphere s) {
+		int result = INSIDE;
+		for (int p = 0; p < 24; p += 4) {
+			float d = planes[p] * s.x + planes[p + 1] * s.y + planes[p + 2] * s.z + planes[p + 3];
+			if (d < -s.radius) return OUTSIDE;
+			if (d < s.radius) result = INTERSECTS;
+		}
+		return result;
+	}
+
+	/**
+	 * @return {@link #OUTSIDE}, {@link #INTERSECTS} or {@link #INSIDE}
+	 */
+	public int test(AABB box) {
+		int mask = test(box.minX, box.minY, box.minZ, box.maxX, box.maxY, box.maxZ, ALL_PLANES);
+		return mask < 0 ? OUTSIDE : mask == 0 ? INSIDE : INTERSECTS;
+	}
+
+	/**
+	 * Tests a box against the planes in {@code mask}. A box just outside a
+	 * corner of the frustum can pass every plane, and is then reported as
+	 * crossing, which only costs a wasted draw.
+	 *
+	 * @return -1 if the box is outside, or the planes it still crosses, which
+	 *         a box inside it only needs testing against
+	 */
+	int test(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int mask) {
+		int crossed = 0;
+		for (int i = 0, p = 0; i < 6; i++, p += 4) {
+			int bit = 1 << i;
+			if ((mask & bit) == 0) continue;
+			float a = planes[p], b = planes[p + 1], c = planes[p + 2], d = planes[p + 3];
+			// the corners furthest along and against the normal
+			float far = a * (a > 0 ? maxX : minX) + b * (b > 0 ? maxY : minY) + c * (c > 0 ? maxZ : minZ) + d;
+			if (far < 0) return -1;
+			float near = a * (a > 0 ? minX : maxX) + b * (b > 0 ? minY : maxY) + c * (c > 0 ? minZ : maxZ) + d;
+			if (near < 0) crossed |= bit;
+		}
+		return crossed;
+	}
+
+}
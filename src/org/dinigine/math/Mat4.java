@@ -60,23 +60,27 @@ public class Mat4 {
 	}
 
 	public Mat4 negate() {
-		m00 = -m00;
-		m01 = -m01;
-		m02 = -m02;
-		m03 = -m03;
-		m10 = -m10;
-		m11 = -m11;
-		m12 = -m12;
-		m13 = -m13;
-		m20 = -m20;
-		m21 = -m21;
-		m22 = -m22;
-		m23 = -m23;
-		m30 = -m30;
-		m31 = -m31;
-		m32 = -m32;
-		m33 = -m33;
-		return this;
+		return negate(this);
+	}
+
+	public Mat4 negate(Mat4 dest) {
+		dest.m00 = -m00;
+		dest.m01 = -m01;
+		dest.m02 = -m02;
+		dest.m03 = -m03;
+		dest.m10 = -m10;
+		dest.m11 = -m11;
+		dest.m12 = -m12;
+		dest.m13 = -m13;
+		dest.m20 = -m20;
+		dest.m21 = -m21;
+		dest.m22 = -m22;
+		dest.m23 = -m23;
+		dest.m30 = -m30;
+		dest.m31 = -m31;
+		dest.m32 = -m32;
+		dest.m33 = -m33;
+		return dest;
 	}
 
 	public Mat4 set(Mat4 src) {
@@ -156,46 +160,61 @@ public class Mat4 {
 	}
 
 	public Mat4 add(Mat4 right) {
-		m00 += right.m00;
-		m01 += right.m01;
-		m02 += right.m02;
-		m03 += right.m03;
-		m10 += right.m10;
-		m11 += right.m11;
-		m12 += right.m12;
-		m13 += right.m13;
-		m20 += right.m20;
-		m21 += right.m21;
-		m22 += right.m22;
-		m23 += right.m23;
-		m30 += right.m30;
-		m31 += right.m31;
-		m32 += right.m32;
-		m33 += right.m33;
-		return this;
+		return add(right, this);
+	}
+
+	public Mat4 add(Mat4 right, Mat4 dest) {
+		dest.m00 = m00 + right.m00;
+		dest.m01 = m01 + right.m01;
+		dest.m02 = m02 + right.m02;
+		dest.m03 = m03 + right.m03;
+		dest.m10 = m10 + right.m10;
+		dest.m11 = m11 + right.m11;
+		dest.m12 = m12 + right.m12;
+		dest.m13 = m13 + right.m13;
+		dest.m20 = m20 + right.m20;
+		dest.m21 = m21 + right.m21;
+		dest.m22 = m22 + right.m22;
+		dest.m23 = m23 + right.m23;
+		dest.m30 = m30 + right.m30;
+		dest.m31 = m31 + right.m31;
+		dest.m32 = m32 + right.m32;
+		dest.m33 = m33 + right.m33;
+		return dest;
 	}
 
 	public Mat4 sub(Mat4 right) {
-		m00 -= right.m00;
-		m01 -= right.m01;
-		m02 -= right.m02;
-		m03 -= right.m03;
-		m10 -= right.m10;
-		m11 -= right.m11;
-		m12 -= right.m12;
-		m13 -= right.m13;
-		m20 -= right.m20;
-		m21 -= right.m21;
-		m22 -= right.m22;
-		m23 -= right.m23;
-		m30 -= right.m30;
-		m31 -= right.m31;
-		m32 -= right.m32;
-		m33 -= right.m33;
-		return this;
+		return sub(right, this);
+	}
+
+	public Mat4 sub(Mat4 right, Mat4 dest) {
+		dest.m00 = m00 - right.m00;
+		dest.m01 = m01 - right.m01;
+		dest.m02 = m02 - right.m02;
+		dest.m03 = m03 - right.m03;
+		dest.m10 = m10 - right.m10;
+		dest.m11 = m11 - right.m11;
+		dest.m12 = m12 - right.m12;
+		dest.m13 = m13 - right.m13;
+		dest.m20 = m20 - right.m20;
+		dest.m21 = m21 - right.m21;
+		dest.m22 = m22 - right.m22;
+		dest.m23 = m23 - right.m23;
+		dest.m30 = m30 - right.m30;
+		dest.m31 = m31 - right.m31;
+		dest.m32 = m32 - right.m32;
+		dest.m33 = m33 - right.m33;
+		return dest;
 	}
 
 	public Mat4 mul(Mat4 right) {
+		return mul(right, this);
+	}
+
+	/**
+	 * Sets {@code dest} to this * right. It may be either of them.
+	 */
+	public Mat4 mul(Mat4 right, Mat4 dest) {
 		float _m00 = m00 * right.m00 + m10 * right.m01 + m20 * right.m02 + m30 * right.m03;
 		float _m01 = m01 * right.m00 + m11 * right.m01 + m21 * right.m02 + m31 * right.m03;
 		float _m02 = m02 * right.m00 + m12 * right.m01 + m22 * right.m02 + m32 * right.m03;
@@ -215,22 +234,71 @@ public class Mat4 {
 		float _m31 = m01 * right.m30 + m11 * right.m31 + m21 * right.m32 + m31 * right.m33;
 		float _m32 = m02 * right.m30 + m12 * right.m31 + m22 * right.m32 + m32 * right.m33;
 		float _m33 = m03 * right.m30 + m13 * right.m31 + m23 * right.m32 + m33 * right.m33;
-		m00 = _m00;
-		m01 = _m01;
-		m02 = _m02;
-		m03 = _m03;
-		m10 = _m10;
-		m11 = _m11;
-		m12 = _m12;
-		m13 = _m13;
-		m20 = _m20;
-		m21 = _m21;
-		m22 = _m22;
-		m23 = _m23;
-		m30 = _m30;
-		m31 = _m31;
-		m32 = _m32;
-		m33 = _m33;
+		dest.m00 = _m00;
+		dest.m01 = _m01;
+		dest.m02 = _m02;
+		dest.m03 = _m03;
+		dest.m10 = _m10;
+		dest.m11 = _m11;
+		dest.m12 = _m12;
+		dest.m13 = _m13;
+		dest.m20 = _m20;
+		dest.m21 = _m21;
+		dest.m22 = _m22;
+		dest.m23 = _m23;
+		dest.m30 = _m30;
+		dest.m31 = _m31;
+		dest.m32 = _m32;
+		dest.m33 = _m33;
+		return dest;
+	}
+
+	/**
+	 * Sets {@code dest} to this * right, assuming both have a bottom row of
+	 * 0 0 0 1, as transforms built from translations, rotations and scales do.
+	 * It may be either of them.
+	 */
+	public Mat4 mulAffine(Mat4 right, Mat4 dest) {
+		float _m00 = m00 * right.m00 + m10 * right.m01 + m20 * right.m02;
+		float _m01 = m01 * right.m00 + m11 * right.m01 + m21 * right.m02;
+		float _m02 = m02 * right.m00 + m12 * right.m01 + m22 * right.m02;
+
+		float _m10 = m00 * right.m10 + m10 * right.m11 + m20 * right.m12;
+		float _m11 = m01 * right.m10 + m11 * right.m11 + m21 * right.m12;
+		float _m12 = m02 * right.m10 + m12 * right.m11 + m22 * right.m12;
+
+		float _m20 = m00 * right.m20 + m10 * right.m21 + m20 * right.m22;
+		float _m21 = m01 * right.m20 + m11 * right.m21 + m21 * right.m22;
+		float _m22 = m02 * right.m20 + m12 * right.m21 + m22 * right.m22;
+
+		float _m30 = m00 * right.m30 + m10 * right.m31 + m20 * right.m32 + m30;
+		float _m31 = m01 * right.m30 + m11 * right.m31 + m21 * right.m32 + m31;
+		float _m32 = m02 * right.m30 + m12 * right.m31 + m22 * right.m32 + m32;
+		return dest.setAffine(_m00, _m01, _m02, _m10, _m11, _m12, _m20, _m21, _m22, _m30, _m31, _m32);
+	}
+
+	public Mat4 mulAffine(Mat4 right) {
+		return mulAffine(right, this);
+	}
+
+	private Mat4 setAffine(float m00, float m01, float m02, float m10, float m11, float m12,
+			float m20, float m21, float m22, float m30, float m31, float m32) {
+		this.m00 = m00;
+		this.m01 = m01;
+		this.m02 = m02;
+		this.m03 = 0;
+		this.m10 = m10;
+		this.m11 = m11;
+		this.m12 = m12;
+		this.m13 = 0;
+		this.m20 = m20;
+		this.m21 = m21;
+		this.m22 = m22;
+		this.m23 = 0;
+		this.m30 = m30;
+		this.m31 = m31;
+		this.m32 = m32;
+		this.m33 = 1;
 		return this;
 	}
 
@@ -246,6 +314,10 @@ public class Mat4 {
 		return this;
 	}
 
+	public Mat4 translate(float x, float y, float z, Mat4 dest) {
+		return dest.set(this).translate(x, y, z);
+	}
+
 	public Mat4 translate(Vec2 v) {
 		return translate(v.x, v.y);
 	}
@@ -258,6 +330,10 @@ public class Mat4 {
 		return this;
 	}
 
+	public Mat4 translate(float x, float y, Mat4 dest) {
+		return dest.set(this).translate(x, y);
+	}
+
 	public Mat4 scale(float scale) {
 		m00 *= scale;
 		m01 *= scale;
@@ -274,6 +350,10 @@ public class Mat4 {
 		return this;
 	}
 
+	public Mat4 scale(float scale, Mat4 dest) {
+		return dest.set(this).scale(scale);
+	}
+
 	public Mat4 scale(Vec3 v) {
 		return scale(v.x, v.y, v.z);
 	}
@@ -294,6 +374,10 @@ public class Mat4 {
 		return this;
 	}
 
+	public Mat4 scale(float x, float y, float z, Mat4 dest) {
+		return dest.set(this).scale(x, y, z);
+	}
+
 	public Mat4 rotate(Vec3 v) {
 		return rotate(v.x, v.y, v.z);
 	}
@@ -305,6 +389,10 @@ public class Mat4 {
 		return this;
 	}
 
+	public Mat4 rotate(float x, float y, float z, Mat4 dest) {
+		return dest.set(this).rotate(x, y, z);
+	}
+
 	public Mat4 rotateX(float angle) {
 		float sin = Maths.sind(angle);
 		float cos = Maths.cosd(angle);
@@ -327,6 +415,10 @@ public class Mat4 {
 		return this;
 	}
 
+	public Mat4 rotateX(float angle, Mat4 dest) {
+		return dest.set(this).rotateX(angle);
+	}
+
 	public Mat4 rotateY(float angle) {
 		float sin = Maths.sind(angle);
 		float cos = Maths.cosd(angle);
@@ -349,6 +441,10 @@ public class Mat4 {
 		return this;
 	}
 
+	public Mat4 rotateY(float angle, Mat4 dest) {
+		return dest.set(this).rotateY(angle);
+	}
+
 	public Mat4 rotateZ(float angle) {
 		float sin = Maths.sind(angle);
 		float cos = Maths.cosd(angle);
@@ -371,6 +467,10 @@ public class Mat4 {
 		return this;
 	}
 
+	public Mat4 rotateZ(float angle, Mat4 dest) {
+		return dest.set(this).rotateZ(angle);
+	}
+
 	public Mat4 ortho(float left, float right, float bottom, float top, float zNear, float zFar) {
 		identity();
 
@@ -406,6 +506,10 @@ public class Mat4 {
 	}
 
 	public Mat4 transpose() {
+		return transpose(this);
+	}
+
+	public Mat4 transpose(Mat4 dest) {
 		float _m01 = m10;
 		float _m02 = m20;
 		float _m03 = m30;
@@ -418,20 +522,24 @@ public class Mat4 {
 		float _m30 = m03;
 		float _m31 = m13;
 		float _m32 = m23;
-		m01 = _m01;
-		m02 = _m02;
-		m03 = _m03;
-		m10 = _m10;
-		m12 = _m12;
-		m13 = _m13;
-		m20 = _m20;
-		m21 = _m21;
-		m23 = _m23;
-		m30 = _m30;
-		m31 = _m31;
-		m32 = _m32;
-		return this;
-	} 
+		dest.m00 = m00;
+		dest.m01 = _m01;
+		dest.m02 = _m02;
+		dest.m03 = _m03;
+		dest.m10 = _m10;
+		dest.m11 = m11;
+		dest.m12 = _m12;
+		dest.m13 = _m13;
+		dest.m20 = _m20;
+		dest.m21 = _m21;
+		dest.m22 = m22;
+		dest.m23 = _m23;
+		dest.m30 = _m30;
+		dest.m31 = _m31;
+		dest.m32 = _m32;
+		dest.m33 = m33;
+		return dest;
+	}
 
 	public float determinant() {
 		float d = m00 * ((m11 * m22 * m33 + m12 * m23 * m31 + m13 * m21 * m32)
@@ -454,35 +562,112 @@ public class Mat4 {
 	}
 
 	public Mat4 invert() {
-		float d = determinant();
-		if (d != 0) {
-			float nd = 1 / d;
-			Mat4 tmp = new Mat4();
-			tmp.m00 = nd * deterMat3(m11, m12, m13, m21, m22, m23, m31, m32, m33);
-			tmp.m01 = nd * -deterMat3(m10, m12, m13, m20, m22, m23, m30, m32, m33);
-			tmp.m02 = nd * deterMat3(m10, m11, m13, m20, m21, m23, m30, m31, m33);
-			tmp.m03 = nd * -deterMat3(m10, m11, m12, m20, m21, m22, m30, m31, m32);
-			tmp.m10 = nd * -deterMat3(m01, m02, m03, m21, m22, m23, m31, m32, m33);
-			tmp.m11 = nd * deterMat3(m00, m02, m03, m20, m22, m23, m30, m32, m33);
-			tmp.m12 = nd * -deterMat3(m00, m01, m03, m20, m21, m23, m30, m31, m33);
-			tmp.m13 = nd * deterMat3(m00, m01, m02, m20, m21, m22, m30, m31, m32);
-			tmp.m20 = nd * deterMat3(m01, m02, m03, m11, m12, m13, m31, m32, m33);
-			tmp.m21 = nd * -deterMat3(m00, m02, m03, m10, m12, m13, m30, m32, m33);
-			tmp.m22 = nd * deterMat3(m00, m01, m03, m10, m11, m13, m30, m31, m33);
-			tmp.m23 = nd * -deterMat3(m00, m01, m02, m10, m11, m12, m30, m31, m32);
-			tmp.m30 = nd * -deterMat3(m01, m02, m03, m11, m12, m13, m21, m22, m23);
-			tmp.m31 = nd * deterMat3(m00, m02, m03, m10, m12, m13, m20, m22, m23);
-			tmp.m32 = nd * -deterMat3(m00, m01, m03, m10, m11, m13, m20, m21, m23);
-			tmp.m33 = nd * deterMat3(m00, m01, m02, m10, m11, m12, m20, m21, m22);
-			set(tmp).transpose();
-		}
-		return this;
-	}
-
-	static float deterMat3(float t00, float t01, float t02, float t10, float t11, float t12, float t20, float t21, float t22) {
-		return t00 * (t11 * t22 - t12 * t21)
-				+ t01 * (t12 * t20 - t10 * t22)
-				+ t02 * (t10 * t21 - t11 * t20);
+		return invert(this);
+	}
+
+	/**
+	 * Sets {@code dest}, which may be this, to the inverse of this, or to a copy
+	 * if it has no inverse. Affine and orthonormal matrices can use the faster
+	 * {@link #invertAffine(Mat4)} and {@link #invertOrthonormal(Mat4)}.
+	 */
+	public Mat4 invert(Mat4 dest) {
+		// 2x2 determinants of the top and bottom halves, shared by the cofactors
+		float a = m00 * m11 - m01 * m10;
+		float b = m00 * m12 - m02 * m10;
+		float c = m00 * m13 - m03 * m10;
+		float d = m01 * m12 - m02 * m11;
+		float e = m01 * m13 - m03 * m11;
+		float f = m02 * m13 - m03 * m12;
+		float g = m20 * m31 - m21 * m30;
+		float h = m20 * m32 - m22 * m30;
+		float i = m20 * m33 - m23 * m30;
+		float j = m21 * m32 - m22 * m31;
+		float k = m21 * m33 - m23 * m31;
+		float l = m22 * m33 - m23 * m32;
+		float det = a * l - b * k + c * j + d * i - e * h + f * g;
+		if (det == 0) return dest.set(this);
+		float nd = 1 / det;
+
+		float _m00 = (m11 * l - m12 * k + m13 * j) * nd;
+		float _m01 = (-m01 * l + m02 * k - m03 * j) * nd;
+		float _m02 = (m31 * f - m32 * e + m33 * d) * nd;
+		float _m03 = (-m21 * f + m22 * e - m23 * d) * nd;
+		float _m10 = (-m10 * l + m12 * i - m13 * h) * nd;
+		float _m11 = (m00 * l - m02 * i + m03 * h) * nd;
+		float _m12 = (-m30 * f + m32 * c - m33 * b) * nd;
+		float _m13 = (m20 * f - m22 * c + m23 * b) * nd;
+		float _m20 = (m10 * k - m11 * i + m13 * g) * nd;
+		float _m21 = (-m00 * k + m01 * i - m03 * g) * nd;
+		float _m22 = (m30 * e - m31 * c + m33 * a) * nd;
+		float _m23 = (-m20 * e + m21 * c - m23 * a) * nd;
+		float _m30 = (-m10 * j + m11 * h - m12 * g) * nd;
+		float _m31 = (m00 * j - m01 * h + m02 * g) * nd;
+		float _m32 = (-m30 * d + m31 * b - m32 * a) * nd;
+		float _m33 = (m20 * d - m21 * b + m22 * a) * nd;
+		dest.m00 = _m00;
+		dest.m01 = _m01;
+		dest.m02 = _m02;
+		dest.m03 = _m03;
+		dest.m10 = _m10;
+		dest.m11 = _m11;
+		dest.m12 = _m12;
+		dest.m13 = _m13;
+		dest.m20 = _m20;
+		dest.m21 = _m21;
+		dest.m22 = _m22;
+		dest.m23 = _m23;
+		dest.m30 = _m30;
+		dest.m31 = _m31;
+		dest.m32 = _m32;
+		dest.m33 = _m33;
+		return dest;
+	}
+
+	public Mat4 invertAffine() {
+		return invertAffine(this);
+	}
+
+	/**
+	 * Inverts a matrix with a bottom row of 0 0 0 1, which only needs the
+	 * upper 3x3 inverted. {@code dest} may be this, and is set to a copy if
+	 * there's no inverse.
+	 */
+	public Mat4 invertAffine(Mat4 dest) {
+		float c00 = m11 * m22 - m12 * m21;
+		float c10 = m12 * m20 - m10 * m22;
+		float c20 = m10 * m21 - m11 * m20;
+		float det = m00 * c00 + m01 * c10 + m02 * c20;
+		if (det == 0) return dest.set(this);
+		float nd = 1 / det;
+
+		float _m00 = c00 * nd;
+		float _m01 = (m21 * m02 - m22 * m01) * nd;
+		float _m02 = (m12 * m01 - m11 * m02) * nd;
+		float _m10 = c10 * nd;
+		float _m11 = (m22 * m00 - m20 * m02) * nd;
+		float _m12 = (m10 * m02 - m12 * m00) * nd;
+		float _m20 = c20 * nd;
+		float _m21 = (m20 * m01 - m21 * m00) * nd;
+		float _m22 = (m11 * m00 - m10 * m01) * nd;
+		float _m30 = -(_m00 * m30 + _m10 * m31 + _m20 * m32);
+		float _m31 = -(_m01 * m30 + _m11 * m31 + _m21 * m32);
+		float _m32 = -(_m02 * m30 + _m12 * m31 + _m22 * m32);
+		return dest.setAffine(_m00, _m01, _m02, _m10, _m11, _m12, _m20, _m21, _m22, _m30, _m31, _m32);
+	}
+
+	public Mat4 invertOrthonormal() {
+		return invertOrthonormal(this);
+	}
+
+	/**
+	 * Inverts a rotation and translation, with no scale or shear, by
+	 * transposing the rotation. {@code dest} may be this.
+	 */
+	public Mat4 invertOrthonormal(Mat4 dest) {
+		float _m30 = -(m00 * m30 + m01 * m31 + m02 * m32);
+		float _m31 = -(m10 * m30 + m11 * m31 + m12 * m32);
+		float _m32 = -(m20 * m30 + m21 * m31 + m22 * m32);
+		return dest.setAffine(m00, m10, m20, m01, m11, m21, m02, m12, m22, _m30, _m31, _m32);
 	}
 
 	public Mat4 copy() {
@@ -0,0 +1,276 @@
+package org.dinigine.math;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A rotation quaternion. Angles are in degrees, as with {@link Mat4}, and
+ * {@link #rotate(float, float, float)} applies them in the same order as
+ * {@link Mat4#rotate(float, float, float)}.
+ */
+public class Quat {
+
+	public float x, y, z, w;
+
+	public Quat() {
+		identity();
+	}
+
+	public Quat(Quat src) {
+		set(src);
+	}
+
+	public Quat(FloatBuffer buf) {
+		load(buf);
+	}
+
+	public Quat(float x, float y, float z, float w) {
+		set(x, y, z, w);
+	}
+
+	public Quat identity() {
+		return set(0, 0, 0, 1);
+	}
+
+	public Quat set(Quat src) {
+		x = src.x;
+		y = src.y;
+		z = src.z;
+		w = src.w;
+		return this;
+	}
+
+	public Quat set(float x, float y, float z, float w) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.w = w;
+		return this;
+	}
+
+	/**
+	 * @param axis
+	 *            - the axis to rotate around, which must be normalized
+	 */
+	public Quat setAxisAngle(Vec3 axis, float angle) {
+		return setAxisAngle(axis.x, axis.y, axis.z, angle);
+	}
+
+	public Quat setAxisAngle(float x, float y, float z, float angle) {
+		float sin = Maths.sind(angle * .5f);
+		return set(x * sin, y * sin, z * sin, Maths.cosd(angle * .5f));
+	}
+
+	public Quat store(FloatBuffer buf) {
+		buf.put(x).put(y).put(z).put(w);
+		return this;
+	}
+
+	public Quat load(FloatBuffer buf) {
+		x = buf.get();
+		y = buf.get();
+		z = buf.get();
+		w = buf.get();
+		return this;
+	}
+
+	public float length() {
+		return Maths.sqrt(lengthSquared());
+	}
+
+	public float lengthSquared() {
+		return x * x + y * y + z * z + w * w;
+	}
+
+	public Quat normalize() {
+		float l = length();
+		if (l != 0) {
+			float n = 1 / l;
+			x *= n;
+			y *= n;
+			z *= n;
+			w *= n;
+		}
+		return this;
+	}
+
+	public float dot(Quat other) {
+		return x * other.x + y * other.y + z * other.z + w * other.w;
+	}
+
+	/**
+	 * The inverse of a normalized quaternion.
+	 */
+	public Quat conjugate() {
+		x = -x;
+		y = -y;
+		z = -z;
+		return this;
+	}
+
+	public Quat invert() {
+		float l = lengthSquared();
+		if (l != 0) {
+			float n = 1 / l;
+			x *= -n;
+			y *= -n;
+			z *= -n;
+			w *= n;
+		}
+		return this;
+	}
+
+	/**
+	 * Sets this to this * right, which rotates by {@code right} first.
+	 */
+	public Quat mul(Quat right) {
+		return mul(right.x, right.y, right.z, right.w);
+	}
+
+	private Quat mul(float rx, float ry, float rz, float rw) {
+		float _x = w * rx + x * rw + y * rz - z * ry;
+		float _y = w * ry - x * rz + y * rw + z * rx;
+		float _z = w * rz + x * ry - y * rx + z * rw;
+		float _w = w * rw - x * rx - y * ry - z * rz;
+		x = _x;
+		y = _y;
+		z = _z;
+		w = _w;
+		return this;
+	}
+
+	public Quat rotate(Vec3 v) {
+		return rotate(v.x, v.y, v.z);
+	}
+
+	public Quat rotate(float x, float y, float z) {
+		if (x != 0) rotateX(x);
+		if (y != 0) rotateY(y);
+		if (z != 0) rotateZ(z);
+		return this;
+	}
+
+	public Quat rotateX(float angle) {
+		return mul(Maths.sind(angle * .5f), 0, 0, Maths.cosd(angle * .5f));
+	}
+
+	public Quat rotateY(float angle) {
+		return mul(0, Maths.sind(angle * .5f), 0, Maths.cosd(angle * .5f));
+	}
+
+	public Quat rotateZ(float angle) {
+		return mul(0, 0, Maths.sind(angle * .5f), Maths.cosd(angle * .5f));
+	}
+
+	/**
+	 * Interpolates along the shorter arc at a constant speed.
+	 *
+	 * @param t
+	 *            - the point between [0 -> 1]
+	 */
+	public Quat slerp(Quat to, float t) {
+		float cos = dot(to);
+		float sign = 1;
+		if (cos < 0) {
+			cos = -cos;
+			sign = -1;
+		}
+		float a = 1 - t, b = t;
+		// too close to divide by the sine, and linear is as good there
+		if (cos < .9995f) {
+			float angle = (float) Math.acos(cos);
+			float sin = 1 / (float) Math.sin(angle);
+			a = (float) Math.sin(a * angle) * sin;
+			b = (float) Math.sin(b * angle) * sin;
+		}
+		b *= sign;
+		x = a * x + b * to.x;
+		y = a * y + b * to.y;
+		z = a * z + b * to.z;
+		w = a * w + b * to.w;
+		return normalize();
+	}
+
+	/**
+	 * Interpolates along the shorter arc, faster than
+	 * {@link #slerp(Quat, float)} but not at a constant speed.
+	 *
+	 * @param t
+	 *            - the point between [0 -> 1]
+	 */
+	public Quat nlerp(Quat to, float t) {
+		float a = 1 - t, b = dot(to) < 0 ? -t : t;
+		x = a * x + b * to.x;
+		y = a * y + b * to.y;
+		z = a * z + b * to.z;
+		w = a * w + b * to.w;
+		return normalize();
+	}
+
+	/**
+	 * Rotates {@code v} by this, which must be normalized.
+	 */
+	public Vec3 transform(Vec3 v, Vec3 out) {
+		// v + 2w(q x v) + 2q x (q x v)
+		float cx = 2 * (y * v.z - z * v.y);
+		float cy = 2 * (z * v.x - x * v.z);
+		float cz = 2 * (x * v.y - y * v.x);
+		float _x = v.x + w * cx + y * cz - z * cy;
+		float _y = v.y + w * cy + z * cx - x * cz;
+		float _z = v.z + w * cz + x * cy - y * cx;
+		out.x = _x;
+		out.y = _y;
+		out.z = _z;
+		return out;
+	}
+
+	/**
+	 * Sets {@code dest} to the rotation this represents, which must be
+	 * normalized.
+	 */
+	public Mat4 toMat4(Mat4 dest) {
+		float x2 = x + x, y2 = y + y, z2 = z + z;
+		float xx = x * x2, xy = x * y2, xz = x * z2;
+		float yy = y * y2, yz = y * z2, zz = z * z2;
+		float wx = w * x2, wy = w * y2, wz = w * z2;
+		dest.identity();
+		dest.m00 = 1 - (yy + zz);
+		dest.m01 = xy + wz;
+		dest.m02 = xz - wy;
+		dest.m10 = xy - wz;
+		dest.m11 = 1 - (xx + zz);
+		dest.m12 = yz + wx;
+		dest.m20 = xz + wy;
+		dest.m21 = yz - wx;
+		dest.m22 = 1 - (xx + yy);
+		return dest;
+	}
+
+	public Quat copy() {
+		return new Quat(this);
+	}
+
+	@Override
+	public String toString() {
+		return x + " " + y + " " + z + " " + w;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 31 + Float.floatToIntBits(x);
+		hash = hash * 31 + Float.floatToIntBits(y);
+		hash = hash * 31 + Float.floatToIntBits(z);
+		return hash * 31 + Float.floatToIntBits(w);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) return true;
+		if (o == null) return false;
+		if (o instanceof Quat) {
+			Quat q = (Quat) o;
+			return (x == q.x) && (y == q.y) && (z == q.z) && (w == q.w);
+		}
+		return false;
+	}
+
+}
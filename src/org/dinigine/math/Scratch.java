@@ -0,0 +1,126 @@
+package org.dinigine.math;
+
+import java.util.Arrays;
+
+/**
+ * Reusable temporaries for the current thread, handed out stack style so hot
+ * code can use the destination versions of the math methods without
+ * allocating. Everything taken after a {@link #push()} is given back by the
+ * matching {@link #pop()}:
+ *
+ * <pre>
+ * Scratch s = Scratch.get();
+ * s.push();
+ * try {
+ * 	Mat4 inverse = view.invertAffine(s.mat4());
+ * 	Vec3 eye = s.vec3().set(0, 0, 0).transformPoint(inverse, s.vec3());
+ * 	...
+ * } finally {
+ * 	s.pop();
+ * }
+ * </pre>
+ *
+ * Objects are reused as-is, so their values are whatever they were last set
+ * to. Nothing taken may be kept past the pop.
+ */
+public final class Scratch {
+
+	private static final ThreadLocal<Scratch> LOCAL = new ThreadLocal<Scratch>() {
+		@Override
+		protected Scratch initialValue() {
+			return new Scratch();
+		}
+	};
+
+	private Vec2[] vec2s = new Vec2[8];
+	private Vec3[] vec3s = new Vec3[8];
+	private Vec4[] vec4s = new Vec4[8];
+	private Quat[] quats = new Quat[8];
+	private Mat4[] mat4s = new Mat4[8];
+	private int vec2, vec3, vec4, quat, mat4;
+
+	/** How many of each were in use at each push, five per frame */
+	private int[] frames = new int[5 * 8];
+	private int depth;
+
+	private Scratch() {}
+
+	/**
+	 * @return this thread's scratch
+	 */
+	public static Scratch get() {
+		return LOCAL.get();
+	}
+
+	public void push() {
+		if (depth * 5 == frames.length) frames = Arrays.copyOf(frames, frames.length * 2);
+		int f = depth++ * 5;
+		frames[f] = vec2;
+		frames[f + 1] = vec3;
+		frames[f + 2] = vec4;
+		frames[f + 3] = quat;
+		frames[f + 4] = mat4;
+	}
+
+	/**
+	 * Gives back everything taken since the matching {@link #push()}.
+	 */
+	public void pop() {
+		if (depth == 0) throw new IllegalStateException("pop without push");
+		int f = --depth * 5;
+		vec2 = frames[f];
+		vec3 = frames[f + 1];
+		vec4 = frames[f + 2];
+		quat = frames[f + 3];
+		mat4 = frames[f + 4];
+	}
+
+	/**
+	 * @return how many pushes haven't been popped, 0 when everything has
+	 *         been given back
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	public Vec2 vec2() {
+		if (vec2 == vec2s.length) vec2s = Arrays.copyOf(vec2s, vec2 * 2);
+		Vec2 v = vec2s[vec2];
+		if (v == null) v = vec2s[vec2] = new Vec2();
+		vec2++;
+		return v;
+	}
+
+	public Vec3 vec3() {
+		if (vec3 == vec3s.length) vec3s = Arrays.copyOf(vec3s, vec3 * 2);
+		Vec3 v = vec3s[vec3];
+		if (v == null) v = vec3s[vec3] = new Vec3();
+		vec3++;
+		return v;
+	}
+
+	public Vec4 vec4() {
+		if (vec4 == vec4s.length) vec4s = Arrays.copyOf(vec4s, vec4 * 2);
+		Vec4 v = vec4s[vec4];
+		if (v == null) v = vec4s[vec4] = new Vec4();
+		vec4++;
+		return v;
+	}
+
+	public Quat quat() {
+		if (quat == quats.length) quats = Arrays.copyOf(quats, quat * 2);
+		Quat q = quats[quat];
+		if (q == null) q = quats[quat] = new Quat();
+		quat++;
+		return q;
+	}
+
+	public Mat4 mat4() {
+		if (mat4 == mat4s.length) mat4s = Arrays.copyOf(mat4s, mat4 * 2);
+		Mat4 m = mat4s[mat4];
+		if (m == null) m = mat4s[mat4] = new Mat4();
+		mat4++;
+		return m;
+	}
+
+}
@@ -0,0 +1,100 @@
+package org.dinigine.math;
+
+public class Sphere {
+
+	public float x, y, z;
+	public float radius;
+
+	public Sphere() {}
+
+	public Sphere(Sphere src) {
+		set(src);
+	}
+
+	public Sphere(float x, float y, float z, float radius) {
+		set(x, y, z, radius);
+	}
+
+	public Sphere set(Sphere src) {
+		return set(src.x, src.y, src.z, src.radius);
+	}
+
+	public Sphere set(float x, float y, float z, float radius) {
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.radius = radius;
+		return this;
+	}
+
+	/**
+	 * Sets this to the sphere through the box's corners.
+	 */
+	public Sphere set(AABB box) {
+		float ex = (box.maxX - box.minX) * .5f, ey = (box.maxY - box.minY) * .5f, ez = (box.maxZ - box.minZ) * .5f;
+		return set(box.minX + ex, box.minY + ey, box.minZ + ez, Maths.sqrt(ex * ex + ey * ey + ez * ez));
+	}
+
+	public boolean contains(float x, float y, float z) {
+		float dx = x - this.x, dy = y - this.y, dz = z - this.z;
+		return dx * dx + dy * dy + dz * dz <= radius * radius;
+	}
+
+	public boolean intersects(Sphere other) {
+		float dx = other.x - x, dy = other.y - y, dz = other.z - z;
+		float r = radius + other.radius;
+		return dx * dx + dy * dy + dz * dz <= r * r;
+	}
+
+	public boolean intersects(AABB box) {
+		return box.intersects(this);
+	}
+
+	public AABB getBounds(AABB dest) {
+		return dest.setCenter(x, y, z, radius, radius, radius);
+	}
+
+	/**
+	 * Sets {@code dest}, which may be this, to a sphere around this one
+	 * transformed by {@code m}, scaling the radius by the largest axis scale.
+	 */
+	public Sphere transform(Mat4 m, Sphere dest) {
+		float sx = m.m00 * m.m00 + m.m01 * m.m01 + m.m02 * m.m02;
+		float sy = m.m10 * m.m10 + m.m11 * m.m11 + m.m12 * m.m12;
+		float sz = m.m20 * m.m20 + m.m21 * m.m21 + m.m22 * m.m22;
+		float scale = Maths.sqrt(Math.max(sx, Math.max(sy, sz)));
+		return dest.set(m.m00 * x + m.m10 * y + m.m20 * z + m.m30,
+				m.m01 * x + m.m11 * y + m.m21 * z + m.m31,
+				m.m02 * x + m.m12 * y + m.m22 * z + m.m32,
+				radius * scale);
+	}
+
+	public Sphere copy() {
+		return new Sphere(this);
+	}
+
+	@Override
+	public String toString() {
+		return x + " " + y + " " + z + " r" + radius;
+	}
+
+	@Override
+	public int hashCode() {
+		int hash = 31 + Float.floatToIntBits(x);
+		hash = hash * 31 + Float.floatToIntBits(y);
+		hash = hash * 31 + Float.floatToIntBits(z);
+		return hash * 31 + Float.floatToIntBits(radius);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) return true;
+		if (o == null) return false;
+		if (o instanceof Sphere) {
+			Sphere s = (Sphere) o;
+			return x == s.x && y == s.y && z == s.z && radius == s.radius;
+		}
+		return false;
+	}
+
+}
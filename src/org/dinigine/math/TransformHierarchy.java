@@ -0,0 +1,508 @@
+package org.dinigine.math;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+
+import org.apache.lang.Validate;
+
+/**
+ * A scene graph's transforms, kept in flat arrays indexed by node. Each node
+ * has a parent, a local translation, rotation and scale, and a cached world
+ * matrix, which is the parent's world matrix times the local one.
+ * <p>
+ * Changing a node marks it dirty, and {@link #update()} recomputes world
+ * matrices only for dirty nodes and their descendants, visiting nodes in
+ * depth first order so parents are always done first. Since each subtree sits
+ * in one contiguous run of that order, {@link #update(Executor)} can hand
+ * separate subtrees to separate threads.
+ * <p>
+ * World matrices are affine: the bottom row is always 0 0 0 1.
+ */
+public class TransformHierarchy {
+
+	/** Local transform floats per node: translation, rotation, scale */
+	private static final int LOCAL = 10;
+	/** Subtrees up to this size are updated by one task */
+	private static final int GRAIN = 1024;
+
+	private int size;
+	private int[] parents;
+	private float[] locals;
+	private float[] worlds;
+	private boolean[] dirty;
+	private boolean[] changed;
+	private int dirtyCount;
+
+	/** Nodes in depth first order, rebuilt when parents change */
+	private int[] order;
+	private int[] subtreeSizes;
+	private boolean structureChanged;
+
+	/** Positions in {@link #order} of nodes with subtrees bigger than the grain */
+	private int[] spine;
+	private int spineSize;
+	/** Runs of {@link #order} made of whole small subtrees, as start, end pairs */
+	private int[] ranges;
+	private int rangeCount;
+
+	private int updated;
+
+	public TransformHierarchy() {
+		this(64);
+	}
+
+	public TransformHierarchy(int capacity) {
+		Validate.isTrue(capacity > 0, "Capacity must be positive");
+		allocate(capacity);
+	}
+
+	private void allocate(int capacity) {
+		parents = new int[capacity];
+		locals = new float[capacity * LOCAL];
+		worlds = new float[capacity * 16];
+		dirty = new boolean[capacity];
+		changed = new boolean[capacity];
+		order = new int[capacity];
+		subtreeSizes = new int[capacity];
+		spine = new int[16];
+		ranges = new int[32];
+	}
+
+	private void grow() {
+		int capacity = parents.length * 2;
+		parents = Arrays.copyOf(parents, capacity);
+		locals = Arrays.copyOf(locals, capacity * LOCAL);
+		worlds = Arrays.copyOf(worlds, capacity * 16);
+		dirty = Arrays.copyOf(dirty, capacity);
+		changed = Arrays.copyOf(changed, capacity);
+		order = new int[capacity];
+		subtreeSizes = new int[capacity];
+	}
+
+	/**
+	 * Adds a node with an identity local transform.
+	 *
+	 * @param parent
+	 *            - the parent node, or -1 for a root
+	 * @return the new node
+	 */
+	public int add(int parent) {
+		if (parent != -1) checkNode(parent);
+		if (size == parents.length) {
+			grow();
+		}
+		int node = size++;
+		parents[node] = parent;
+		int l = node * LOCAL;
+		Arrays.fill(locals, l, l + LOCAL, 0);
+		locals[l + 6] = 1;
+		locals[l + 7] = 1;
+		locals[l + 8] = 1;
+		locals[l + 9] = 1;
+		markDirty(node);
+		structureChanged = true;
+		return node;
+	}
+
+	/**
+	 * Moves a node, with its subtree, under another parent.
+	 *
+	 * @param parent
+	 *            - the new parent, or -1 to make it a root
+	 */
+	public void setParent(int node, int parent) {
+		checkNode(node);
+		if (parent != -1) {
+			checkNode(parent);
+			for (int p = parent; p != -1; p = parents[p]) {
+				if (p == node) throw new IllegalArgumentException("Node " + parent + " is inside " + node + "'s subtree");
+			}
+		}
+		if (parents[node] == parent) return;
+		parents[node] = parent;
+		markDirty(node);
+		structureChanged = true;
+	}
+
+	public int getParent(int node) {
+		checkNode(node);
+		return parents[node];
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Removes every node.
+	 */
+	public void clear() {
+		Arrays.fill(dirty, 0, size, false);
+		size = 0;
+		dirtyCount = 0;
+		structureChanged = true;
+	}
+
+	public void setTranslation(int node, Vec3 v) {
+		setTranslation(node, v.x, v.y, v.z);
+	}
+
+	public void setTranslation(int node, float x, float y, float z) {
+		checkNode(node);
+		int l = node * LOCAL;
+		locals[l] = x;
+		locals[l + 1] = y;
+		locals[l + 2] = z;
+		markDirty(node);
+	}
+
+	/**
+	 * @param q
+	 *            - the rotation, which must be normalized
+	 */
+	public void setRotation(int node, Quat q) {
+		checkNode(node);
+		int l = node * LOCAL;
+		locals[l + 3] = q.x;
+		locals[l + 4] = q.y;
+		locals[l + 5] = q.z;
+		locals[l + 6] = q.w;
+		markDirty(node);
+	}
+
+	public void setScale(int node, float scale) {
+		setScale(node, scale, scale, scale);
+	}
+
+	public void setScale(int node, Vec3 v) {
+		setScale(node, v.x, v.y, v.z);
+	}
+
+	public void setScale(int node, float x, float y, float z) {
+		checkNode(node);
+		int l = node * LOCAL;
+		locals[l + 7] = x;
+		locals[l + 8] = y;
+		locals[l + 9] = z;
+		markDirty(node);
+	}
+
+	public Vec3 getTranslation(int node, Vec3 dest) {
+		checkNode(node);
+		int l = node * LOCAL;
+		return dest.set(locals[l], locals[l + 1], locals[l + 2]);
+	}
+
+	public Quat getRotation(int node, Quat dest) {
+		checkNode(node);
+		int l = node * LOCAL;
+		return dest.set(locals[l + 3], locals[l + 4], locals[l + 5], locals[l + 6]);
+	}
+
+	public Vec3 getScale(int node, Vec3 dest) {
+		checkNode(node);
+		int l = node * LOCAL;
+		return dest.set(locals[l + 7], locals[l + 8], locals[l + 9]);
+	}
+
+	public boolean isDirty(int node) {
+		checkNode(node);
+		return dirty[node];
+	}
+
+	/**
+	 * @return the node's world matrix as of the last update
+	 */
+	public Mat4 getWorld(int node, Mat4 dest) {
+		checkNode(node);
+		int m = node * 16;
+		dest.m00 = worlds[m];
+		dest.m01 = worlds[m + 1];
+		dest.m02 = worlds[m + 2];
+		dest.m03 = 0;
+		dest.m10 = worlds[m + 4];
+		dest.m11 = worlds[m + 5];
+		dest.m12 = worlds[m + 6];
+		dest.m13 = 0;
+		dest.m20 = worlds[m + 8];
+		dest.m21 = worlds[m + 9];
+		dest.m22 = worlds[m + 10];
+		dest.m23 = 0;
+		dest.m30 = worlds[m + 12];
+		dest.m31 = worlds[m + 13];
+		dest.m32 = worlds[m + 14];
+		dest.m33 = 1;
+		return dest;
+	}
+
+	/**
+	 * Puts the node's world matrix, column major like {@link Mat4#store}.
+	 */
+	public void storeWorld(int node, FloatBuffer buf) {
+		checkNode(node);
+		buf.put(worlds, node * 16, 16);
+	}
+
+	/**
+	 * @return every node's world matrix, 16 floats each in the order of
+	 *         {@link Mat4#store}, shared with this hierarchy
+	 */
+	public float[] getWorldMatrices() {
+		return worlds;
+	}
+
+	/**
+	 * @return nodes recomputed by the last update
+	 */
+	public int getUpdatedCount() {
+		return updated;
+	}
+
+	/**
+	 * Recomputes the world matrices of dirty nodes and their descendants.
+	 *
+	 * @return how many were recomputed
+	 */
+	public int update() {
+		if (!prepare()) return 0;
+		updated = updateRange(0, size);
+		dirtyCount = 0;
+		return updated;
+	}
+
+	/**
+	 * Updates like {@link #update()}, but hands runs of whole subtrees, about
+	 * {@value #GRAIN} nodes each, to {@code executor}. The few nodes above them
+	 * are done first on this thread, which also runs one of the runs itself.
+	 */
+	public int update(Executor executor) throws InterruptedException {
+		if (!prepare()) return 0;
+		if (rangeCount < 2) return update();
+
+		int count = 0;
+		for (int i = 0; i < spineSize; i++) {
+			count += updateRange(spine[i], spine[i] + 1);
+		}
+
+		List<Future<Integer>> tasks = new ArrayList<>(rangeCount - 1);
+		for (int i = 1; i < rangeCount; i++) {
+			final int start = ranges[i * 2], end = ranges[i * 2 + 1];
+			FutureTask<Integer> task = new FutureTask<>(new Callable<Integer>() {
+				@Override
+				public Integer call() {
+					return updateRange(start, end);
+				}
+			});
+			tasks.add(task);
+			executor.execute(task);
+		}
+		try {
+			count += updateRange(ranges[0], ranges[1]);
+		} finally {
+			for (Future<Integer> task : tasks) {
+				try {
+					count += task.get();
+				} catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+					if (cause instanceof Error) throw (Error) cause;
+					throw new IllegalStateException(cause);
+				}
+			}
+		}
+		dirtyCount = 0;
+		updated = count;
+		return count;
+	}
+
+	/**
+	 * @return false if there's nothing to update
+	 */
+	private boolean prepare() {
+		if (structureChanged) {
+			sort();
+			partition();
+			structureChanged = false;
+		}
+		if (dirtyCount == 0) {
+			updated = 0;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Updates the nodes at positions [start, end) of the depth first order,
+	 * whose parents must already be up to date.
+	 */
+	private int updateRange(int start, int end) {
+		int count = 0;
+		for (int p = start; p < end; p++) {
+			int node = order[p];
+			int parent = parents[node];
+			boolean c = dirty[node] || (parent != -1 && changed[parent]);
+			changed[node] = c;
+			if (c) {
+				dirty[node] = false;
+				computeWorld(node, parent);
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private void computeWorld(int node, int parent) {
+		float[] l = locals;
+		int i = node * LOCAL;
+		float tx = l[i], ty = l[i + 1], tz = l[i + 2];
+		float qx = l[i + 3], qy = l[i + 4], qz = l[i + 5], qw = l[i + 6];
+		float sx = l[i + 7], sy = l[i + 8], sz = l[i + 9];
+
+		float x2 = qx + qx, y2 = qy + qy, z2 = qz + qz;
+		float xx = qx * x2, xy = qx * y2, xz = qx * z2;
+		float yy = qy * y2, yz = qy * z2, zz = qz * z2;
+		float wx = qw * x2, wy = qw * y2, wz = qw * z2;
+		float a00 = (1 - (yy + zz)) * sx, a01 = (xy + wz) * sx, a02 = (xz - wy) * sx;
+		float a10 = (xy - wz) * sy, a11 = (1 - (xx + zz)) * sy, a12 = (yz + wx) * sy;
+		float a20 = (xz + wy) * sz, a21 = (yz - wx) * sz, a22 = (1 - (xx + yy)) * sz;
+
+		float[] w = worlds;
+		int m = node * 16;
+		if (parent == -1) {
+			w[m] = a00;
+			w[m + 1] = a01;
+			w[m + 2] = a02;
+			w[m + 4] = a10;
+			w[m + 5] = a11;
+			w[m + 6] = a12;
+			w[m + 8] = a20;
+			w[m + 9] = a21;
+			w[m + 10] = a22;
+			w[m + 12] = tx;
+			w[m + 13] = ty;
+			w[m + 14] = tz;
+		} else {
+			int p = parent * 16;
+			float p00 = w[p], p01 = w[p + 1], p02 = w[p + 2];
+			float p10 = w[p + 4], p11 = w[p + 5], p12 = w[p + 6];
+			float p20 = w[p + 8], p21 = w[p + 9], p22 = w[p + 10];
+			float p30 = w[p + 12], p31 = w[p + 13], p32 = w[p + 14];
+			w[m] = p00 * a00 + p10 * a01 + p20 * a02;
+			w[m + 1] = p01 * a00 + p11 * a01 + p21 * a02;
+			w[m + 2] = p02 * a00 + p12 * a01 + p22 * a02;
+			w[m + 4] = p00 * a10 + p10 * a11 + p20 * a12;
+			w[m + 5] = p01 * a10 + p11 * a11 + p21 * a12;
+			w[m + 6] = p02 * a10 + p12 * a11 + p22 * a12;
+			w[m + 8] = p00 * a20 + p10 * a21 + p20 * a22;
+			w[m + 9] = p01 * a20 + p11 * a21 + p21 * a22;
+			w[m + 10] = p02 * a20 + p12 * a21 + p22 * a22;
+			w[m + 12] = p00 * tx + p10 * ty + p20 * tz + p30;
+			w[m + 13] = p01 * tx + p11 * ty + p21 * tz + p31;
+			w[m + 14] = p02 * tx + p12 * ty + p22 * tz + p32;
+		}
+		w[m + 3] = 0;
+		w[m + 7] = 0;
+		w[m + 11] = 0;
+		w[m + 15] = 1;
+	}
+
+	/**
+	 * Puts the nodes in depth first order, so every subtree is a contiguous
+	 * run starting with its root.
+	 */
+	private void sort() {
+		// children of each node, grouped by parent
+		int[] first = new int[size + 2];
+		for (int i = 0; i < size; i++) {
+			first[parents[i] + 1]++;
+		}
+		int[] children = new int[size];
+		int[] next = new int[size + 2];
+		for (int i = 0, sum = 0; i < first.length; i++) {
+			int n = first[i];
+			first[i] = next[i] = sum;
+			sum += n;
+		}
+		for (int i = 0; i < size; i++) {
+			children[next[parents[i] + 1]++] = i;
+		}
+
+		// walk with an explicit stack, deep hierarchies would overflow
+		int[] stack = next;
+		int top = 0, p = 0;
+		for (int i = first[1] - 1; i >= 0; i--) {
+			stack[top++] = children[i];
+		}
+		while (top > 0) {
+			int node = stack[--top];
+			order[p++] = node;
+			for (int i = first[node + 2] - 1; i >= first[node + 1]; i--) {
+				stack[top++] = children[i];
+			}
+		}
+
+		for (int i = 0; i < size; i++) {
+			subtreeSizes[i] = 1;
+		}
+		for (int i = size - 1; i >= 0; i--) {
+			int node = order[i];
+			if (parents[node] != -1) subtreeSizes[parents[node]] += subtreeSizes[node];
+		}
+	}
+
+	/**
+	 * Splits the order into the spine, nodes whose subtrees are too big for
+	 * one task, and runs of whole subtrees that hang off it. Each run only
+	 * depends on spine nodes, so runs can be updated at the same time once the
+	 * spine is done.
+	 */
+	private void partition() {
+		spineSize = 0;
+		rangeCount = 0;
+		int start = -1;
+		for (int p = 0; p < size;) {
+			int n = subtreeSizes[order[p]];
+			if (n > GRAIN) {
+				if (start != -1) addRange(start, p);
+				start = -1;
+				if (spineSize == spine.length) spine = Arrays.copyOf(spine, spineSize * 2);
+				spine[spineSize++] = p;
+				p++;
+			} else {
+				if (start == -1) start = p;
+				p += n;
+				if (p - start >= GRAIN) {
+					addRange(start, p);
+					start = -1;
+				}
+			}
+		}
+		if (start != -1) addRange(start, size);
+	}
+
+	private void addRange(int start, int end) {
+		if (rangeCount * 2 == ranges.length) ranges = Arrays.copyOf(ranges, ranges.length * 2);
+		ranges[rangeCount * 2] = start;
+		ranges[rangeCount * 2 + 1] = end;
+		rangeCount++;
+	}
+
+	private void markDirty(int node) {
+		if (!dirty[node]) {
+			dirty[node] = true;
+			dirtyCount++;
+		}
+	}
+
+	private void checkNode(int node) {
+		if (node < 0 || node >= size) throw new IndexOutOfBoundsException("No node " + node);
+	}
+
+}
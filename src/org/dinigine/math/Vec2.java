@@ -52,15 +52,23 @@ public class Vec2 {
 	}
 
 	public Vec2 normalize() {
+		return normalize(this);
+	}
+
+	public Vec2 normalize(Vec2 dest) {
 		float l = length();
 		if (l != 0) {
-			return mul(1 / l);
+			return mul(1 / l, dest);
 		}
-		return this;
+		return dest.set(this);
 	}
 
 	public Vec2 negate() {
-		return mul(-1);
+		return negate(this);
+	}
+
+	public Vec2 negate(Vec2 dest) {
+		return mul(-1, dest);
 	}
 
 	public Vec2 zero() {
@@ -80,53 +88,84 @@ public class Vec2 {
 	}
 	
 	public Vec2 add(Vec2 other) {
-		x += other.x;
-		y += other.y;
-		return this;
+		return add(other, this);
+	}
+
+	public Vec2 add(Vec2 other, Vec2 dest) {
+		dest.x = x + other.x;
+		dest.y = y + other.y;
+		return dest;
 	}
 
 	public Vec2 add(float n) {
-		x += n;
-		y += n;
-		return this;
+		return add(n, this);
+	}
+
+	public Vec2 add(float n, Vec2 dest) {
+		dest.x = x + n;
+		dest.y = y + n;
+		return dest;
 	}
 
 	public Vec2 sub(Vec2 other) {
-		x -= other.x;
-		y -= other.y;
-		return this;
+		return sub(other, this);
+	}
+
+	public Vec2 sub(Vec2 other, Vec2 dest) {
+		dest.x = x - other.x;
+		dest.y = y - other.y;
+		return dest;
 	}
 
 	public Vec2 sub(float n) {
-		x -= n;
-		y -= n;
-		return this;
+		return sub(n, this);
+	}
+
+	public Vec2 sub(float n, Vec2 dest) {
+		dest.x = x - n;
+		dest.y = y - n;
+		return dest;
 	}
 
 	public Vec2 mul(Vec2 other) {
-		x *= other.x;
-		y *= other.y;
-		return this;
+		return mul(other, this);
+	}
+
+	public Vec2 mul(Vec2 other, Vec2 dest) {
+		dest.x = x * other.x;
+		dest.y = y * other.y;
+		return dest;
 	}
 
 	public Vec2 mul(float n) {
-		x *= n;
-		y *= n;
-		return this;
+		return mul(n, this);
+	}
+
+	public Vec2 mul(float n, Vec2 dest) {
+		dest.x = x * n;
+		dest.y = y * n;
+		return dest;
 	}
 
 	public Vec2 div(Vec2 other) {
-		if (other.x != 0) x /= other.x;
-		if (other.y != 0) y /= other.y;
-		return this;
+		return div(other, this);
+	}
+
+	public Vec2 div(Vec2 other, Vec2 dest) {
+		dest.x = other.x != 0 ? x / other.x : x;
+		dest.y = other.y != 0 ? y / other.y : y;
+		return dest;
 	}
 
 	public Vec2 div(float n) {
-		if (n != 0) {
-			x /= n;
-			y /= n;
-		}
-		return this;
+		return div(n, this);
+	}
+
+	public Vec2 div(float n, Vec2 dest) {
+		if (n == 0) return dest.set(this);
+		dest.x = x / n;
+		dest.y = y / n;
+		return dest;
 	}
 
 	public Vec2 copy() {
@@ -67,15 +67,23 @@ public class Vec3 {
 	}
 
 	public Vec3 normalize() {
+		return normalize(this);
+	}
+
+	public Vec3 normalize(Vec3 dest) {
 		float l = length();
 		if (l != 0) {
-			mul(1 / l);
+			return mul(1 / l, dest);
 		}
-		return this;
+		return dest.set(this);
 	}
 
 	public Vec3 negate() {
-		return mul(-1);
+		return negate(this);
+	}
+
+	public Vec3 negate(Vec3 dest) {
+		return mul(-1, dest);
 	}
 
 	public Vec3 zero() {
@@ -86,11 +94,13 @@ public class Vec3 {
 		return x * other.x + y * other.y + z * other.z;
 	}
 
+	/**
+	 * @param dest
+	 *            - where to put the result, which may be this or
+	 *            {@code right}
+	 */
 	public Vec3 cross(Vec3 right, Vec3 dest) {
-		dest.x = y * right.z - z * right.y;
-		dest.y = right.x * z - right.z * x;
-		dest.z = x * right.y - y * right.x;
-		return dest;
+		return dest.set(y * right.z - z * right.y, right.x * z - right.z * x, x * right.y - y * right.x);
 	}
 
 	public float dist(Vec3 other) {
@@ -103,68 +113,108 @@ public class Vec3 {
 	}
 
 	public Vec3 transform(Mat4 m, Vec3 out) {
-		out.x = m.m00 * x + m.m10 * y + m.m20 * z;
-		out.y = m.m01 * x + m.m11 * y + m.m21 * z;
-		out.z = m.m02 * x + m.m12 * y + m.m22 * z;
-		return out;
+		return out.set(m.m00 * x + m.m10 * y + m.m20 * z,
+				m.m01 * x + m.m11 * y + m.m21 * z,
+				m.m02 * x + m.m12 * y + m.m22 * z);
+	}
+
+	/**
+	 * Transforms this as a point, translation included, assuming the bottom
+	 * row of {@code m} is 0 0 0 1.
+	 */
+	public Vec3 transformPoint(Mat4 m, Vec3 out) {
+		return out.set(m.m00 * x + m.m10 * y + m.m20 * z + m.m30,
+				m.m01 * x + m.m11 * y + m.m21 * z + m.m31,
+				m.m02 * x + m.m12 * y + m.m22 * z + m.m32);
 	}
 
 	public Vec3 add(Vec3 other) {
-		x += other.x;
-		y += other.y;
-		z += other.z;
-		return this;
+		return add(other, this);
+	}
+
+	public Vec3 add(Vec3 other, Vec3 dest) {
+		dest.x = x + other.x;
+		dest.y = y + other.y;
+		dest.z = z + other.z;
+		return dest;
 	}
 
 	public Vec3 add(float n) {
-		x += n;
-		y += n;
-		z += n;
-		return this;
+		return add(n, this);
+	}
+
+	public Vec3 add(float n, Vec3 dest) {
+		dest.x = x + n;
+		dest.y = y + n;
+		dest.z = z + n;
+		return dest;
 	}
 
 	public Vec3 sub(Vec3 other) {
-		x -= other.x;
-		y -= other.y;
-		z -= other.z;
-		return this;
+		return sub(other, this);
+	}
+
+	public Vec3 sub(Vec3 other, Vec3 dest) {
+		dest.x = x - other.x;
+		dest.y = y - other.y;
+		dest.z = z - other.z;
+		return dest;
 	}
 
 	public Vec3 sub(float n) {
-		x -= n;
-		y -= n;
-		z -= n;
-		return this;
+		return sub(n, this);
+	}
+
+	public Vec3 sub(float n, Vec3 dest) {
+		dest.x = x - n;
+		dest.y = y - n;
+		dest.z = z - n;
+		return dest;
 	}
 
 	public Vec3 mul(Vec3 other) {
-		x *= other.x;
-		y *= other.y;
-		z *= other.z;
-		return this;
+		return mul(other, this);
+	}
+
+	public Vec3 mul(Vec3 other, Vec3 dest) {
+		dest.x = x * other.x;
+		dest.y = y * other.y;
+		dest.z = z * other.z;
+		return dest;
 	}
 
 	public Vec3 mul(float n) {
-		x *= n;
-		y *= n;
-		z *= n;
-		return this;
+		return mul(n, this);
+	}
+
+	public Vec3 mul(float n, Vec3 dest) {
+		dest.x = x * n;
+		dest.y = y * n;
+		dest.z = z * n;
+		return dest;
 	}
 
 	public Vec3 div(Vec3 other) {
-		if (other.x != 0) x /= other.x;
-		if (other.y != 0) y /= other.y;
-		if (other.z != 0) z /= other.z;
-		return this;
+		return div(other, this);
+	}
+
+	public Vec3 div(Vec3 other, Vec3 dest) {
+		dest.x = other.x != 0 ? x / other.x : x;
+		dest.y = other.y != 0 ? y / other.y : y;
+		dest.z = other.z != 0 ? z / other.z : z;
+		return dest;
 	}
 
 	public Vec3 div(float n) {
-		if (n != 0) {
-			x /= n;
-			y /= n;
-			z /= n;
-		}
-		return this;
+		return div(n, this);
+	}
+
+	public Vec3 div(float n, Vec3 dest) {
+		if (n == 0) return dest.set(this);
+		dest.x = x / n;
+		dest.y = y / n;
+		dest.z = z / n;
+		return dest;
 	}
 
 	public Vec3 copy() {
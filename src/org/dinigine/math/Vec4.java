@@ -81,15 +81,23 @@ public class Vec4 {
 	}
 
 	public Vec4 normalize() {
+		return normalize(this);
+	}
+
+	public Vec4 normalize(Vec4 dest) {
 		float l = length();
 		if (l != 0) {
-			return mul(1 / l);
+			return mul(1 / l, dest);
 		}
-		return this;
+		return dest.set(this);
 	}
 
 	public Vec4 negate() {
-		return mul(-1);
+		return negate(this);
+	}
+
+	public Vec4 negate(Vec4 dest) {
+		return mul(-1, dest);
 	}
 
 	public Vec4 zero() {
@@ -107,77 +115,107 @@ public class Vec4 {
 	}
 
 	public Vec4 transform(Mat4 m, Vec4 out) {
-		out.x = m.m00 * x + m.m10 * y + m.m20 * z + m.m30 * w;
-		out.y = m.m01 * x + m.m11 * y + m.m21 * z + m.m31 * w;
-		out.z = m.m02 * x + m.m12 * y + m.m22 * z + m.m32 * w;
-		out.w = m.m03 * x + m.m13 * y + m.m23 * z + m.m33 * w;
-		return out;
-	} 
+		return out.set(m.m00 * x + m.m10 * y + m.m20 * z + m.m30 * w,
+				m.m01 * x + m.m11 * y + m.m21 * z + m.m31 * w,
+				m.m02 * x + m.m12 * y + m.m22 * z + m.m32 * w,
+				m.m03 * x + m.m13 * y + m.m23 * z + m.m33 * w);
+	}
 
 	public Vec4 add(Vec4 other) {
-		x += other.x;
-		y += other.y;
-		z += other.z;
-		w += other.w;
-		return this;
+		return add(other, this);
+	}
+
+	public Vec4 add(Vec4 other, Vec4 dest) {
+		dest.x = x + other.x;
+		dest.y = y + other.y;
+		dest.z = z + other.z;
+		dest.w = w + other.w;
+		return dest;
 	}
 
 	public Vec4 add(float n) {
-		x += n;
-		y += n;
-		z += n;
-		w += n;
-		return this;
+		return add(n, this);
+	}
+
+	public Vec4 add(float n, Vec4 dest) {
+		dest.x = x + n;
+		dest.y = y + n;
+		dest.z = z + n;
+		dest.w = w + n;
+		return dest;
 	}
 
 	public Vec4 sub(Vec4 other) {
-		x -= other.x;
-		y -= other.y;
-		z -= other.z;
-		w -= other.w;
-		return this;
+		return sub(other, this);
+	}
+
+	public Vec4 sub(Vec4 other, Vec4 dest) {
+		dest.x = x - other.x;
+		dest.y = y - other.y;
+		dest.z = z - other.z;
+		dest.w = w - other.w;
+		return dest;
 	}
 
 	public Vec4 sub(float n) {
-		x -= n;
-		y -= n;
-		z -= n;
-		w -= n;
-		return this;
+		return sub(n, this);
+	}
+
+	public Vec4 sub(float n, Vec4 dest) {
+		dest.x = x - n;
+		dest.y = y - n;
+		dest.z = z - n;
+		dest.w = w - n;
+		return dest;
 	}
 
 	public Vec4 mul(Vec4 other) {
-		x *= other.x;
-		y *= other.y;
-		z *= other.z;
-		w *= other.w;
-		return this;
+		return mul(other, this);
+	}
+
+	public Vec4 mul(Vec4 other, Vec4 dest) {
+		dest.x = x * other.x;
+		dest.y = y * other.y;
+		dest.z = z * other.z;
+		dest.w = w * other.w;
+		return dest;
 	}
 
 	public Vec4 mul(float n) {
-		x *= n;
-		y *= n;
-		z *= n;
-		w *= n;
-		return this;
+		return mul(n, this);
+	}
+
+	public Vec4 mul(float n, Vec4 dest) {
+		dest.x = x * n;
+		dest.y = y * n;
+		dest.z = z * n;
+		dest.w = w * n;
+		return dest;
 	}
 
 	public Vec4 div(Vec4 other) {
-		if (other.x != 0) x /= other.x;
-		if (other.y != 0) y /= other.y;
-		if (other.z != 0) z /= other.z;
-		if (other.w != 0) w /= other.w;
-		return this;
+		return div(other, this);
+	}
+
+	public Vec4 div(Vec4 other, Vec4 dest) {
+		dest.x = other.x != 0 ? x / other.x : x;
+		dest.y = other.y != 0 ? y / other.y : y;
+		dest.z = other.z != 0 ? z / other.z : z;
+		dest.w = other.w != 0 ? w / other.w : w;
+		return dest;
 	}
 
 	public Vec4 div(float n) {
-		if (n != 0) {
-			x /= n;
-			y /= n;
-			z /= n;
-			w /= n;
-		}
-		return this;
+		return div(n, this);
+	}
+
+	public Vec4 div(float n, Vec4 dest) {
+		if (n == 0) return dest.set(this);
+		dest.x = x / n;
+		dest.y = y / n;
+		dest.z = z / n;
+		dest.w = w / n;
+		return dest;
 	}
 
 	public Vec4 copy() {
@@ -0,0 +1,339 @@
+package org.dinigine.math;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Vector math over flat float arrays, for transforming many vertices or
+ * particles without a {@link Vec3} per element.
+ * <p>
+ * Structure of arrays (SoA) methods take one array per component and an
+ * element range. They are plain counted loops over unit-stride arrays with the
+ * matrix held in locals, which HotSpot's C2 compiler turns into SIMD code.
+ * Array of structures (AoS) methods take interleaved components with a stride
+ * in floats, so they also work on vertex data with other attributes in
+ * between, but run one element at a time.
+ * <p>
+ * Results match the {@link Vec3} methods they stand in for, and outputs may be
+ * the same arrays as inputs.
+ */
+public final class VecBatch {
+
+	/** Static only */
+	private VecBatch() {}
+
+	/**
+	 * Transforms points by {@code m}, translation included.
+	 */
+	public static void transformPoints(Mat4 m, float[] x, float[] y, float[] z, float[] outX, float[] outY,
+			float[] outZ, int offset, int count) {
+		checkRange(x.length, offset, count);
+		checkRange(y.length, offset, count);
+		checkRange(z.length, offset, count);
+		checkRange(outX.length, offset, count);
+		checkRange(outY.length, offset, count);
+		checkRange(outZ.length, offset, count);
+		float m00 = m.m00, m01 = m.m01, m02 = m.m02;
+		float m10 = m.m10, m11 = m.m11, m12 = m.m12;
+		float m20 = m.m20, m21 = m.m21, m22 = m.m22;
+		float m30 = m.m30, m31 = m.m31, m32 = m.m32;
+		for (int i = offset, end = offset + count; i < end; i++) {
+			float px = x[i], py = y[i], pz = z[i];
+			outX[i] = m00 * px + m10 * py + m20 * pz + m30;
+			outY[i] = m01 * px + m11 * py + m21 * pz + m31;
+			outZ[i] = m02 * px + m12 * py + m22 * pz + m32;
+		}
+	}
+
+	/**
+	 * Transforms directions by {@code m}, ignoring translation, as
+	 * {@link Vec3#transform(Mat4, Vec3)} does.
+	 */
+	public static void transformDirections(Mat4 m, float[] x, float[] y, float[] z, float[] outX, float[] outY,
+			float[] outZ, int offset, int count) {
+		checkRange(x.length, offset, count);
+		checkRange(y.length, offset, count);
+		checkRange(z.length, offset, count);
+		checkRange(outX.length, offset, count);
+		checkRange(outY.length, offset, count);
+		checkRange(outZ.length, offset, count);
+		float m00 = m.m00, m01 = m.m01, m02 = m.m02;
+		float m10 = m.m10, m11 = m.m11, m12 = m.m12;
+		float m20 = m.m20, m21 = m.m21, m22 = m.m22;
+		for (int i = offset, end = offset + count; i < end; i++) {
+			float px = x[i], py = y[i], pz = z[i];
+			outX[i] = m00 * px + m10 * py + m20 * pz;
+			outY[i] = m01 * px + m11 * py + m21 * pz;
+			outZ[i] = m02 * px + m12 * py + m22 * pz;
+		}
+	}
+
+	/**
+	 * Normalizes vectors in place. Zero vectors are left as they are.
+	 */
+	public static void normalize(float[] x, float[] y, float[] z, int offset, int count) {
+		checkRange(x.length, offset, count);
+		checkRange(y.length, offset, count);
+		checkRange(z.length, offset, count);
+		for (int i = offset, end = offset + count; i < end; i++) {
+			float px = x[i], py = y[i], pz = z[i];
+			float l = (float) Math.sqrt(px * px + py * py + pz * pz);
+			float s = l != 0 ? 1 / l : 1;
+			x[i] = px * s;
+			y[i] = py * s;
+			z[i] = pz * s;
+		}
+	}
+
+	/**
+	 * Writes the dot product of each pair of vectors to {@code out}.
+	 */
+	public static void dot(float[] ax, float[] ay, float[] az, float[] bx, float[] by, float[] bz, float[] out,
+			int offset, int count) {
+		checkRange(ax.length, offset, count);
+		checkRange(ay.length, offset, count);
+		checkRange(az.length, offset, count);
+		checkRange(bx.length, offset, count);
+		checkRange(by.length, offset, count);
+		checkRange(bz.length, offset, count);
+		checkRange(out.length, offset, count);
+		for (int i = offset, end = offset + count; i < end; i++) {
+			out[i] = ax[i] * bx[i] + ay[i] * by[i] + az[i] * bz[i];
+		}
+	}
+
+	/**
+	 * Writes a × b for each pair of vectors.
+	 */
+	public static void cross(float[] ax, float[] ay, float[] az, float[] bx, float[] by, float[] bz, float[] outX,
+			float[] outY, float[] outZ, int offset, int count) {
+		checkRange(ax.length, offset, count);
+		checkRange(ay.length, offset, count);
+		checkRange(az.length, offset, count);
+		checkRange(bx.length, offset, count);
+		checkRange(by.length, offset, count);
+		checkRange(bz.length, offset, count);
+		checkRange(outX.length, offset, count);
+		checkRange(outY.length, offset, count);
+		checkRange(outZ.length, offset, count);
+		for (int i = offset, end = offset + count; i < end; i++) {
+			float x0 = ax[i], y0 = ay[i], z0 = az[i];
+			float x1 = bx[i], y1 = by[i], z1 = bz[i];
+			outX[i] = y0 * z1 - z0 * y1;
+			outY[i] = x1 * z0 - z1 * x0;
+			outZ[i] = x0 * y1 - y0 * x1;
+		}
+	}
+
+	/**
+	 * Interpolates element by element, so it serves any layout.
+	 *
+	 * @param t
+	 *            - the point between [0 -> 1]
+	 */
+	public static void lerp(float[] a, float[] b, float t, float[] out, int offset, int count) {
+		checkRange(a.length, offset, count);
+		checkRange(b.length, offset, count);
+		checkRange(out.length, offset, count);
+		float s = 1 - t;
+		for (int i = offset, end = offset + count; i < end; i++) {
+			out[i] = s * a[i] + t * b[i];
+		}
+	}
+
+	/**
+	 * Transforms interleaved points by {@code m}, translation included.
+	 *
+	 * @param stride
+	 *            - floats from one element to the next, at least 3
+	 */
+	public static void transformPoints(Mat4 m, float[] src, int srcOffset, float[] dst, int dstOffset, int stride,
+			int count) {
+		checkStride(src.length, srcOffset, stride, count);
+		checkStride(dst.length, dstOffset, stride, count);
+		float m00 = m.m00, m01 = m.m01, m02 = m.m02;
+		float m10 = m.m10, m11 = m.m11, m12 = m.m12;
+		float m20 = m.m20, m21 = m.m21, m22 = m.m22;
+		float m30 = m.m30, m31 = m.m31, m32 = m.m32;
+		for (int n = 0, i = srcOffset, j = dstOffset; n < count; n++, i += stride, j += stride) {
+			float px = src[i], py = src[i + 1], pz = src[i + 2];
+			dst[j] = m00 * px + m10 * py + m20 * pz + m30;
+			dst[j + 1] = m01 * px + m11 * py + m21 * pz + m31;
+			dst[j + 2] = m02 * px + m12 * py + m22 * pz + m32;
+		}
+	}
+
+	/**
+	 * Transforms interleaved directions by {@code m}, ignoring translation.
+	 *
+	 * @param stride
+	 *            - floats from one element to the next, at least 3
+	 */
+	public static void transformDirections(Mat4 m, float[] src, int srcOffset, float[] dst, int dstOffset,
+			int stride, int count) {
+		checkStride(src.length, srcOffset, stride, count);
+		checkStride(dst.length, dstOffset, stride, count);
+		float m00 = m.m00, m01 = m.m01, m02 = m.m02;
+		float m10 = m.m10, m11 = m.m11, m12 = m.m12;
+		float m20 = m.m20, m21 = m.m21, m22 = m.m22;
+		for (int n = 0, i = srcOffset, j = dstOffset; n < count; n++, i += stride, j += stride) {
+			float px = src[i], py = src[i + 1], pz = src[i + 2];
+			dst[j] = m00 * px + m10 * py + m20 * pz;
+			dst[j + 1] = m01 * px + m11 * py + m21 * pz;
+			dst[j + 2] = m02 * px + m12 * py + m22 * pz;
+		}
+	}
+
+	/**
+	 * Normalizes interleaved vectors in place. Zero vectors are left as they
+	 * are.
+	 *
+	 * @param stride
+	 *            - floats from one element to the next, at least 3
+	 */
+	public static void normalize(float[] data, int offset, int stride, int count) {
+		checkStride(data.length, offset, stride, count);
+		for (int n = 0, i = offset; n < count; n++, i += stride) {
+			float px = data[i], py = data[i + 1], pz = data[i + 2];
+			float l = (float) Math.sqrt(px * px + py * py + pz * pz);
+			float s = l != 0 ? 1 / l : 1;
+			data[i] = px * s;
+			data[i + 1] = py * s;
+			data[i + 2] = pz * s;
+		}
+	}
+
+	/**
+	 * Writes the dot product of each pair of interleaved vectors to
+	 * {@code out}, one per element from {@code outOffset}.
+	 *
+	 * @param stride
+	 *            - floats from one element to the next, at least 3
+	 */
+	public static void dot(float[] a, float[] b, int offset, int stride, float[] out, int outOffset, int count) {
+		checkStride(a.length, offset, stride, count);
+		checkStride(b.length, offset, stride, count);
+		checkRange(out.length, outOffset, count);
+		for (int n = 0, i = offset; n < count; n++, i += stride) {
+			out[outOffset + n] = a[i] * b[i] + a[i + 1] * b[i + 1] + a[i + 2] * b[i + 2];
+		}
+	}
+
+	/**
+	 * Writes a × b for each pair of interleaved vectors.
+	 *
+	 * @param stride
+	 *            - floats from one element to the next, at least 3
+	 */
+	public static void cross(float[] a, float[] b, float[] out, int offset, int stride, int count) {
+		checkStride(a.length, offset, stride, count);
+		checkStride(b.length, offset, stride, count);
+		checkStride(out.length, offset, stride, count);
+		for (int n = 0, i = offset; n < count; n++, i += stride) {
+			float x0 = a[i], y0 = a[i + 1], z0 = a[i + 2];
+			float x1 = b[i], y1 = b[i + 1], z1 = b[i + 2];
+			out[i] = y0 * z1 - z0 * y1;
+			out[i + 1] = x1 * z0 - z1 * x0;
+			out[i + 2] = x0 * y1 - y0 * x1;
+		}
+	}
+
+	/**
+	 * Transforms interleaved points in a buffer in place, translation
+	 * included, from the buffer's position. The position isn't changed.
+	 *
+	 * @param stride
+	 *            - floats from one element to the next, at least 3
+	 */
+	public static void transformPoints(Mat4 m, FloatBuffer buf, int stride, int count) {
+		int offset = buf.position();
+		checkStride(buf.limit(), offset, stride, count);
+		float m00 = m.m00, m01 = m.m01, m02 = m.m02;
+		float m10 = m.m10, m11 = m.m11, m12 = m.m12;
+		float m20 = m.m20, m21 = m.m21, m22 = m.m22;
+		float m30 = m.m30, m31 = m.m31, m32 = m.m32;
+		for (int n = 0, i = offset; n < count; n++, i += stride) {
+			float px = buf.get(i), py = buf.get(i + 1), pz = buf.get(i + 2);
+			buf.put(i, m00 * px + m10 * py + m20 * pz + m30);
+			buf.put(i + 1, m01 * px + m11 * py + m21 * pz + m31);
+			buf.put(i + 2, m02 * px + m12 * py + m22 * pz + m32);
+		}
+	}
+
+	/**
+	 * Transforms interleaved directions in a buffer in place, ignoring
+	 * translation, from the buffer's position. The position isn't changed.
+	 *
+	 * @param stride
+	 *            - floats from one element to the next, at least 3
+	 */
+	public static void transformDirections(Mat4 m, FloatBuffer buf, int stride, int count) {
+		int offset = buf.position();
+		checkStride(buf.limit(), offset, stride, count);
+		float m00 = m.m00, m01 = m.m01, m02 = m.m02;
+		float m10 = m.m10, m11 = m.m11, m12 = m.m12;
+		float m20 = m.m20, m21 = m.m21, m22 = m.m22;
+		for (int n = 0, i = offset; n < count; n++, i += stride) {
+			float px = buf.get(i), py = buf.get(i + 1), pz = buf.get(i + 2);
+			buf.put(i, m00 * px + m10 * py + m20 * pz);
+			buf.put(i + 1, m01 * px + m11 * py + m21 * pz);
+			buf.put(i + 2, m02 * px + m12 * py + m22 * pz);
+		}
+	}
+
+	/**
+	 * Splits interleaved vectors into one array per component.
+	 *
+	 * @param stride
+	 *            - floats from one element to the next, at least 3
+	 */
+	public static void toSoA(float[] src, int srcOffset, int stride, float[] x, float[] y, float[] z, int offset,
+			int count) {
+		checkStride(src.length, srcOffset, stride, count);
+		checkRange(x.length, offset, count);
+		checkRange(y.length, offset, count);
+		checkRange(z.length, offset, count);
+		for (int n = 0, i = srcOffset; n < count; n++, i += stride) {
+			x[offset + n] = src[i];
+			y[offset + n] = src[i + 1];
+			z[offset + n] = src[i + 2];
+		}
+	}
+
+	/**
+	 * Interleaves one array per component, leaving any floats between
+	 * elements untouched.
+	 *
+	 * @param stride
+	 *            - floats from one element to the next, at least 3
+	 */
+	public static void toAoS(float[] x, float[] y, float[] z, int offset, float[] dst, int dstOffset, int stride,
+			int count) {
+		checkRange(x.length, offset, count);
+		checkRange(y.length, offset, count);
+		checkRange(z.length, offset, count);
+		checkStride(dst.length, dstOffset, stride, count);
+		for (int n = 0, j = dstOffset; n < count; n++, j += stride) {
+			dst[j] = x[offset + n];
+			dst[j + 1] = y[offset + n];
+			dst[j + 2] = z[offset + n];
+		}
+	}
+
+	/**
+	 * Checking up front lets the JIT drop the per-element bounds checks.
+	 */
+	private static void checkRange(int length, int offset, int count) {
+		if (offset < 0 || count < 0 || offset > length - count) {
+			throw new IndexOutOfBoundsException("Range " + offset + "+" + count + " out of bounds for " + length);
+		}
+	}
+
+	private static void checkStride(int length, int offset, int stride, int count) {
+		if (stride < 3) throw new IllegalArgumentException("Stride must be at least 3, was " + stride);
+		if (offset < 0 || count < 0 || (count > 0 && offset + (long) (count - 1) * stride + 3 > length)) {
+			throw new IndexOutOfBoundsException("Range " + offset + "+" + count + "*" + stride
+					+ " out of bounds for " + length);
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+package org.dinigine.opengl;
+
+/**
+ * A named image inside a {@link TextureAtlas} page.
+ */
+public final class AtlasRegion {
+
+	public final String name;
+	public final int page;
+	public final int x, y;
+	public final int width, height;
+	public final float u0, v0, u1, v1;
+
+	private final TextureAtlas atlas;
+
+	AtlasRegion(TextureAtlas atlas, String name, int page, int x, int y, int width, int height) {
+		this.atlas = atlas;
+		this.name = name;
+		this.page = page;
+		this.x = x;
+		this.y = y;
+		this.width = width;
+		this.height = height;
+		float pw = atlas.getPageWidth(), ph = atlas.getPageHeight();
+		this.u0 = x / pw;
+		this.v0 = y / ph;
+		this.u1 = (x + width) / pw;
+		this.v1 = (y + height) / ph;
+	}
+
+	/**
+	 * @return the page's texture, or null before {@link TextureAtlas#upload()}
+	 */
+	public Texture getTexture() {
+		return atlas.getTexture(page);
+	}
+
+	@Override
+	public String toString() {
+		return name + " (page " + page + ", " + x + "," + y + " " + width + "x" + height + ")";
+	}
+
+}
@@ -0,0 +1,116 @@
+package org.dinigine.opengl;
+
+import org.apache.lang.Validate;
+
+/**
+ * Splits one buffer into equally sized regions that are written in turn, so
+ * the CPU can fill one region while the GPU still reads the others. Each
+ * region is guarded by a fence that is waited on before it is handed out
+ * again.
+ * <p>
+ * Only bookkeeping lives here, the buffer itself is owned by the caller.
+ */
+public class BufferRing {
+
+	public static final int DEFAULT_REGIONS = 3;
+
+	/** How long a single wait blocks before polling again, in nanoseconds */
+	private static final long WAIT_TIMEOUT = 1000000000L;
+
+	private final FenceSync sync;
+	private final long[] fences;
+	private final int regionSize;
+
+	private int current = -1;
+	private boolean acquired;
+	private int stalls;
+
+	public BufferRing(int regionSize) {
+		this(FenceSync.GL, DEFAULT_REGIONS, regionSize);
+	}
+
+	public BufferRing(FenceSync sync, int regions, int regionSize) {
+		Validate.notNull(sync, "sync");
+		Validate.isTrue(regions > 0, "Need at least one region");
+		Validate.isTrue(regionSize > 0, "Region size must be positive");
+		this.sync = sync;
+		this.fences = new long[regions];
+		this.regionSize = regionSize;
+	}
+
+	/**
+	 * Moves on to the next region, blocking until the GPU has finished with
+	 * it.
+	 *
+	 * @return the byte offset of the region within the buffer
+	 */
+	public int acquire() {
+		Validate.validState(!acquired, "Region already acquired!");
+		current = (current + 1) % fences.length;
+
+		long fence = fences[current];
+		if (fence != 0) {
+			if (!sync.await(fence, 0)) {
+				stalls++;
+				while (!sync.await(fence, WAIT_TIMEOUT));
+			}
+			sync.delete(fence);
+			fences[current] = 0;
+		}
+
+		acquired = true;
+		return getOffset();
+	}
+
+	/**
+	 * Fences the current region. Call once every command reading it has been
+	 * issued.
+	 */
+	public void release() {
+		Validate.validState(acquired, "No region acquired!");
+		fences[current] = sync.insert();
+		acquired = false;
+	}
+
+	public boolean isAcquired() {
+		return acquired;
+	}
+
+	public int getRegion() {
+		return current;
+	}
+
+	public int getOffset() {
+		return current < 0 ? 0 : current * regionSize;
+	}
+
+	public int getRegionCount() {
+		return fences.length;
+	}
+
+	public int getRegionSize() {
+		return regionSize;
+	}
+
+	public int getCapacity() {
+		return fences.length * regionSize;
+	}
+
+	/**
+	 * @return how many times {@link #acquire()} had to block on the GPU
+	 */
+	public int getStallCount() {
+		return stalls;
+	}
+
+	public void dispose() {
+		for (int i = 0; i < fences.length; i++) {
+			if (fences[i] != 0) {
+				sync.delete(fences[i]);
+				fences[i] = 0;
+			}
+		}
+		acquired = false;
+	}
+
+}
@@ -4,6 +4,7 @@ import java.nio.IntBuffer;
 
 import org.dinigine.input.Input;
 import org.dinigine.util.Buffers;
+import org.dinigine.util.GameLoop;
 import org.dinigine.util.Log;
 import org.lwjgl.glfw.Callbacks;
 import org.lwjgl.glfw.GLFW;
@@ -56,6 +57,7 @@ public final class Display {
 
 		GLFW.glfwMakeContextCurrent(handle);
 		GL.createCapabilities();
+		Input.init(handle);
 		
 		show();
 		isOpen();
@@ -63,13 +65,57 @@ public final class Display {
 		Log.info("Created window: %sx%s", getWidth(), getHeight());
 	}
 
+	/**
+	 * Polls events, swaps buffers and updates the delta time, for loops that
+	 * do their own timing. See {@link #run(GameLoop, GameLoop.Game)} for a
+	 * fixed step loop.
+	 *
+	 * @return false once the window has been asked to close
+	 */
 	public static boolean isOpen() {
 		double now = getTime();
 		deltaTime = (float) (now - lastFrameTime);
 		lastFrameTime = now;
 
+		pollEvents();
+		swapBuffers();
+
+		return !shouldClose();
+	}
+
+	/**
+	 * Runs {@code game} until the window is asked to close, polling events
+	 * before each frame and swapping buffers after it renders.
+	 */
+	public static void run(GameLoop loop, GameLoop.Game game) {
+		run(loop, game, null);
+	}
+
+	/**
+	 * Like {@link #run(GameLoop, GameLoop.Game)}, also running the commands
+	 * other threads queued in {@code commands} before each frame.
+	 */
+	public static void run(GameLoop loop, GameLoop.Game game, RenderCommandQueue commands) {
+		while (!shouldClose()) {
+			pollEvents();
+			if (commands != null) commands.execute();
+			loop.frame(game, swap);
+			deltaTime = loop.getDeltaTime();
+		}
+	}
+
+	private static final Runnable swap = new Runnable() {
+		@Override
+		public void run() {
+			swapBuffers();
+		}
+	};
+
+	/**
+	 * Handles window events, then updates the framebuffer size and input.
+	 */
+	public static void pollEvents() {
 		GLFW.glfwPollEvents();
-		GLFW.glfwSwapBuffers(handle);
 
 		int lastWidth = getWidth(), lastHeight = getHeight();
 		GLFW.nglfwGetFramebufferSize(handle, dimensionsAddress, dimensionsAddress + 4);
@@ -78,8 +124,14 @@ public final class Display {
 		}
 
 		Input.poll();
+	}
+
+	public static void swapBuffers() {
+		GLFW.glfwSwapBuffers(handle);
+	}
 
-		return !GLFW.glfwWindowShouldClose(handle);
+	public static boolean shouldClose() {
+		return GLFW.glfwWindowShouldClose(handle);
 	}
 
 	public static void show() {
@@ -0,0 +1,179 @@
+package org.dinigine.opengl;
+
+import java.nio.IntBuffer;
+
+import org.apache.lang.Validate;
+import org.dinigine.util.Buffers;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL40;
+import org.lwjgl.opengl.GL43;
+import org.lwjgl.opengl.GLCapabilities;
+
+/**
+ * Packs draws of meshes sharing one vertex array into an indirect command
+ * buffer, so all of them go out in a single multi-draw call. Commands use the
+ * standard {@code DrawElementsIndirectCommand} layout:
+ *
+ * <pre>
+ * count, instanceCount, firstIndex, baseVertex, baseInstance
+ * </pre>
+ */
+public class DrawCommandBuffer {
+
+	/** Ints per command */
+	public static final int COMMAND_SIZE = 5;
+
+	private final IntBuffer commands;
+	private final int maxCommands;
+	private int vertexArray;
+	private int buffer;
+	private int uploaded;
+
+	public DrawCommandBuffer(int maxCommands) {
+		Validate.isTrue(maxCommands > 0, "Need room for at least one command");
+		this.maxCommands = maxCommands;
+		this.commands = Buffers.newIntBuffer(maxCommands * COMMAND_SIZE);
+	}
+
+	public DrawCommandBuffer clear() {
+		commands.clear();
+		vertexArray = 0;
+		uploaded = 0;
+		return this;
+	}
+
+	/**
+	 * Sets the vertex array every command draws from, needed when commands
+	 * are only added as raw fields.
+	 */
+	public DrawCommandBuffer setVertexArray(int vertexArray) {
+		Validate.isTrue(size() == 0 || vertexArray == this.vertexArray,
+				"Every mesh in a command buffer must share one vertex array");
+		this.vertexArray = vertexArray;
+		return this;
+	}
+
+	public DrawCommandBuffer add(Mesh mesh) {
+		return add(mesh, 1, 0);
+	}
+
+	/**
+	 * @param baseInstance
+	 *            - added to the instance index when fetching per-instance
+	 *            attributes, so meshes can share one {@link InstanceBuffer}.
+	 *            Needs {@link #isBaseInstanceSupported()} unless 0.
+	 */
+	public DrawCommandBuffer add(Mesh mesh, int instanceCount, int baseInstance) {
+		if (vertexArray == 0) vertexArray = mesh.getVertexArrayID();
+		else Validate.isTrue(mesh.getVertexArrayID() == vertexArray,
+				"Every mesh in a command buffer must share one vertex array");
+		return add(mesh.getElementCount(), instanceCount, mesh.getFirstElement(),
+				mesh.getBaseVertex(), baseInstance);
+	}
+
+	/**
+	 * Adds a command without a mesh, drawing from the vertex array given to
+	 * {@link #setVertexArray(int)}.
+	 *
+	 * @param baseInstance
+	 *            - must be 0 unless {@link #isBaseInstanceSupported()}, since
+	 *            older drivers require the field to be zero
+	 */
+	public DrawCommandBuffer add(int count, int instanceCount, int firstIndex, int baseVertex, int baseInstance) {
+		Validate.validState(commands.remaining() >= COMMAND_SIZE, "Command buffer is full");
+		Validate.isTrue(baseInstance == 0 || isBaseInstanceSupported(),
+				"Base instance needs OpenGL 4.2 or ARB_base_instance");
+		commands.put(count).put(instanceCount).put(firstIndex).put(baseVertex).put(baseInstance);
+		return this;
+	}
+
+	/**
+	 * @return true if the current context reads the base instance of indirect
+	 *         commands
+	 */
+	public static boolean isBaseInstanceSupported() {
+		GLCapabilities caps = GL.getCapabilities();
+		return caps.OpenGL42 || caps.GL_ARB_base_instance;
+	}
+
+	public int size() {
+		return commands.position() / COMMAND_SIZE;
+	}
+
+	public int getMaxCommands() {
+		return maxCommands;
+	}
+
+	/**
+	 * @return the commands sent by the last {@link #upload()}, which are the
+	 *         ones {@link #draw()} issues
+	 */
+	public int getUploadedCount() {
+		return uploaded;
+	}
+
+	public int getVertexArrayID() {
+		return vertexArray;
+	}
+
+	/**
+	 * @return the packed commands, from 0 up to the position
+	 */
+	public IntBuffer getCommands() {
+		return commands;
+	}
+
+	/**
+	 * Sends the commands added since the last {@link #clear()} to the GPU.
+	 */
+	public void upload() {
+		if (buffer == 0) {
+			buffer = VideoResources.createVertexBuffer();
+			VideoResources.setSize(VideoResources.VERTEX_BUFFER, buffer, (long) commands.capacity() << 2);
+		}
+		GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, buffer);
+		GL15.glBufferData(GL40.GL_DRAW_INDIRECT_BUFFER, (long) commands.capacity() << 2, GL15.GL_STREAM_DRAW);
+		commands.flip();
+		GL15.glBufferSubData(GL40.GL_DRAW_INDIRECT_BUFFER, 0, commands);
+		commands.position(commands.limit()).limit(commands.capacity());
+		uploaded = size();
+	}
+
+	public void draw() {
+		draw(GL11.GL_TRIANGLES);
+	}
+
+	/**
+	 * Binds the shared vertex array and draws every uploaded command, leaving
+	 * out any added since. Without multi-draw-indirect support the commands
+	 * are drawn one by one.
+	 */
+	public void draw(int primitive) {
+		int count = uploaded;
+		if (count == 0) return;
+		Validate.validState(vertexArray != 0, "No vertex array to draw from");
+
+		GL30.glBindVertexArray(vertexArray);
+		GL15.glBindBuffer(GL40.GL_DRAW_INDIRECT_BUFFER, buffer);
+
+		GLCapabilities caps = GL.getCapabilities();
+		if (caps.OpenGL43 || caps.GL_ARB_multi_draw_indirect) {
+			GL43.glMultiDrawElementsIndirect(primitive, GL11.GL_UNSIGNED_INT, 0, count, 0);
+		} else {
+			for (int i = 0; i < count; i++) {
+				GL40.glDrawElementsIndirect(primitive, GL11.GL_UNSIGNED_INT, (long) i * (COMMAND_SIZE << 2));
+			}
+		}
+	}
+
+	public void dispose() {
+		if (buffer != 0) {
+			VideoResources.deleteVertexBuffer(buffer);
+			buffer = 0;
+		}
+	}
+
+}
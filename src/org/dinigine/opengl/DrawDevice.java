@@ -0,0 +1,24 @@
+package org.dinigine.opengl;
+
+/**
+ * The state changes and draws a {@link RenderQueue} issues. {@link #GL} talks
+ * to the current context, anything else (such as a recording fake) can stand
+ * in for it.
+ */
+public interface DrawDevice {
+
+	DrawDevice GL = new GLDrawDevice();
+
+	void useProgram(int program);
+
+	void bindTexture(int unit, int texture);
+
+	void bindVertexArray(int vertexArray);
+
+	/**
+	 * Draws {@code count} elements starting at element {@code first}, adding
+	 * {@code baseVertex} to every index.
+	 */
+	void drawElements(int primitive, int count, int first, int baseVertex);
+
+}
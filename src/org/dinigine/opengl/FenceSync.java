@@ -0,0 +1,28 @@
+package org.dinigine.opengl;
+
+/**
+ * The fence primitives {@link BufferRing} needs to know when the GPU is done
+ * reading a region. {@link #GL} talks to the current context, anything else
+ * (such as a recording fake) can stand in for it.
+ */
+public interface FenceSync {
+
+	FenceSync GL = new GLFenceSync();
+
+	/**
+	 * @return a fence that signals once every command issued so far completes
+	 */
+	long insert();
+
+	/**
+	 * @param fence
+	 *            - a fence returned by {@link #insert()}
+	 * @param timeout
+	 *            - how long to block in nanoseconds, 0 to only poll
+	 * @return true if the fence has signaled
+	 */
+	boolean await(long fence, long timeout);
+
+	void delete(long fence);
+
+}
@@ -0,0 +1,129 @@
+package org.dinigine.opengl;
+
+import java.nio.IntBuffer;
+
+import org.apache.lang.Validate;
+import org.dinigine.util.Buffers;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+
+/**
+ * An offscreen framebuffer drawing into textures, usually ones from a
+ * {@link RenderTargetPool}. Attachments can be swapped every frame, so one
+ * framebuffer per pass is enough however the pool assigns textures. Changing
+ * an attachment leaves the framebuffer bound.
+ */
+public class Framebuffer {
+
+	public static final int MAX_COLOR_ATTACHMENTS = 8;
+
+	private final int framebuffer;
+	private final int[] colors = new int[MAX_COLOR_ATTACHMENTS];
+	private final IntBuffer drawBuffers = Buffers.newIntBuffer(MAX_COLOR_ATTACHMENTS);
+	private boolean drawBuffersChanged = true;
+	private int width;
+	private int height;
+
+	public Framebuffer(int width, int height) {
+		this.framebuffer = VideoResources.createFrameBuffer();
+		setSize(width, height);
+	}
+
+	/**
+	 * Sets the viewport {@link #bind()} uses, which should match the
+	 * attachments.
+	 */
+	public Framebuffer setSize(int width, int height) {
+		Validate.isTrue(width > 0 && height > 0, "Framebuffer size must be positive");
+		this.width = width;
+		this.height = height;
+		return this;
+	}
+
+	/**
+	 * Attaches a texture to a color output, or detaches it with 0. Always
+	 * reattaches, since a deleted texture's id can come back as a new one.
+	 */
+	public Framebuffer setColor(int index, int texture) {
+		Validate.isTrue(index >= 0 && index < MAX_COLOR_ATTACHMENTS, "Bad color attachment: %s", index);
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+		GL30.glFramebufferTexture2D(GL30.GL_FRAMEBUFFER, GL30.GL_COLOR_ATTACHMENT0 + index, GL11.GL_TEXTURE_2D, texture, 0);
+		if ((colors[index] == 0) != (texture == 0)) drawBuffersChanged = true;
+		colors[index] = texture;
+		return this;
+	}
+
+	/**
+	 * Attaches a depth texture, or detaches it with 0.
+	 */
+	public Framebuffer setDepth(int texture) {
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+		GL30.glFramebufferTexture2D(GL30.GL_FRAMEBUFFER, GL30.GL_DEPTH_ATTACHMENT, GL11.GL_TEXTURE_2D, texture, 0);
+		return this;
+	}
+
+	/**
+	 * Attaches a packed depth and stencil texture, or detaches it with 0.
+	 */
+	public Framebuffer setDepthStencil(int texture) {
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+		GL30.glFramebufferTexture2D(GL30.GL_FRAMEBUFFER, GL30.GL_DEPTH_STENCIL_ATTACHMENT, GL11.GL_TEXTURE_2D, texture, 0);
+		return this;
+	}
+
+	/**
+	 * Draws into this framebuffer from now on, to every color attachment.
+	 */
+	public void bind() {
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+		if (drawBuffersChanged) {
+			drawBuffers.clear();
+			for (int i = 0; i < MAX_COLOR_ATTACHMENTS; i++) {
+				if (colors[i] != 0) drawBuffers.put(GL30.GL_COLOR_ATTACHMENT0 + i);
+			}
+			drawBuffers.flip();
+			if (drawBuffers.hasRemaining()) GL20.glDrawBuffers(drawBuffers);
+			else GL11.glDrawBuffer(GL11.GL_NONE);
+			drawBuffersChanged = false;
+		}
+		GL11.glViewport(0, 0, width, height);
+	}
+
+	/**
+	 * Draws into the window again.
+	 */
+	public static void bindDefault() {
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, 0);
+		GL11.glViewport(0, 0, Display.getWidth(), Display.getHeight());
+	}
+
+	/**
+	 * @throws IllegalStateException
+	 *             if the attachments can't be drawn to together
+	 */
+	public void checkComplete() {
+		GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, framebuffer);
+		int status = GL30.glCheckFramebufferStatus(GL30.GL_FRAMEBUFFER);
+		if (status != GL30.GL_FRAMEBUFFER_COMPLETE) {
+			throw new IllegalStateException("Framebuffer incomplete: 0x" + Integer.toHexString(status));
+		}
+	}
+
+	public int getID() {
+		return framebuffer;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	public void dispose() {
+		VideoResources.deleteFrameBuffer(framebuffer);
+	}
+
+}
@@ -0,0 +1,36 @@
+package org.dinigine.opengl;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+
+final class GLDrawDevice implements DrawDevice {
+
+	@Override
+	public void useProgram(int program) {
+		GL20.glUseProgram(program);
+	}
+
+	@Override
+	public void bindTexture(int unit, int texture) {
+		GL13.glActiveTexture(GL13.GL_TEXTURE0 + unit);
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+	}
+
+	@Override
+	public void bindVertexArray(int vertexArray) {
+		GL30.glBindVertexArray(vertexArray);
+	}
+
+	@Override
+	public void drawElements(int primitive, int count, int first, int baseVertex) {
+		if (baseVertex == 0) {
+			GL11.glDrawElements(primitive, count, GL11.GL_UNSIGNED_INT, first << 2);
+		} else {
+			GL32.glDrawElementsBaseVertex(primitive, count, GL11.GL_UNSIGNED_INT, first << 2, baseVertex);
+		}
+	}
+
+}
@@ -0,0 +1,23 @@
+package org.dinigine.opengl;
+
+import org.lwjgl.opengl.GL32;
+
+final class GLFenceSync implements FenceSync {
+
+	@Override
+	public long insert() {
+		return GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+	}
+
+	@Override
+	public boolean await(long fence, long timeout) {
+		// a failed wait won't succeed by retrying, so treat it as signaled
+		return GL32.glClientWaitSync(fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, timeout) != GL32.GL_TIMEOUT_EXPIRED;
+	}
+
+	@Override
+	public void delete(long fence) {
+		GL32.glDeleteSync(fence);
+	}
+
+}
@@ -0,0 +1,53 @@
+package org.dinigine.opengl;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.opengl.GL14;
+import org.lwjgl.opengl.GL30;
+
+final class GLRenderTargetDevice implements RenderTargetDevice {
+
+	@Override
+	public int createTarget(int width, int height, int internalFormat) {
+		int format = GL11.GL_RGBA, type = GL11.GL_UNSIGNED_BYTE, filter = GL11.GL_LINEAR;
+		switch (internalFormat) {
+		case GL14.GL_DEPTH_COMPONENT16:
+		case GL14.GL_DEPTH_COMPONENT24:
+		case GL14.GL_DEPTH_COMPONENT32:
+		case GL30.GL_DEPTH_COMPONENT32F:
+			format = GL11.GL_DEPTH_COMPONENT;
+			type = GL11.GL_FLOAT;
+			filter = GL11.GL_NEAREST;
+			break;
+		case GL30.GL_DEPTH24_STENCIL8:
+			format = GL30.GL_DEPTH_STENCIL;
+			type = GL30.GL_UNSIGNED_INT_24_8;
+			filter = GL11.GL_NEAREST;
+			break;
+		case GL30.GL_DEPTH32F_STENCIL8:
+			format = GL30.GL_DEPTH_STENCIL;
+			type = GL30.GL_FLOAT_32_UNSIGNED_INT_24_8_REV;
+			filter = GL11.GL_NEAREST;
+			break;
+		}
+
+		int texture = VideoResources.createTexture();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, filter);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, filter);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, internalFormat, width, height, 0, format, type, (ByteBuffer) null);
+		VideoResources.setSize(VideoResources.TEXTURE, texture,
+				(long) width * height * RenderTargetPool.bytesPerPixel(internalFormat));
+		return texture;
+	}
+
+	@Override
+	public void deleteTarget(int texture) {
+		VideoResources.deleteTexture(texture);
+	}
+
+}
@@ -0,0 +1,59 @@
+package org.dinigine.opengl;
+
+import java.nio.ByteBuffer;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.system.MemoryUtil;
+
+final class GLTextureDevice implements TextureDevice {
+
+	private int pbo;
+	private long pboHandle;
+
+	@Override
+	public int createTexture(int width, int height) {
+		int texture = VideoResources.createTexture();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR_MIPMAP_LINEAR);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, width, height, 0,
+				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, (ByteBuffer) null);
+		VideoResources.setSize(VideoResources.TEXTURE, texture, ((long) width * height << 2) * 4 / 3);
+		return texture;
+	}
+
+	@Override
+	public void uploadRows(int texture, int width, int y, int rows, ByteBuffer pixels) {
+		int size = (width * rows) << 2;
+		// VideoResources.dispose() deletes the buffer along with everything else
+		if (pbo == 0 || !VideoResources.isValid(pboHandle)) {
+			pbo = VideoResources.createVertexBuffer();
+			pboHandle = VideoResources.getHandle(VideoResources.VERTEX_BUFFER, pbo);
+		}
+
+		// orphan the pixel buffer each time so the copy never waits on the last upload
+		GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, pbo);
+		GL15.glBufferData(GL21.GL_PIXEL_UNPACK_BUFFER, size, GL15.GL_STREAM_DRAW);
+		VideoResources.setSize(VideoResources.VERTEX_BUFFER, pbo, size);
+		ByteBuffer mapped = GL30.glMapBufferRange(GL21.GL_PIXEL_UNPACK_BUFFER, 0, size,
+				GL30.GL_MAP_WRITE_BIT | GL30.GL_MAP_INVALIDATE_BUFFER_BIT);
+		MemoryUtil.memCopy(MemoryUtil.memAddress(pixels), MemoryUtil.memAddress(mapped), size);
+		GL15.glUnmapBuffer(GL21.GL_PIXEL_UNPACK_BUFFER);
+
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+		GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, y, width, rows, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, 0);
+		GL15.glBindBuffer(GL21.GL_PIXEL_UNPACK_BUFFER, 0);
+	}
+
+	@Override
+	public void finish(int texture) {
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+		GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+	}
+
+}
@@ -0,0 +1,105 @@
+package org.dinigine.opengl;
+
+import java.nio.FloatBuffer;
+
+import org.apache.lang.Validate;
+import org.dinigine.math.Mat4;
+import org.dinigine.util.Buffers;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL33;
+
+/**
+ * Per-instance transforms for {@link Mesh#drawInstanced(int, int)}. Each
+ * instance is one column major {@link Mat4}, read by the shader as a
+ * {@code mat4} attribute spanning four consecutive locations.
+ */
+public class InstanceBuffer {
+
+	/** Floats per instance */
+	public static final int INSTANCE_SIZE = 16;
+
+	private final FloatBuffer data;
+	private final int maxInstances;
+	private int vbo;
+
+	public InstanceBuffer(int maxInstances) {
+		Validate.isTrue(maxInstances > 0, "Need room for at least one instance");
+		this.maxInstances = maxInstances;
+		this.data = Buffers.newFloatBuffer(maxInstances * INSTANCE_SIZE);
+	}
+
+	public InstanceBuffer clear() {
+		data.clear();
+		return this;
+	}
+
+	public InstanceBuffer add(Mat4 transform) {
+		Validate.validState(data.remaining() >= INSTANCE_SIZE, "Instance buffer is full");
+		transform.store(data);
+		return this;
+	}
+
+	public int size() {
+		return data.position() / INSTANCE_SIZE;
+	}
+
+	public int getMaxInstances() {
+		return maxInstances;
+	}
+
+	/**
+	 * @return the packed instances, from 0 up to the position
+	 */
+	public FloatBuffer getData() {
+		return data;
+	}
+
+	/**
+	 * Adds the instance attribute to a mesh's vertex array.
+	 *
+	 * @param location
+	 *            - the first of the four attribute locations the matrix takes
+	 */
+	public InstanceBuffer attach(Mesh mesh, int location) {
+		if (vbo == 0) {
+			vbo = VideoResources.createVertexBuffer();
+			GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+			GL15.glBufferData(GL15.GL_ARRAY_BUFFER, (long) data.capacity() << 2, GL15.GL_STREAM_DRAW);
+			VideoResources.setSize(VideoResources.VERTEX_BUFFER, vbo, (long) data.capacity() << 2);
+		}
+
+		GL30.glBindVertexArray(mesh.getVertexArrayID());
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		for (int i = 0; i < 4; i++) {
+			GL20.glEnableVertexAttribArray(location + i);
+			GL20.glVertexAttribPointer(location + i, 4, GL11.GL_FLOAT, false, INSTANCE_SIZE << 2, i << 4);
+			GL33.glVertexAttribDivisor(location + i, 1);
+		}
+		GL30.glBindVertexArray(0);
+		return this;
+	}
+
+	/**
+	 * Sends the instances added since the last {@link #clear()} to the GPU.
+	 */
+	public void upload() {
+		Validate.validState(vbo != 0, "Instance buffer not attached to a mesh");
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		// orphan the old storage rather than wait for draws still reading it
+		GL15.glBufferData(GL15.GL_ARRAY_BUFFER, (long) data.capacity() << 2, GL15.GL_STREAM_DRAW);
+		data.flip();
+		GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, data);
+		data.position(data.limit()).limit(data.capacity());
+	}
+
+	public void dispose() {
+		if (vbo != 0) {
+			VideoResources.deleteVertexBuffer(vbo);
+			vbo = 0;
+		}
+	}
+
+}
@@ -1,36 +1,90 @@
-package org.dinigine.opengl;
-
-import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL30;
-
-public class Mesh {
-
-	private final int vertexArray;
-	private final int elementCount;
-
-	public Mesh(int vertexArrayID, int elementCount) {
-		this.vertexArray = vertexArrayID;
-		this.elementCount = elementCount;
-	}
-
-	public int getVertexArrayID() {
-		return vertexArray;
-	}
-
-	public int getElementCount() {
-		return elementCount;
-	}
-
-	public void bind() {
-		GL30.glBindVertexArray(vertexArray);
-	}
-
-	public void draw() {
-		draw(GL11.GL_TRIANGLES);
-	}
-
-	public void draw(int primitive) {
-		GL11.glDrawElements(primitive, elementCount, GL11.GL_UNSIGNED_INT, 0);
-	}
-
-}
+package org.dinigine.opengl;
+
+import org.apache.lang.Validate;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+import org.lwjgl.opengl.GL32;
+
+public class Mesh {
+
+	private final int vertexArray;
+	private final int elementCount;
+	private final int firstElement;
+	private final int baseVertex;
+
+	public Mesh(int vertexArrayID, int elementCount) {
+		this(vertexArrayID, elementCount, 0, 0);
+	}
+
+	/**
+	 * A mesh occupying part of a vertex array's buffers, so several meshes can
+	 * share one vertex array (see {@link DrawCommandBuffer}).
+	 */
+	public Mesh(int vertexArrayID, int elementCount, int firstElement, int baseVertex) {
+		this.vertexArray = vertexArrayID;
+		this.elementCount = elementCount;
+		this.firstElement = firstElement;
+		this.baseVertex = baseVertex;
+	}
+
+	/**
+	 * @return a mesh drawing the given range of this mesh's vertex array
+	 */
+	public Mesh slice(int firstElement, int elementCount, int baseVertex) {
+		Validate.isTrue(firstElement >= 0 && elementCount >= 0, "Invalid element range");
+		return new Mesh(vertexArray, elementCount, firstElement, baseVertex);
+	}
+
+	public int getVertexArrayID() {
+		return vertexArray;
+	}
+
+	public int getElementCount() {
+		return elementCount;
+	}
+
+	public int getFirstElement() {
+		return firstElement;
+	}
+
+	public int getBaseVertex() {
+		return baseVertex;
+	}
+
+	public void bind() {
+		GL30.glBindVertexArray(vertexArray);
+	}
+
+	public void draw() {
+		draw(GL11.GL_TRIANGLES);
+	}
+
+	public void draw(int primitive) {
+		if (baseVertex == 0) {
+			GL11.glDrawElements(primitive, elementCount, GL11.GL_UNSIGNED_INT, firstElement << 2);
+		} else {
+			GL32.glDrawElementsBaseVertex(primitive, elementCount, GL11.GL_UNSIGNED_INT,
+					firstElement << 2, baseVertex);
+		}
+	}
+
+	public void drawInstanced(int instances) {
+		drawInstanced(GL11.GL_TRIANGLES, instances);
+	}
+
+	/**
+	 * Draws the mesh {@code instances} times in one call. Per-instance data
+	 * usually comes from an {@link InstanceBuffer} attached to the mesh.
+	 */
+	public void drawInstanced(int primitive, int instances) {
+		if (baseVertex == 0) {
+			GL31.glDrawElementsInstanced(primitive, elementCount, GL11.GL_UNSIGNED_INT,
+					firstElement << 2, instances);
+		} else {
+			GL32.glDrawElementsInstancedBaseVertex(primitive, elementCount, GL11.GL_UNSIGNED_INT,
+					firstElement << 2, instances, baseVertex);
+		}
+	}
+
+}
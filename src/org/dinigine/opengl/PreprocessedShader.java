@@ -0,0 +1,70 @@
+package org.dinigine.opengl;
+
+import java.util.Arrays;
+
+/**
+ * The expanded per-stage sources of one shader variant, ready for
+ * {@link ShaderCompiler#createProgram(PreprocessedShader)}. Two variants whose
+ * expanded sources are identical are equal, which is what
+ * {@link ShaderPreprocessor} deduplicates on.
+ */
+public final class PreprocessedShader {
+
+	private final String name;
+	private final int[] types;
+	private final String[] stageNames;
+	private final String[] sources;
+	private final int hash;
+
+	PreprocessedShader(String name, int[] types, String[] stageNames, String[] sources) {
+		this.name = name;
+		this.types = types;
+		this.stageNames = stageNames;
+		this.sources = sources;
+		this.hash = 31 * Arrays.hashCode(types) + Arrays.hashCode(sources);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public int getStageCount() {
+		return types.length;
+	}
+
+	/**
+	 * @return the GL shader type of a stage
+	 */
+	public int getStageType(int stage) {
+		return types[stage];
+	}
+
+	public String getStageName(int stage) {
+		return stageNames[stage];
+	}
+
+	public String getStageSource(int stage) {
+		return sources[stage];
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (o == this) return true;
+		if (o instanceof PreprocessedShader) {
+			PreprocessedShader p = (PreprocessedShader) o;
+			return hash == p.hash && Arrays.equals(types, p.types) && Arrays.equals(sources, p.sources);
+		}
+		return false;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+}
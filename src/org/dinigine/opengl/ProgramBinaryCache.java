@@ -0,0 +1,226 @@
+package org.dinigine.opengl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.CRC32;
+
+import org.apache.lang.Validate;
+import org.dinigine.util.Log;
+
+/**
+ * Linked program binaries kept on disk, so {@link ShaderCompiler} can skip
+ * the driver's compiler on later launches. Entries are keyed by a hash of the
+ * program's source, the shader version and the driver, and each lives in its
+ * own file:
+ *
+ * <pre>
+ * int  magic
+ * int  file version
+ * int  binary format
+ * long nanoseconds the original compile took
+ * int  binary length
+ * long CRC32 of the binary
+ * byte binary[length]
+ * </pre>
+ *
+ * Entries that fail to read or validate are deleted and count as misses.
+ * Nothing here touches GL.
+ */
+public class ProgramBinaryCache {
+
+	private static final int MAGIC = 0x4A445042; // JDPB
+	private static final int FILE_VERSION = 1;
+	private static final String EXTENSION = ".bin";
+
+	public static final class Entry {
+		public final int format;
+		public final byte[] binary;
+		public final long compileTime;
+
+		public Entry(int format, byte[] binary, long compileTime) {
+			this.format = format;
+			this.binary = binary;
+			this.compileTime = compileTime;
+		}
+	}
+
+	private final File directory;
+
+	private int hits;
+	private int misses;
+	private int rejected;
+	private long timeSaved;
+
+	public ProgramBinaryCache(File directory) {
+		Validate.notNull(directory, "directory");
+		this.directory = directory;
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return a key identifying {@code source} compiled by {@code driver}
+	 */
+	public static String key(CharSequence source, String version, String driver) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digest.update(version.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(driver.getBytes(StandardCharsets.UTF_8));
+		digest.update((byte) 0);
+		digest.update(source.toString().getBytes(StandardCharsets.UTF_8));
+
+		byte[] hash = digest.digest();
+		char[] hex = new char[hash.length << 1];
+		for (int i = 0; i < hash.length; i++) {
+			hex[i << 1] = Character.forDigit((hash[i] >> 4) & 15, 16);
+			hex[(i << 1) + 1] = Character.forDigit(hash[i] & 15, 16);
+		}
+		return new String(hex);
+	}
+
+	public File getFile(String key) {
+		return new File(directory, key + EXTENSION);
+	}
+
+	/**
+	 * @return the entry, or null if there is no valid one
+	 */
+	public Entry load(String key) {
+		File file = getFile(key);
+		if (!file.isFile()) {
+			misses++;
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+			if (in.readInt() != MAGIC || in.readInt() != FILE_VERSION) {
+				throw new IOException("Not a program binary");
+			}
+			int format = in.readInt();
+			long compileTime = in.readLong();
+			int length = in.readInt();
+			long checksum = in.readLong();
+			if (length < 0 || length > file.length()) {
+				throw new IOException("Bad binary length: " + length);
+			}
+
+			byte[] binary = new byte[length];
+			in.readFully(binary);
+			CRC32 crc = new CRC32();
+			crc.update(binary, 0, length);
+			if (crc.getValue() != checksum) {
+				throw new IOException("Checksum mismatch");
+			}
+			return new Entry(format, binary, compileTime);
+		} catch (IOException e) {
+			Log.warn("[Shader] Discarding cached program " + key, e);
+			rejected++;
+			misses++;
+			file.delete();
+			return null;
+		}
+	}
+
+	public void store(String key, int format, byte[] binary, long compileTime) {
+		CRC32 crc = new CRC32();
+		crc.update(binary, 0, binary.length);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(binary.length + 32);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(MAGIC);
+			out.writeInt(FILE_VERSION);
+			out.writeInt(format);
+			out.writeLong(compileTime);
+			out.writeInt(binary.length);
+			out.writeLong(crc.getValue());
+			out.write(binary);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+
+		// write beside the entry and move it in place so readers never see half a file
+		File file = getFile(key);
+		File tmp = new File(directory, key + ".tmp");
+		try {
+			directory.mkdirs();
+			try (FileOutputStream out = new FileOutputStream(tmp)) {
+				bytes.writeTo(out);
+			}
+			try {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			} catch (IOException e) {
+				Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		} catch (IOException e) {
+			Log.warn("[Shader] Couldn't cache program " + key, e);
+			tmp.delete();
+		}
+	}
+
+	/**
+	 * Drops an entry the driver refused, such as after a driver update that
+	 * kept the same version string.
+	 */
+	public void invalidate(String key) {
+		rejected++;
+		misses++;
+		getFile(key).delete();
+	}
+
+	/**
+	 * Records a successful load that took {@code loadTime} nanoseconds.
+	 */
+	public void recordHit(Entry entry, long loadTime) {
+		hits++;
+		timeSaved += Math.max(0, entry.compileTime - loadTime);
+	}
+
+	public void clear() {
+		File[] files = directory.listFiles();
+		if (files == null) return;
+		for (File f : files) {
+			if (f.getName().endsWith(EXTENSION)) f.delete();
+		}
+	}
+
+	public int getHits() {
+		return hits;
+	}
+
+	public int getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return entries discarded for being corrupt or refused by the driver
+	 */
+	public int getRejected() {
+		return rejected;
+	}
+
+	/**
+	 * @return nanoseconds saved by loading binaries instead of compiling
+	 */
+	public long getTimeSaved() {
+		return timeSaved;
+	}
+
+}
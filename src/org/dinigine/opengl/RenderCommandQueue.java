@@ -0,0 +1,373 @@
+package org.dinigine.opengl;
+
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.lang.Validate;
+import org.dinigine.util.Log;
+
+/**
+ * Lets any thread queue GL work for the render thread. Each kind of work is a
+ * {@link Command} registered once for an opcode, and queuing it only copies
+ * the opcode and its arguments into preallocated memory, so recording never
+ * allocates and never takes a lock.
+ * <p>
+ * Commands are recorded into one of two frames while the render thread runs
+ * the other with {@link #execute()}, which also swaps them. Commands from one
+ * thread run in the order it recorded them; commands from different threads
+ * are interleaved in the order they reserved their space.
+ * <p>
+ * A command that is begun must be ended or {@link Recorder#abort() aborted},
+ * since the render thread waits for it. If writing its arguments can throw,
+ * abort in a finally; a command that was ended is not touched.
+ *
+ * <pre>
+ * final int BIND = queue.register(new RenderCommandQueue.Command() {
+ * 	public void execute(RenderCommandQueue.Reader args) {
+ * 		GL11.glBindTexture(GL11.GL_TEXTURE_2D, args.getInt());
+ * 	}
+ * });
+ * queue.record(BIND, texture); // from any thread
+ * </pre>
+ */
+public class RenderCommandQueue {
+
+	public interface Command {
+
+		/**
+		 * Runs on the render thread. {@code args} is only valid until this
+		 * returns.
+		 */
+		void execute(Reader args);
+
+	}
+
+	private static final int MAX_OPCODE = (1 << 14) - 1;
+	private static final int MAX_OBJECTS = 3;
+	private static final int MAX_WORDS = 0x7FFF;
+	/** Header of a command that was given up, so execute steps over it */
+	private static final int SKIP = 0x8000;
+	/** Set on a frame's reservation once it stops taking commands */
+	private static final long CLOSED = Long.MIN_VALUE;
+
+	/**
+	 * A frame of commands, each an int header then its arguments. A header is
+	 * the opcode, object count and argument count, and stays 0 until the
+	 * command is fully written, so every word is zeroed again once run. Only
+	 * the frame being recorded is open, the other stays {@link #CLOSED} until
+	 * it is swapped in, so a thread that read the old frame can't add to it.
+	 */
+	private static final class Frame {
+
+		final AtomicIntegerArray words;
+		final AtomicReferenceArray<Object> objects;
+		/** Words reserved in the low 32 bits, objects above */
+		final AtomicLong reserved = new AtomicLong();
+
+		Frame(int words, int objects) {
+			this.words = new AtomicIntegerArray(words);
+			this.objects = new AtomicReferenceArray<>(objects);
+		}
+
+	}
+
+	private final Frame[] frames;
+	private volatile Frame current;
+	private volatile Thread renderThread;
+	private volatile Command[] commands = new Command[1];
+
+	private final Reader reader = new Reader();
+	private final ThreadLocal<Recorder> recorders = new ThreadLocal<Recorder>() {
+		@Override
+		protected Recorder initialValue() {
+			return new Recorder();
+		}
+	};
+
+	/**
+	 * @param words
+	 *            - ints each frame can hold, one per command plus its
+	 *            arguments
+	 * @param objects
+	 *            - object arguments each frame can hold
+	 */
+	public RenderCommandQueue(int words, int objects) {
+		Validate.isTrue(words > 0, "Need room for at least one command");
+		Validate.isTrue(objects >= 0, "Object capacity can't be negative");
+		frames = new Frame[] { new Frame(words, objects), new Frame(words, objects) };
+		frames[1].reserved.set(CLOSED);
+		current = frames[0];
+	}
+
+	/**
+	 * @return the command's opcode
+	 */
+	public synchronized int register(Command command) {
+		Validate.notNull(command, "Command can't be null");
+		Validate.validState(commands.length <= MAX_OPCODE, "Too many commands");
+		Command[] registered = Arrays.copyOf(commands, commands.length + 1);
+		registered[commands.length] = command;
+		commands = registered;
+		return commands.length - 1;
+	}
+
+	/**
+	 * Reserves room for a command in the frame being recorded. Write exactly
+	 * {@code words} ints and floats and {@code objects} objects to the
+	 * recorder, then {@link Recorder#end() end} or {@link Recorder#abort()
+	 * abort} it; until then the render thread waits for it.
+	 * <p>
+	 * If the frame is full, other threads wait for the render thread to swap
+	 * frames, while the render thread itself gets an exception.
+	 *
+	 * @return this thread's recorder
+	 */
+	public Recorder begin(int opcode, int words, int objects) {
+		if (opcode <= 0 || opcode >= commands.length) throw new IllegalArgumentException("Unknown opcode: " + opcode);
+		if (words < 0 || words > MAX_WORDS) throw new IllegalArgumentException("Bad argument count: " + words);
+		if (objects < 0 || objects > MAX_OBJECTS) throw new IllegalArgumentException("Bad object count: " + objects);
+		Frame frame = current;
+		if (words + 1 > frame.words.length() || objects > frame.objects.length()) {
+			throw new IllegalArgumentException("Command larger than a frame");
+		}
+
+		long add = words + 1 | (long) objects << 32;
+		while (true) {
+			frame = current;
+			long state = frame.reserved.get();
+			if (state < 0) continue; // swapped, so current has moved on
+
+			int word = (int) state, object = (int) (state >>> 32);
+			if (word + words + 1 > frame.words.length() || object + objects > frame.objects.length()) {
+				if (Thread.currentThread() == renderThread) throw new IllegalStateException("Render queue full");
+				Thread.yield();
+				continue;
+			}
+			if (frame.reserved.compareAndSet(state, state + add)) {
+				Recorder recorder = recorders.get();
+				recorder.start(frame, word, words, object, objects, opcode << 18 | objects << 16 | words);
+				return recorder;
+			}
+		}
+	}
+
+	public void record(int opcode) {
+		begin(opcode, 0, 0).end();
+	}
+
+	public void record(int opcode, int a) {
+		begin(opcode, 1, 0).putInt(a).end();
+	}
+
+	public void record(int opcode, int a, int b) {
+		begin(opcode, 2, 0).putInt(a).putInt(b).end();
+	}
+
+	public void record(int opcode, int a, int b, int c) {
+		begin(opcode, 3, 0).putInt(a).putInt(b).putInt(c).end();
+	}
+
+	public void record(int opcode, Object object) {
+		begin(opcode, 0, 1).putObject(object).end();
+	}
+
+	/**
+	 * Swaps frames, then runs every command recorded in the old one, waiting
+	 * for any still being written. Must only be called from the render
+	 * thread.
+	 *
+	 * @return the number of commands run
+	 */
+	public int execute() {
+		renderThread = Thread.currentThread();
+		Frame frame = current, next = frame == frames[0] ? frames[1] : frames[0];
+		next.reserved.set(0);
+		current = next;
+
+		long state;
+		do {
+			state = frame.reserved.get();
+		} while (!frame.reserved.compareAndSet(state, state | CLOSED));
+
+		int end = (int) state, count = 0;
+		Command[] commands = this.commands;
+		for (int word = 0, object = 0; word < end;) {
+			int header;
+			while ((header = frame.words.get(word)) == 0) {
+				Thread.yield();
+			}
+			int opcode = header >>> 18, objects = header >>> 16 & MAX_OBJECTS, words = header & MAX_WORDS;
+
+			if (opcode != 0) {
+				reader.start(frame, word + 1, words, object, objects);
+				try {
+					commands[opcode].execute(reader);
+				} catch (RuntimeException e) {
+					Log.error("Render command " + opcode + " failed", e);
+				}
+				count++;
+			}
+
+			// any word may be a header next time round, so all go back to 0
+			for (int i = 0; i <= words; i++) {
+				frame.words.lazySet(word + i, 0);
+			}
+			for (int i = 0; i < objects; i++) {
+				frame.objects.lazySet(object + i, null);
+			}
+			word += words + 1;
+			object += objects;
+		}
+		return count;
+	}
+
+	/**
+	 * @return ints reserved in the frame being recorded
+	 */
+	public int getRecordedWords() {
+		return (int) current.reserved.get();
+	}
+
+	/**
+	 * Writes one command's arguments. Each thread has its own, reused for
+	 * every command it records.
+	 */
+	public static final class Recorder {
+
+		private Frame frame;
+		private int header, skip, headerWord;
+		private int word, endWord, object, endObject;
+
+		void start(Frame frame, int word, int words, int object, int objects, int header) {
+			this.frame = frame;
+			this.header = header;
+			this.skip = header & (MAX_OBJECTS << 16 | MAX_WORDS) | SKIP;
+			this.headerWord = word;
+			this.word = word + 1;
+			this.endWord = this.word + words;
+			this.object = object;
+			this.endObject = object + objects;
+		}
+
+		public Recorder putInt(int value) {
+			if (word == endWord) throw new IllegalStateException("Command arguments overflow");
+			frame.words.lazySet(word++, value);
+			return this;
+		}
+
+		public Recorder putFloat(float value) {
+			return putInt(Float.floatToRawIntBits(value));
+		}
+
+		public Recorder putFloats(float[] values, int offset, int count) {
+			if (endWord - word < count) throw new IllegalStateException("Command arguments overflow");
+			for (int i = 0; i < count; i++) {
+				frame.words.lazySet(word++, Float.floatToRawIntBits(values[offset + i]));
+			}
+			return this;
+		}
+
+		/**
+		 * Copies the buffer's remaining floats without moving its position.
+		 */
+		public Recorder putFloats(FloatBuffer values) {
+			int count = values.remaining(), position = values.position();
+			if (endWord - word < count) throw new IllegalStateException("Command arguments overflow");
+			for (int i = 0; i < count; i++) {
+				frame.words.lazySet(word++, Float.floatToRawIntBits(values.get(position + i)));
+			}
+			return this;
+		}
+
+		public Recorder putObject(Object value) {
+			if (object == endObject) throw new IllegalStateException("Command objects overflow");
+			frame.objects.lazySet(object++, value);
+			return this;
+		}
+
+		/**
+		 * Publishes the command to the render thread.
+		 */
+		public void end() {
+			Validate.validState(frame != null, "No command being recorded");
+			if (word != endWord || object != endObject) {
+				abort();
+				throw new IllegalStateException("Command arguments underflow");
+			}
+			frame.words.lazySet(headerWord, header);
+			frame = null;
+		}
+
+		/**
+		 * Gives up the command being recorded, if any, so the render thread
+		 * skips its space instead of waiting for it.
+		 */
+		public void abort() {
+			if (frame == null) return;
+			frame.words.lazySet(headerWord, skip);
+			frame = null;
+		}
+
+	}
+
+	/**
+	 * Reads the arguments of the command being run, in the order they were
+	 * written.
+	 */
+	public static final class Reader {
+
+		private Frame frame;
+		private int word, endWord, object, endObject;
+
+		void start(Frame frame, int word, int words, int object, int objects) {
+			this.frame = frame;
+			this.word = word;
+			this.endWord = word + words;
+			this.object = object;
+			this.endObject = object + objects;
+		}
+
+		public int getInt() {
+			if (word == endWord) throw new IllegalStateException("No arguments left");
+			return frame.words.get(word++);
+		}
+
+		public float getFloat() {
+			return Float.intBitsToFloat(getInt());
+		}
+
+		public void getFloats(float[] dest, int offset, int count) {
+			if (endWord - word < count) throw new IllegalStateException("No arguments left");
+			for (int i = 0; i < count; i++) {
+				dest[offset + i] = Float.intBitsToFloat(frame.words.get(word++));
+			}
+		}
+
+		/**
+		 * Copies floats into the buffer from its position, moving it forward.
+		 */
+		public void getFloats(FloatBuffer dest, int count) {
+			if (endWord - word < count) throw new IllegalStateException("No arguments left");
+			for (int i = 0; i < count; i++) {
+				dest.put(Float.intBitsToFloat(frame.words.get(word++)));
+			}
+		}
+
+		public Object getObject() {
+			if (object == endObject) throw new IllegalStateException("No objects left");
+			return frame.objects.get(object++);
+		}
+
+		/**
+		 * @return ints and floats not yet read
+		 */
+		public int remaining() {
+			return endWord - word;
+		}
+
+	}
+
+}
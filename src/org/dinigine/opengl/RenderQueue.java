@@ -0,0 +1,192 @@
+package org.dinigine.opengl;
+
+import org.apache.lang.Validate;
+import org.dinigine.util.RadixSort;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Collects a frame's draws and submits them sorted by state, so each shader,
+ * texture and vertex array is bound as few times as possible.
+ * <p>
+ * Every draw gets a 64-bit sort key, from most to least significant: 16 bits
+ * of shader, texture, vertex array and depth. Depths sort front to back and
+ * are expected to be non-negative (view distance for example). Keys only
+ * decide the order, the full ids are kept aside for binding.
+ */
+public class RenderQueue {
+
+	private static final int DEFAULT_CAPACITY = 256;
+
+	private final DrawDevice device;
+
+	private long[] keys;
+	private int[] order;
+	private long[] keyScratch;
+	private int[] orderScratch;
+
+	private int[] programs;
+	private int[] textures;
+	private int[] vertexArrays;
+	private int[] primitives;
+	private int[] counts;
+	private int[] firsts;
+	private int[] baseVertices;
+	private int size;
+
+	private int draws;
+	private int programBinds;
+	private int textureBinds;
+	private int vertexArrayBinds;
+	private int skippedBinds;
+
+	public RenderQueue() {
+		this(DrawDevice.GL, DEFAULT_CAPACITY);
+	}
+
+	public RenderQueue(DrawDevice device, int capacity) {
+		Validate.notNull(device, "device");
+		Validate.isTrue(capacity > 0, "Capacity must be positive");
+		this.device = device;
+		allocate(capacity);
+	}
+
+	public static long sortKey(int program, int texture, int vertexArray, float depth) {
+		long d = (Float.floatToRawIntBits(Math.max(depth, 0)) >>> 15) & 0xFFFF;
+		return ((long) (program & 0xFFFF) << 48)
+				| ((long) (texture & 0xFFFF) << 32)
+				| ((long) (vertexArray & 0xFFFF) << 16)
+				| d;
+	}
+
+	public void submit(Shader shader, Texture texture, Mesh mesh, float depth) {
+		submit(shader, texture, mesh, GL11.GL_TRIANGLES, depth);
+	}
+
+	public void submit(Shader shader, Texture texture, Mesh mesh, int primitive, float depth) {
+		submit(shader.getID(), texture == null ? 0 : texture.getID(), mesh.getVertexArrayID(), primitive,
+				mesh.getElementCount(), mesh.getFirstElement(), mesh.getBaseVertex(), depth);
+	}
+
+	public void submit(int program, int texture, int vertexArray, int primitive, int count, float depth) {
+		submit(program, texture, vertexArray, primitive, count, 0, 0, depth);
+	}
+
+	public void submit(int program, int texture, int vertexArray, int primitive,
+			int count, int first, int baseVertex, float depth) {
+		if (size == keys.length) {
+			grow();
+		}
+		int i = size++;
+		keys[i] = sortKey(program, texture, vertexArray, depth);
+		order[i] = i;
+		programs[i] = program;
+		textures[i] = texture;
+		vertexArrays[i] = vertexArray;
+		primitives[i] = primitive;
+		counts[i] = count;
+		firsts[i] = first;
+		baseVertices[i] = baseVertex;
+	}
+
+	/**
+	 * Sorts and issues everything submitted since the last flush, then empties
+	 * the queue. Nothing bound beforehand is assumed to still be bound.
+	 */
+	public void flush() {
+		draws = programBinds = textureBinds = vertexArrayBinds = skippedBinds = 0;
+
+		RadixSort.sort(keys, order, size, keyScratch, orderScratch);
+
+		int program = -1, texture = -1, vertexArray = -1;
+		for (int n = 0; n < size; n++) {
+			int i = order[n];
+
+			if (programs[i] != program) {
+				device.useProgram(program = programs[i]);
+				programBinds++;
+			} else skippedBinds++;
+
+			if (textures[i] != texture) {
+				device.bindTexture(0, texture = textures[i]);
+				textureBinds++;
+			} else skippedBinds++;
+
+			if (vertexArrays[i] != vertexArray) {
+				device.bindVertexArray(vertexArray = vertexArrays[i]);
+				vertexArrayBinds++;
+			} else skippedBinds++;
+
+			device.drawElements(primitives[i], counts[i], firsts[i], baseVertices[i]);
+			draws++;
+		}
+
+		size = 0;
+	}
+
+	public void clear() {
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/** @return draws issued by the last flush */
+	public int getDrawCount() {
+		return draws;
+	}
+
+	/** @return state changes issued by the last flush */
+	public int getStateChanges() {
+		return programBinds + textureBinds + vertexArrayBinds;
+	}
+
+	/** @return state changes the last flush avoided because it was already bound */
+	public int getSkippedStateChanges() {
+		return skippedBinds;
+	}
+
+	public int getProgramBinds() {
+		return programBinds;
+	}
+
+	public int getTextureBinds() {
+		return textureBinds;
+	}
+
+	public int getVertexArrayBinds() {
+		return vertexArrayBinds;
+	}
+
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		order = new int[capacity];
+		keyScratch = new long[capacity];
+		orderScratch = new int[capacity];
+		programs = new int[capacity];
+		textures = new int[capacity];
+		vertexArrays = new int[capacity];
+		primitives = new int[capacity];
+		counts = new int[capacity];
+		firsts = new int[capacity];
+		baseVertices = new int[capacity];
+	}
+
+	private void grow() {
+		int capacity = keys.length << 1;
+		long[] k = keys;
+		int[] o = order, p = programs, t = textures, v = vertexArrays, m = primitives, c = counts,
+				f = firsts, b = baseVertices;
+		allocate(capacity);
+		System.arraycopy(k, 0, keys, 0, size);
+		System.arraycopy(o, 0, order, 0, size);
+		System.arraycopy(p, 0, programs, 0, size);
+		System.arraycopy(t, 0, textures, 0, size);
+		System.arraycopy(v, 0, vertexArrays, 0, size);
+		System.arraycopy(m, 0, primitives, 0, size);
+		System.arraycopy(c, 0, counts, 0, size);
+		System.arraycopy(f, 0, firsts, 0, size);
+		System.arraycopy(b, 0, baseVertices, 0, size);
+	}
+
+}
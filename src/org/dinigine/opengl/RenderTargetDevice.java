@@ -0,0 +1,20 @@
+package org.dinigine.opengl;
+
+/**
+ * Creates and deletes the textures a {@link RenderTargetPool} hands out.
+ * {@link #GL} makes real textures, anything else (such as a counting fake)
+ * can stand in for it.
+ */
+public interface RenderTargetDevice {
+
+	RenderTargetDevice GL = new GLRenderTargetDevice();
+
+	/**
+	 * @return a new texture with storage for one level, its contents
+	 *         undefined
+	 */
+	int createTarget(int width, int height, int internalFormat);
+
+	void deleteTarget(int texture);
+
+}
@@ -0,0 +1,353 @@
+package org.dinigine.opengl;
+
+import java.util.Arrays;
+
+import org.apache.lang.Validate;
+import org.dinigine.math.Maths;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL14;
+import org.lwjgl.opengl.GL30;
+
+/**
+ * Hands out the offscreen textures a frame's passes render into, sharing one
+ * texture between targets whose passes don't overlap.
+ * <p>
+ * Each frame, every target is requested with its size, format and the first
+ * and last pass that use it. {@link #plan()} then walks the requests in pass
+ * order and gives each a texture of the same size and format that nothing
+ * else needs by then, only creating one when none is free. Textures are kept
+ * from frame to frame and deleted once unused for a few frames, so after a
+ * resize the old sizes go away on their own.
+ *
+ * <pre>
+ * pool.begin();
+ * int scene = pool.request(w, h, GL30.GL_RGBA16F, 0, 1);
+ * int bright = pool.request(w / 2, h / 2, GL30.GL_RGBA16F, 1, 2);
+ * int blur = pool.request(w / 2, h / 2, GL30.GL_RGBA16F, 2, 3);
+ * int result = pool.request(w, h, GL30.GL_RGBA16F, 3, 4); // gets scene's texture
+ * pool.plan();
+ * framebuffer.setColor(0, pool.getTexture(scene));
+ * </pre>
+ *
+ * Planning never calls GL itself, only the {@link RenderTargetDevice}.
+ */
+public class RenderTargetPool {
+
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private final RenderTargetDevice device;
+	private int maxIdleFrames = 2;
+	private int frame;
+	private boolean planned;
+
+	/** Requests this frame */
+	private int[] widths, heights, formats, firsts, lasts, assigned;
+	private long[] order;
+	private int requests;
+
+	/** Pooled textures */
+	private int[] textures, textureWidths, textureHeights, textureFormats, lastFrames, busyUntil;
+	private int[] remap;
+	private int count;
+
+	private long requestedBytes, usedBytes, pooledBytes;
+	private int created, deleted;
+
+	public RenderTargetPool() {
+		this(RenderTargetDevice.GL);
+	}
+
+	public RenderTargetPool(RenderTargetDevice device) {
+		Validate.notNull(device, "device");
+		this.device = device;
+		widths = new int[DEFAULT_CAPACITY];
+		heights = new int[DEFAULT_CAPACITY];
+		formats = new int[DEFAULT_CAPACITY];
+		firsts = new int[DEFAULT_CAPACITY];
+		lasts = new int[DEFAULT_CAPACITY];
+		assigned = new int[DEFAULT_CAPACITY];
+		order = new long[DEFAULT_CAPACITY];
+		textures = new int[DEFAULT_CAPACITY];
+		textureWidths = new int[DEFAULT_CAPACITY];
+		textureHeights = new int[DEFAULT_CAPACITY];
+		textureFormats = new int[DEFAULT_CAPACITY];
+		lastFrames = new int[DEFAULT_CAPACITY];
+		busyUntil = new int[DEFAULT_CAPACITY];
+		remap = new int[DEFAULT_CAPACITY];
+	}
+
+	/**
+	 * @return roughly how many bytes a pixel of the format takes
+	 */
+	public static int bytesPerPixel(int internalFormat) {
+		switch (internalFormat) {
+		case GL30.GL_R8:
+			return 1;
+		case GL30.GL_RG8:
+		case GL30.GL_R16F:
+		case GL14.GL_DEPTH_COMPONENT16:
+			return 2;
+		case GL11.GL_RGB:
+		case GL11.GL_RGBA:
+		case GL11.GL_RGB8:
+		case GL11.GL_RGBA8:
+		case GL30.GL_RG16:
+		case GL30.GL_RG16F:
+		case GL30.GL_R32F:
+		case GL30.GL_R11F_G11F_B10F:
+		// drivers pad 24 bit depth to 32
+		case GL14.GL_DEPTH_COMPONENT24:
+		case GL14.GL_DEPTH_COMPONENT32:
+		case GL30.GL_DEPTH_COMPONENT32F:
+		case GL30.GL_DEPTH24_STENCIL8:
+			return 4;
+		case GL11.GL_RGBA16:
+		case GL30.GL_RGB16F:
+		case GL30.GL_RGBA16F:
+		case GL30.GL_DEPTH32F_STENCIL8:
+			return 8;
+		case GL30.GL_RGBA32F:
+			return 16;
+		default:
+			throw new IllegalArgumentException("Unknown render target format: 0x" + Integer.toHexString(internalFormat));
+		}
+	}
+
+	/**
+	 * Textures left unused for more frames than this are deleted.
+	 */
+	public void setMaxIdleFrames(int maxIdleFrames) {
+		Validate.isTrue(maxIdleFrames >= 0, "Idle frames can't be negative");
+		this.maxIdleFrames = maxIdleFrames;
+	}
+
+	/**
+	 * Starts a new frame, forgetting the last frame's requests.
+	 */
+	public void begin() {
+		frame++;
+		requests = 0;
+		planned = false;
+	}
+
+	/**
+	 * @param firstPass
+	 *            - the first pass that writes or reads the target
+	 * @param lastPass
+	 *            - the last pass that reads it, after which its texture can
+	 *            go to another target
+	 * @return the request, to pass to {@link #getTexture(int)} after planning
+	 */
+	public int request(int width, int height, int internalFormat, int firstPass, int lastPass) {
+		Validate.validState(!planned, "Frame already planned");
+		Validate.isTrue(width > 0 && height > 0, "Render target size must be positive");
+		Validate.isTrue(firstPass >= 0 && firstPass <= lastPass, "Bad pass range");
+		bytesPerPixel(internalFormat);
+
+		if (requests == widths.length) {
+			int capacity = requests * 2;
+			widths = Arrays.copyOf(widths, capacity);
+			heights = Arrays.copyOf(heights, capacity);
+			formats = Arrays.copyOf(formats, capacity);
+			firsts = Arrays.copyOf(firsts, capacity);
+			lasts = Arrays.copyOf(lasts, capacity);
+			assigned = Arrays.copyOf(assigned, capacity);
+			order = Arrays.copyOf(order, capacity);
+		}
+		int i = requests++;
+		widths[i] = width;
+		heights[i] = height;
+		formats[i] = internalFormat;
+		firsts[i] = firstPass;
+		lasts[i] = lastPass;
+		return i;
+	}
+
+	/**
+	 * Gives every request this frame a texture, creating the ones missing
+	 * and deleting those unused for too long.
+	 */
+	public void plan() {
+		Validate.validState(!planned, "Frame already planned");
+		planned = true;
+
+		for (int i = 0; i < requests; i++) {
+			order[i] = (long) firsts[i] << 32 | i;
+		}
+		Arrays.sort(order, 0, requests);
+
+		created = 0;
+		requestedBytes = usedBytes = 0;
+		for (int n = 0; n < requests; n++) {
+			int i = (int) order[n];
+			long bytes = (long) widths[i] * heights[i] * bytesPerPixel(formats[i]);
+			requestedBytes += bytes;
+
+			int t = find(widths[i], heights[i], formats[i], firsts[i]);
+			if (t < 0) {
+				t = add(widths[i], heights[i], formats[i]);
+				created++;
+			}
+			if (lastFrames[t] != frame) {
+				lastFrames[t] = frame;
+				usedBytes += bytes;
+			}
+			busyUntil[t] = lasts[i];
+			assigned[i] = t;
+		}
+
+		release();
+	}
+
+	/**
+	 * @return a texture of the size and format free by {@code firstPass},
+	 *         preferring one already used this frame, or -1
+	 */
+	private int find(int width, int height, int format, int firstPass) {
+		int unused = -1;
+		for (int t = 0; t < count; t++) {
+			if (textureWidths[t] != width || textureHeights[t] != height || textureFormats[t] != format) continue;
+			if (lastFrames[t] != frame) {
+				if (unused < 0) unused = t;
+			} else if (busyUntil[t] < firstPass) {
+				return t;
+			}
+		}
+		return unused;
+	}
+
+	private int add(int width, int height, int format) {
+		if (count == textures.length) {
+			int capacity = count * 2;
+			textures = Arrays.copyOf(textures, capacity);
+			textureWidths = Arrays.copyOf(textureWidths, capacity);
+			textureHeights = Arrays.copyOf(textureHeights, capacity);
+			textureFormats = Arrays.copyOf(textureFormats, capacity);
+			lastFrames = Arrays.copyOf(lastFrames, capacity);
+			busyUntil = Arrays.copyOf(busyUntil, capacity);
+			remap = Arrays.copyOf(remap, capacity);
+		}
+		int t = count++;
+		textures[t] = device.createTarget(width, height, format);
+		textureWidths[t] = width;
+		textureHeights[t] = height;
+		textureFormats[t] = format;
+		lastFrames[t] = frame - 1;
+		return t;
+	}
+
+	/**
+	 * Deletes textures idle for too long, keeping the rest in order.
+	 */
+	private void release() {
+		deleted = 0;
+		pooledBytes = 0;
+		int kept = 0;
+		for (int t = 0; t < count; t++) {
+			if (frame - lastFrames[t] > maxIdleFrames) {
+				device.deleteTarget(textures[t]);
+				deleted++;
+				remap[t] = -1;
+				continue;
+			}
+			pooledBytes += (long) textureWidths[t] * textureHeights[t] * bytesPerPixel(textureFormats[t]);
+			remap[t] = kept;
+			textures[kept] = textures[t];
+			textureWidths[kept] = textureWidths[t];
+			textureHeights[kept] = textureHeights[t];
+			textureFormats[kept] = textureFormats[t];
+			lastFrames[kept] = lastFrames[t];
+			busyUntil[kept] = busyUntil[t];
+			kept++;
+		}
+		if (kept == count) return;
+		count = kept;
+		for (int i = 0; i < requests; i++) {
+			assigned[i] = remap[assigned[i]];
+		}
+	}
+
+	/**
+	 * @return the texture planned for the request
+	 */
+	public int getTexture(int request) {
+		Validate.validState(planned, "Frame not planned yet");
+		if (request < 0 || request >= requests) throw new IllegalArgumentException("Unknown request: " + request);
+		return textures[assigned[request]];
+	}
+
+	/**
+	 * @return the bytes the requests would take with a texture each
+	 */
+	public long getRequestedBytes() {
+		return requestedBytes;
+	}
+
+	/**
+	 * @return the bytes of the textures used this frame
+	 */
+	public long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * @return the bytes sharing textures saved this frame
+	 */
+	public long getSavedBytes() {
+		return requestedBytes - usedBytes;
+	}
+
+	/**
+	 * @return the bytes of every pooled texture, used this frame or not
+	 */
+	public long getPooledBytes() {
+		return pooledBytes;
+	}
+
+	/**
+	 * @return the number of pooled textures
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return textures created by the last plan
+	 */
+	public int getCreatedCount() {
+		return created;
+	}
+
+	/**
+	 * @return textures deleted by the last plan
+	 */
+	public int getDeletedCount() {
+		return deleted;
+	}
+
+	/**
+	 * @return the last plan's memory use, for logging
+	 */
+	public String report() {
+		return String.format("%s targets in %s textures: %s MB requested, %s MB used, %s MB saved, %s MB pooled",
+				requests, count, mb(requestedBytes), mb(usedBytes), mb(getSavedBytes()), mb(pooledBytes));
+	}
+
+	private static String mb(long bytes) {
+		return Maths.format(bytes / (1024.0 * 1024.0));
+	}
+
+	/**
+	 * Deletes every pooled texture.
+	 */
+	public void dispose() {
+		for (int t = 0; t < count; t++) {
+			device.deleteTarget(textures[t]);
+		}
+		count = 0;
+		requests = 0;
+		planned = false;
+		pooledBytes = 0;
+	}
+
+}
@@ -0,0 +1,367 @@
+package org.dinigine.opengl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.dinigine.math.Maths;
+
+/**
+ * Keeps track of live GL objects by type and id without boxing, so creating
+ * and deleting them stays constant time however many there are. Nothing here
+ * calls GL; {@link VideoResources} does that.
+ * <p>
+ * Each object lives in a slot, and a handle is the slot plus the slot's
+ * generation, which goes up whenever the slot is freed. GL reuses ids as soon
+ * as they're deleted, so an old id can quietly name someone else's object,
+ * but an old handle stops being valid.
+ * <p>
+ * With {@link #setCaptureSites(boolean)} on, each object remembers the stack
+ * that created it, for {@link #getLeakReport()}.
+ */
+public class ResourceRegistry {
+
+	private static final int EMPTY = 0;
+	/** Frames of each creation stack shown in leak reports */
+	private static final int SITE_FRAMES = 6;
+
+	private final String[] names;
+	private final int[] counts;
+	private final long[] totalBytes;
+
+	/** Per slot. Free slots have a type of -1 and link through {@code next} */
+	private int[] types, ids, generations, next;
+	private long[] bytes;
+	private Throwable[] sites;
+	private int slots;
+	private int free = -1;
+	private int size;
+
+	/** Open addressed by type and id, holding slot + 1 */
+	private int[] table;
+	private int mask;
+
+	private boolean captureSites;
+
+	/**
+	 * @param names
+	 *            - the name of each type, whose index is the type
+	 */
+	public ResourceRegistry(String... names) {
+		this.names = names.clone();
+		this.counts = new int[names.length];
+		this.totalBytes = new long[names.length];
+		allocate(16);
+		table = new int[32];
+		mask = table.length - 1;
+	}
+
+	private void allocate(int capacity) {
+		types = types == null ? new int[capacity] : Arrays.copyOf(types, capacity);
+		ids = ids == null ? new int[capacity] : Arrays.copyOf(ids, capacity);
+		generations = generations == null ? new int[capacity] : Arrays.copyOf(generations, capacity);
+		next = next == null ? new int[capacity] : Arrays.copyOf(next, capacity);
+		bytes = bytes == null ? new long[capacity] : Arrays.copyOf(bytes, capacity);
+		sites = sites == null ? new Throwable[capacity] : Arrays.copyOf(sites, capacity);
+	}
+
+	private static int hash(int type, int id) {
+		int h = id * 0x9E3779B9 + type * 0x85EBCA6B;
+		return h ^ h >>> 16;
+	}
+
+	/**
+	 * @return the index in {@code table} holding the object, or -1
+	 */
+	private int find(int type, int id) {
+		for (int i = hash(type, id) & mask;; i = i + 1 & mask) {
+			int entry = table[i];
+			if (entry == EMPTY) return -1;
+			int slot = entry - 1;
+			if (ids[slot] == id && types[slot] == type) return i;
+		}
+	}
+
+	private void checkType(int type) {
+		if (type < 0 || type >= names.length) throw new IllegalArgumentException("Unknown resource type: " + type);
+	}
+
+	/**
+	 * Starts tracking a newly created object.
+	 *
+	 * @return its handle
+	 * @throws IllegalStateException
+	 *             if the object is already tracked
+	 */
+	public long add(int type, int id) {
+		checkType(type);
+		if (find(type, id) >= 0) {
+			throw new IllegalStateException(names[type] + " " + id + " is already registered");
+		}
+		if ((size + 1) * 2 > table.length) rehash(table.length * 2);
+
+		int slot = free;
+		if (slot >= 0) {
+			free = next[slot];
+		} else {
+			if (slots == ids.length) allocate(slots * 2);
+			slot = slots++;
+			generations[slot] = 1;
+		}
+		types[slot] = type;
+		ids[slot] = id;
+		bytes[slot] = 0;
+		sites[slot] = captureSites ? new Throwable() : null;
+
+		int i = hash(type, id) & mask;
+		while (table[i] != EMPTY) {
+			i = i + 1 & mask;
+		}
+		table[i] = slot + 1;
+		size++;
+		counts[type]++;
+		return (long) generations[slot] << 32 | slot;
+	}
+
+	private void rehash(int capacity) {
+		table = new int[capacity];
+		mask = capacity - 1;
+		for (int slot = 0; slot < slots; slot++) {
+			if (types[slot] < 0) continue;
+			int i = hash(types[slot], ids[slot]) & mask;
+			while (table[i] != EMPTY) {
+				i = i + 1 & mask;
+			}
+			table[i] = slot + 1;
+		}
+	}
+
+	/**
+	 * Stops tracking an object and makes its handle stale.
+	 *
+	 * @return false if it wasn't tracked
+	 */
+	public boolean remove(int type, int id) {
+		int i = find(type, id);
+		if (i < 0) return false;
+		int slot = table[i] - 1;
+
+		// shift later entries of the probe run back so lookups never stop early
+		for (int j = i + 1 & mask; table[j] != EMPTY; j = j + 1 & mask) {
+			int home = hash(types[table[j] - 1], ids[table[j] - 1]) & mask;
+			if ((j - home & mask) >= (j - i & mask)) {
+				table[i] = table[j];
+				i = j;
+			}
+		}
+		table[i] = EMPTY;
+
+		counts[type]--;
+		totalBytes[type] -= bytes[slot];
+		release(slot);
+		size--;
+		return true;
+	}
+
+	private void release(int slot) {
+		types[slot] = -1;
+		sites[slot] = null;
+		if (++generations[slot] == 0) generations[slot] = 1;
+		next[slot] = free;
+		free = slot;
+	}
+
+	private int slot(long handle) {
+		int slot = (int) handle;
+		if (slot < 0 || slot >= slots || generations[slot] != (int) (handle >>> 32) || types[slot] < 0) return -1;
+		return slot;
+	}
+
+	/**
+	 * @return the handle of a tracked object, or 0 if it isn't tracked
+	 */
+	public long getHandle(int type, int id) {
+		int i = find(type, id);
+		if (i < 0) return 0;
+		int slot = table[i] - 1;
+		return (long) generations[slot] << 32 | slot;
+	}
+
+	/**
+	 * @return false once the handle's object has been removed
+	 */
+	public boolean isValid(long handle) {
+		return slot(handle) >= 0;
+	}
+
+	/**
+	 * @return the GL id of the handle's object
+	 * @throws IllegalStateException
+	 *             if the object has been removed
+	 */
+	public int getId(long handle) {
+		return ids[validSlot(handle)];
+	}
+
+	public int getType(long handle) {
+		return types[validSlot(handle)];
+	}
+
+	private int validSlot(long handle) {
+		int slot = slot(handle);
+		if (slot < 0) throw new IllegalStateException("Stale resource handle: 0x" + Long.toHexString(handle));
+		return slot;
+	}
+
+	public boolean contains(int type, int id) {
+		return find(type, id) >= 0;
+	}
+
+	/**
+	 * Sets roughly how much memory an object takes, for the totals.
+	 */
+	public void setBytes(int type, int id, long bytes) {
+		checkType(type);
+		int i = find(type, id);
+		if (i < 0) throw new IllegalStateException(names[type] + " " + id + " is not registered");
+		int slot = table[i] - 1;
+		totalBytes[type] += bytes - this.bytes[slot];
+		this.bytes[slot] = bytes;
+	}
+
+	/**
+	 * @return how many objects of the type are tracked
+	 */
+	public int getCount(int type) {
+		checkType(type);
+		return counts[type];
+	}
+
+	/**
+	 * @return the memory estimates of every tracked object of the type
+	 */
+	public long getBytes(int type) {
+		checkType(type);
+		return totalBytes[type];
+	}
+
+	/**
+	 * @return the number of tracked objects
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Copies the ids of every tracked object of the type.
+	 *
+	 * @return the ids, in no particular order
+	 */
+	public int[] getIds(int type) {
+		int[] dest = new int[getCount(type)];
+		int n = 0;
+		for (int slot = 0; slot < slots; slot++) {
+			if (types[slot] == type) dest[n++] = ids[slot];
+		}
+		return dest;
+	}
+
+	/**
+	 * Stops tracking everything, making every handle stale.
+	 */
+	public void clear() {
+		for (int slot = 0; slot < slots; slot++) {
+			if (types[slot] >= 0) release(slot);
+		}
+		Arrays.fill(table, EMPTY);
+		Arrays.fill(counts, 0);
+		Arrays.fill(totalBytes, 0);
+		size = 0;
+	}
+
+	/**
+	 * Remembers where objects added from now on were created. Filling in a
+	 * stack trace makes each add several microseconds slower.
+	 */
+	public void setCaptureSites(boolean captureSites) {
+		this.captureSites = captureSites;
+	}
+
+	public boolean isCapturingSites() {
+		return captureSites;
+	}
+
+	/**
+	 * @return the count and memory of each type, for logging
+	 */
+	public String report() {
+		StringBuilder builder = new StringBuilder();
+		for (int type = 0; type < names.length; type++) {
+			if (type > 0) builder.append(", ");
+			builder.append(counts[type]).append(' ').append(names[type]);
+			if (totalBytes[type] > 0) builder.append(" (").append(formatBytes(totalBytes[type])).append(')');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Lists the objects still tracked, grouped by where they were created,
+	 * most first. Objects added while sites weren't captured are grouped
+	 * together as unknown.
+	 */
+	public String getLeakReport() {
+		// type, count and bytes by type and site
+		Map<String, long[]> groups = new LinkedHashMap<>();
+		for (int slot = 0; slot < slots; slot++) {
+			if (types[slot] < 0) continue;
+			String key = types[slot] + site(sites[slot]);
+			long[] group = groups.get(key);
+			if (group == null) groups.put(key, group = new long[] { types[slot], 0, 0 });
+			group[1]++;
+			group[2] += bytes[slot];
+		}
+
+		List<Map.Entry<String, long[]>> entries = new ArrayList<>(groups.entrySet());
+		Collections.sort(entries, new Comparator<Map.Entry<String, long[]>>() {
+			@Override
+			public int compare(Map.Entry<String, long[]> a, Map.Entry<String, long[]> b) {
+				return Long.compare(b.getValue()[1], a.getValue()[1]);
+			}
+		});
+
+		StringBuilder builder = new StringBuilder();
+		builder.append(size).append(" live resources");
+		for (Map.Entry<String, long[]> entry : entries) {
+			long[] group = entry.getValue();
+			String key = entry.getKey();
+			builder.append('\n').append(group[1]).append(' ').append(names[(int) group[0]]);
+			if (group[2] > 0) builder.append(" (").append(formatBytes(group[2])).append(')');
+			builder.append(key, key.indexOf(' '), key.length());
+		}
+		return builder.toString();
+	}
+
+	private static String site(Throwable site) {
+		if (site == null) return " from an unknown site";
+		StringBuilder builder = new StringBuilder(" created at");
+		int shown = 0;
+		for (StackTraceElement frame : site.getStackTrace()) {
+			String name = frame.getClassName();
+			if (name.equals(ResourceRegistry.class.getName()) || name.equals(VideoResources.class.getName())) continue;
+			builder.append("\n\tat ").append(frame);
+			if (++shown == SITE_FRAMES) break;
+		}
+		return builder.toString();
+	}
+
+	private static String formatBytes(long bytes) {
+		if (bytes < 1024) return bytes + " B";
+		if (bytes < 1024 * 1024) return Maths.format(bytes / 1024.0) + " KB";
+		return Maths.format(bytes / (1024.0 * 1024.0)) + " MB";
+	}
+
+}
@@ -11,6 +11,7 @@ import org.dinigine.math.Vec4;
 import org.dinigine.util.Buffers;
 import org.dinigine.util.Log;
 import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL31;
 
 /**
  * @author Robert Myers
@@ -19,9 +20,23 @@ public class Shader {
 
 	private static final FloatBuffer matrix = Buffers.newFloatBuffer(16);
 
-	private Map<String, Integer> uniforms = new HashMap<>();
+	/** Kinds of value a uniform slot last received */
+	private static final int NONE = 0, INT = 1, FLOAT = 2, VEC2 = 3, VEC3 = 4, VEC4 = 5, MAT4 = 6;
+
+	/** Shadow values kept per slot, enough for a mat4 */
+	private static final int SLOT_SIZE = 16;
+
+	private Map<String, UniformHandle> uniforms = new HashMap<>();
 	private int program;
 
+	private int[] locations = new int[8];
+	private int[] types = new int[8];
+	private int[] shadow = new int[8 * SLOT_SIZE];
+	private int slots;
+
+	private int uploads;
+	private int skips;
+
 	public Shader(int program) {
 		this.program = program;
 	}
@@ -38,20 +53,50 @@ public class Shader {
 		GL20.glBindAttribLocation(program, index, name);
 	}
 
+	/**
+	 * Maps the program's uniform block {@code name} to a binding point, where
+	 * a {@link UniformBlock} can be bound.
+	 */
+	public void setUniformBlock(String name, int binding) {
+		int index = GL31.glGetUniformBlockIndex(program, name);
+		if (index == GL31.GL_INVALID_INDEX) {
+			Log.info("[Shader] No uniform block named '" + name + "'");
+			return;
+		}
+		GL31.glUniformBlockBinding(program, index, binding);
+	}
+
+	/**
+	 * Looks up a uniform once so it can be set without going through its
+	 * name again.
+	 */
+	public UniformHandle uniform(String name) {
+		UniformHandle handle = uniforms.get(name);
+		if (handle == null) {
+			int loc = GL20.glGetUniformLocation(program, name);
+			if (loc == -1) {
+				Log.info("[Shader] No uniform named '" + name + "'");
+			}
+			if (slots == locations.length) {
+				grow();
+			}
+			locations[slots] = loc;
+			handle = new UniformHandle(this, slots++);
+			uniforms.put(name, handle);
+		}
+		return handle;
+	}
+
 	public void setBoolean(String name, boolean b) {
-		setNumber(name, b ? 1 : 0);
+		uniform(name).set(b);
 	}
 
 	public void setNumber(String name, int i) {
-		int loc = getUniformLocation(name);
-		if (loc == -1) return;
-		GL20.glUniform1i(loc, i);
+		uniform(name).set(i);
 	}
 
 	public void setNumber(String name, float f) {
-		int loc = getUniformLocation(name);
-		if (loc == -1) return;
-		GL20.glUniform1f(loc, f);
+		uniform(name).set(f);
 	}
 
 	public void setVec2(String name, Vec2 v) {
@@ -59,9 +104,7 @@ public class Shader {
 	}
 
 	public void setVec2(String name, float x, float y) {
-		int loc = getUniformLocation(name);
-		if (loc == -1) return;
-		GL20.glUniform2f(loc, x, y);
+		uniform(name).set(x, y);
 	}
 
 	public void setVec3(String name, Vec3 v) {
@@ -69,9 +112,7 @@ public class Shader {
 	}
 
 	public void setVec3(String name, float x, float y, float z) {
-		int loc = getUniformLocation(name);
-		if (loc == -1) return;
-		GL20.glUniform3f(loc, x, y, z);
+		uniform(name).set(x, y, z);
 	}
 
 	public void setVec4(String name, Vec4 v) {
@@ -79,14 +120,160 @@ public class Shader {
 	}
 
 	public void setVec4(String name, float x, float y, float z, float w) {
-		int loc = getUniformLocation(name);
+		uniform(name).set(x, y, z, w);
+	}
+
+	public void setMat4(String name, Mat4 m) {
+		uniform(name).set(m);
+	}
+
+	/**
+	 * @return how many uniform sets reached the driver
+	 */
+	public int getUniformUploads() {
+		return uploads;
+	}
+
+	/**
+	 * @return how many uniform sets were dropped because the value was
+	 *         already uploaded
+	 */
+	public int getUniformSkips() {
+		return skips;
+	}
+
+	public void resetUniformStats() {
+		uploads = skips = 0;
+	}
+
+	/**
+	 * Forgets every uploaded value so the next sets all reach the driver. Use
+	 * after changing the program's uniforms behind this shader's back.
+	 */
+	public void invalidateUniforms() {
+		for (int i = 0; i < slots; i++) {
+			types[i] = NONE;
+		}
+	}
+
+	int getLocation(int slot) {
+		return locations[slot];
+	}
+
+	void set1i(int slot, int i) {
+		int loc = locations[slot];
+		if (loc == -1) return;
+		int base = slot * SLOT_SIZE;
+		if (types[slot] == INT && shadow[base] == i) {
+			skips++;
+			return;
+		}
+		types[slot] = INT;
+		shadow[base] = i;
+		uploads++;
+		GL20.glUniform1i(loc, i);
+	}
+
+	void set1f(int slot, float f) {
+		int loc = locations[slot];
 		if (loc == -1) return;
+		int base = slot * SLOT_SIZE;
+		int fb = Float.floatToRawIntBits(f);
+		if (types[slot] == FLOAT && shadow[base] == fb) {
+			skips++;
+			return;
+		}
+		types[slot] = FLOAT;
+		shadow[base] = fb;
+		uploads++;
+		GL20.glUniform1f(loc, f);
+	}
+
+	void set2f(int slot, float x, float y) {
+		int loc = locations[slot];
+		if (loc == -1) return;
+		int base = slot * SLOT_SIZE;
+		int xb = Float.floatToRawIntBits(x);
+		int yb = Float.floatToRawIntBits(y);
+		if (types[slot] == VEC2 && shadow[base] == xb && shadow[base + 1] == yb) {
+			skips++;
+			return;
+		}
+		types[slot] = VEC2;
+		shadow[base] = xb;
+		shadow[base + 1] = yb;
+		uploads++;
+		GL20.glUniform2f(loc, x, y);
+	}
+
+	void set3f(int slot, float x, float y, float z) {
+		int loc = locations[slot];
+		if (loc == -1) return;
+		int base = slot * SLOT_SIZE;
+		int xb = Float.floatToRawIntBits(x);
+		int yb = Float.floatToRawIntBits(y);
+		int zb = Float.floatToRawIntBits(z);
+		if (types[slot] == VEC3 && shadow[base] == xb && shadow[base + 1] == yb && shadow[base + 2] == zb) {
+			skips++;
+			return;
+		}
+		types[slot] = VEC3;
+		shadow[base] = xb;
+		shadow[base + 1] = yb;
+		shadow[base + 2] = zb;
+		uploads++;
+		GL20.glUniform3f(loc, x, y, z);
+	}
+
+	void set4f(int slot, float x, float y, float z, float w) {
+		int loc = locations[slot];
+		if (loc == -1) return;
+		int base = slot * SLOT_SIZE;
+		int xb = Float.floatToRawIntBits(x);
+		int yb = Float.floatToRawIntBits(y);
+		int zb = Float.floatToRawIntBits(z);
+		int wb = Float.floatToRawIntBits(w);
+		if (types[slot] == VEC4 && shadow[base] == xb && shadow[base + 1] == yb
+				&& shadow[base + 2] == zb && shadow[base + 3] == wb) {
+			skips++;
+			return;
+		}
+		types[slot] = VEC4;
+		shadow[base] = xb;
+		shadow[base + 1] = yb;
+		shadow[base + 2] = zb;
+		shadow[base + 3] = wb;
+		uploads++;
 		GL20.glUniform4f(loc, x, y, z, w);
 	}
 
-	public void setMat4(String name, Mat4 m) {
-		int loc = getUniformLocation(name);
+	void setMat4(int slot, Mat4 m) {
+		int loc = locations[slot];
 		if (loc == -1) return;
+		int base = slot * SLOT_SIZE;
+		boolean same = types[slot] == MAT4;
+		same &= update(base, m.m00, same);
+		same &= update(base + 1, m.m01, same);
+		same &= update(base + 2, m.m02, same);
+		same &= update(base + 3, m.m03, same);
+		same &= update(base + 4, m.m10, same);
+		same &= update(base + 5, m.m11, same);
+		same &= update(base + 6, m.m12, same);
+		same &= update(base + 7, m.m13, same);
+		same &= update(base + 8, m.m20, same);
+		same &= update(base + 9, m.m21, same);
+		same &= update(base + 10, m.m22, same);
+		same &= update(base + 11, m.m23, same);
+		same &= update(base + 12, m.m30, same);
+		same &= update(base + 13, m.m31, same);
+		same &= update(base + 14, m.m32, same);
+		same &= update(base + 15, m.m33, same);
+		if (same) {
+			skips++;
+			return;
+		}
+		types[slot] = MAT4;
+		uploads++;
 		synchronized (matrix) {
 			matrix.clear();
 			m.store(matrix);
@@ -95,16 +282,30 @@ public class Shader {
 		}
 	}
 
-	private int getUniformLocation(String name) {
-		Integer loc = uniforms.get(name);
-		if (loc == null) {
-			loc = GL20.glGetUniformLocation(program, name);
-			if (loc == -1) {
-				Log.info("[Shader] No uniform named '" + name + "'");
-			}
-			uniforms.put(name, loc);
-		}
-		return loc;
+	/**
+	 * Writes one shadow value, only comparing while everything before it
+	 * matched.
+	 *
+	 * @return true if the shadow already held {@code f}
+	 */
+	private boolean update(int index, float f, boolean compare) {
+		int bits = Float.floatToRawIntBits(f);
+		if (compare && shadow[index] == bits) return true;
+		shadow[index] = bits;
+		return false;
+	}
+
+	private void grow() {
+		int capacity = locations.length << 1;
+		int[] l = new int[capacity];
+		int[] t = new int[capacity];
+		int[] s = new int[capacity * SLOT_SIZE];
+		System.arraycopy(locations, 0, l, 0, slots);
+		System.arraycopy(types, 0, t, 0, slots);
+		System.arraycopy(shadow, 0, s, 0, slots * SLOT_SIZE);
+		locations = l;
+		types = t;
+		shadow = s;
 	}
 
 }
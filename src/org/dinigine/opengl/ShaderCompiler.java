@@ -3,6 +3,8 @@ package org.dinigine.opengl;
 import java.io.BufferedReader;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -10,8 +12,12 @@ import java.util.StringTokenizer;
 
 import org.apache.lang.StringUtils;
 import org.dinigine.math.Maths;
+import org.dinigine.util.Buffers;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL20;
-import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GL41;
+import org.lwjgl.opengl.GLCapabilities;
 
 /**
  * @author Robert Myers
@@ -19,44 +25,63 @@ import org.lwjgl.opengl.GL32;
 public final class ShaderCompiler {
 
 	private static final String SHADER_VERSION = "400";
+
+	private static ProgramBinaryCache binaryCache;
 	
-	private static class ShaderSource {
-		final StringBuffer buffer = new StringBuffer("#version " + SHADER_VERSION);
-		final String name;
-		final int type;
-
-		public ShaderSource(String filename, String typename, int type) {
-			this.name = filename + " (" + typename + ")";
-			this.type = type;
-		}
+	public static int createProgram(String name, InputStream in) throws Exception {
+		return createProgram(name, in, null);
 	}
 
-	public static int createProgram(String name, InputStream in) throws Exception {
+	/**
+	 * @param includes
+	 *            - resolves {@code #include} lines, may be null
+	 * @param defines
+	 *            - names defined at the top of every stage
+	 */
+	public static int createProgram(String name, InputStream in, ShaderPreprocessor.Resolver includes,
+			String... defines) throws Exception {
+		StringBuilder text = new StringBuilder();
 		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
-		List<ShaderSource> sources = new ArrayList<>();
-		ShaderSource current = null;
-
 		for (String ln; (ln = reader.readLine()) != null;) {
-			if ((ln = ln.trim()).startsWith("// vertex")) {
-				sources.add(current = new ShaderSource(
-						name, "vertex", GL20.GL_VERTEX_SHADER));
-			} else if (ln.startsWith("// fragment")) {
-				sources.add(current = new ShaderSource(
-						name, "fragment", GL20.GL_FRAGMENT_SHADER));
-			} else if (ln.startsWith("// geometry")) {
-				sources.add(current = new ShaderSource(
-						name, "geometry", GL32.GL_GEOMETRY_SHADER));
-			} else if (current != null) {
-				current.buffer.append('\n').append(ln);
+			text.append(ln).append('\n');
+		}
+		return createProgram(new ShaderPreprocessor(includes, SHADER_VERSION).preprocess(name, text.toString(), defines));
+	}
+
+	/**
+	 * @return a preprocessor producing sources for this compiler's GLSL version
+	 */
+	public static ShaderPreprocessor newPreprocessor(ShaderPreprocessor.Resolver includes) {
+		return new ShaderPreprocessor(includes, SHADER_VERSION);
+	}
+
+	/**
+	 * Compiles and links already preprocessed sources, such as the variants
+	 * from {@link ShaderPreprocessor#preprocessAll}. Must be called on the GL
+	 * thread.
+	 */
+	public static int createProgram(PreprocessedShader source) throws Exception {
+		String name = source.getName();
+		ProgramBinaryCache cache = binaryCache;
+		String key = null;
+		if (cache != null && supportsProgramBinary()) {
+			StringBuilder text = new StringBuilder();
+			for (int i = 0; i < source.getStageCount(); i++) {
+				text.append(source.getStageType(i)).append('\n').append(source.getStageSource(i)).append('\n');
 			}
+			key = ProgramBinaryCache.key(text, SHADER_VERSION, getDriver());
+
+			int program = loadProgramBinary(cache, key);
+			if (program != 0) return program;
 		}
 
+		long start = System.nanoTime();
 		List<Integer> shaders = new ArrayList<>();
-		for (ShaderSource src : sources) {
-			int shader = GL20.glCreateShader(src.type);
-			GL20.glShaderSource(shader, src.buffer);
+		for (int i = 0; i < source.getStageCount(); i++) {
+			int shader = GL20.glCreateShader(source.getStageType(i));
+			GL20.glShaderSource(shader, source.getStageSource(i));
 			GL20.glCompileShader(shader);
-			checkShaderError(src.name, shader, false, GL20.GL_COMPILE_STATUS);
+			checkShaderError(source.getStageName(i), shader, false, GL20.GL_COMPILE_STATUS);
 			shaders.add(shader);
 		}
 
@@ -65,6 +90,10 @@ public final class ShaderCompiler {
 		for (int shader : shaders)
 			GL20.glAttachShader(program, shader);
 
+		if (key != null) {
+			GL41.glProgramParameteri(program, GL41.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL11.GL_TRUE);
+		}
+
 		GL20.glLinkProgram(program);
 
 		for (int shader : shaders) {
@@ -74,16 +103,79 @@ public final class ShaderCompiler {
 
 		checkShaderError(name, program, true, GL20.GL_LINK_STATUS);
 
+		if (key != null) {
+			storeProgramBinary(cache, key, program, System.nanoTime() - start);
+		}
+
+		GL20.glUseProgram(program);
+		return program;
+	}
+
+	/**
+	 * Caches linked programs in {@code cache} and loads them from it when the
+	 * driver supports program binaries. Pass null to always compile.
+	 */
+	public static void setBinaryCache(ProgramBinaryCache cache) {
+		binaryCache = cache;
+	}
+
+	public static ProgramBinaryCache getBinaryCache() {
+		return binaryCache;
+	}
+
+	private static boolean supportsProgramBinary() {
+		GLCapabilities caps = GL.getCapabilities();
+		return (caps.OpenGL41 || caps.GL_ARB_get_program_binary)
+				&& GL11.glGetInteger(GL41.GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+	}
+
+	private static String getDriver() {
+		return GL11.glGetString(GL11.GL_VENDOR) + '|'
+				+ GL11.glGetString(GL11.GL_RENDERER) + '|'
+				+ GL11.glGetString(GL11.GL_VERSION);
+	}
+
+	private static int loadProgramBinary(ProgramBinaryCache cache, String key) {
+		long start = System.nanoTime();
+		ProgramBinaryCache.Entry entry = cache.load(key);
+		if (entry == null) return 0;
+
+		ByteBuffer binary = Buffers.newByteBuffer(entry.binary.length);
+		binary.put(entry.binary).flip();
+
+		int program = VideoResources.createShader();
+		GL41.glProgramBinary(program, entry.format, binary);
+		if (GL20.glGetProgrami(program, GL20.GL_LINK_STATUS) == 0) {
+			// the driver no longer accepts this format, compile instead
+			VideoResources.deleteShader(program);
+			cache.invalidate(key);
+			return 0;
+		}
+
+		cache.recordHit(entry, System.nanoTime() - start);
 		GL20.glUseProgram(program);
 		return program;
 	}
 
+	private static void storeProgramBinary(ProgramBinaryCache cache, String key, int program, long compileTime) {
+		int length = GL20.glGetProgrami(program, GL41.GL_PROGRAM_BINARY_LENGTH);
+		if (length <= 0) return;
+
+		IntBuffer format = Buffers.newIntBuffer(1);
+		ByteBuffer binary = Buffers.newByteBuffer(length);
+		GL41.glGetProgramBinary(program, Buffers.newIntBuffer(1), format, binary);
+
+		byte[] bytes = new byte[length];
+		binary.get(bytes);
+		cache.store(key, format.get(0), bytes, compileTime);
+	}
+
 	private static void checkShaderError(String name, int id, boolean program, int flag) throws Exception {
 		int err = program ? GL20.glGetProgrami(id, flag) : GL20.glGetShaderi(id, flag);
 		if (err == 0) {
 			StringBuffer buffer = new StringBuffer("Shader '" + name + "' had errors!");
 			String log = program ? GL20.glGetProgramInfoLog(id) : GL20.glGetShaderInfoLog(id);
-			if (program) GL20.glDeleteProgram(id);
+			if (program) VideoResources.deleteShader(id);
 			else GL20.glDeleteShader(id);
 			
 			if (!StringUtils.isEmpty(log)) {
@@ -0,0 +1,299 @@
+package org.dinigine.opengl;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.lang.Validate;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL32;
+
+/**
+ * Turns a shader file into the sources of each stage, without touching GL.
+ * <p>
+ * Stages start at {@code // vertex}, {@code // fragment} and
+ * {@code // geometry} lines. {@code #include "name"} lines are replaced by
+ * the resolved file, each file at most once per stage. Feature defines are
+ * inserted as {@code #define NAME} right after the {@code #version} line, but
+ * only in stages that mention the name, so a feature doesn't change stages it
+ * has no effect on.
+ * <p>
+ * {@link #preprocessAll(Map, String[], ForkJoinPool)} expands every
+ * combination of a set of features for many programs at once in parallel.
+ * Variants that expand to the same text share one {@link PreprocessedShader},
+ * so each distinct program is compiled only once.
+ */
+public class ShaderPreprocessor {
+
+	/** Finds the text of an included file */
+	public interface Resolver {
+		String resolve(String name) throws IOException;
+	}
+
+	private static final int MAX_INCLUDE_DEPTH = 32;
+
+	private final Resolver resolver;
+	private final String version;
+	private final Map<String, String> includes = new ConcurrentHashMap<>();
+
+	/**
+	 * @param resolver
+	 *            - resolves includes, or null if includes aren't allowed
+	 */
+	public ShaderPreprocessor(Resolver resolver, String version) {
+		this.resolver = resolver;
+		this.version = version;
+	}
+
+	/**
+	 * @return the key naming one variant of a program, such as
+	 *         {@code lit[FOG,SHADOWS]}
+	 */
+	public static String variantKey(String name, String[] features, int mask) {
+		StringBuilder key = new StringBuilder(name).append('[');
+		boolean first = true;
+		for (int i = 0; i < features.length; i++) {
+			if ((mask & (1 << i)) != 0) {
+				if (!first) key.append(',');
+				key.append(features[i]);
+				first = false;
+			}
+		}
+		return key.append(']').toString();
+	}
+
+	public PreprocessedShader preprocess(String name, String source, String... defines) throws IOException {
+		List<Integer> types = new ArrayList<>();
+		List<String> stageNames = new ArrayList<>();
+		List<String> sources = new ArrayList<>();
+
+		StringBuilder current = null;
+		Set<String> included = new HashSet<>();
+		BufferedReader reader = new BufferedReader(new StringReader(source));
+		for (String ln; (ln = reader.readLine()) != null;) {
+			int type;
+			String typename;
+			if ((ln = ln.trim()).startsWith("// vertex")) {
+				type = GL20.GL_VERTEX_SHADER;
+				typename = "vertex";
+			} else if (ln.startsWith("// fragment")) {
+				type = GL20.GL_FRAGMENT_SHADER;
+				typename = "fragment";
+			} else if (ln.startsWith("// geometry")) {
+				type = GL32.GL_GEOMETRY_SHADER;
+				typename = "geometry";
+			} else {
+				if (current != null) {
+					appendLine(current, ln, included, 0);
+				}
+				continue;
+			}
+
+			if (current != null) sources.add(finish(current, defines));
+			current = new StringBuilder();
+			included.clear();
+			types.add(type);
+			stageNames.add(name + " (" + typename + ")");
+		}
+		if (current != null) sources.add(finish(current, defines));
+
+		int[] t = new int[types.size()];
+		for (int i = 0; i < t.length; i++) {
+			t[i] = types.get(i);
+		}
+		return new PreprocessedShader(name, t, stageNames.toArray(new String[0]), sources.toArray(new String[0]));
+	}
+
+	/**
+	 * @return the stage's source, with the version and the defines its body
+	 *         refers to
+	 */
+	private String finish(StringBuilder body, String[] defines) {
+		String text = body.toString();
+		StringBuilder out = new StringBuilder(text.length() + 64).append("#version ").append(version);
+		for (String define : defines) {
+			int end = 0;
+			while (end < define.length() && !Character.isWhitespace(define.charAt(end))) {
+				end++;
+			}
+			if (references(text, define.substring(0, end))) {
+				out.append("\n#define ").append(define);
+			}
+		}
+		return out.append(text).toString();
+	}
+
+	/**
+	 * @return true if {@code name} appears in {@code text} as a whole
+	 *         identifier
+	 */
+	private static boolean references(String text, String name) {
+		for (int i = text.indexOf(name); i >= 0; i = text.indexOf(name, i + 1)) {
+			int after = i + name.length();
+			if ((i == 0 || !isIdentifierPart(text.charAt(i - 1)))
+					&& (after == text.length() || !isIdentifierPart(text.charAt(after)))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		return c == '_' || Character.isLetterOrDigit(c);
+	}
+
+	private void appendLine(StringBuilder out, String ln, Set<String> included, int depth) throws IOException {
+		if (!ln.startsWith("#include")) {
+			out.append('\n').append(ln);
+			return;
+		}
+
+		String file = parseInclude(ln);
+		if (depth >= MAX_INCLUDE_DEPTH) {
+			throw new IOException("Includes nested too deep at '" + file + "'");
+		}
+		if (!included.add(file)) return;
+
+		BufferedReader reader = new BufferedReader(new StringReader(getInclude(file)));
+		for (String line; (line = reader.readLine()) != null;) {
+			appendLine(out, line.trim(), included, depth + 1);
+		}
+	}
+
+	private static String parseInclude(String ln) throws IOException {
+		String rest = ln.substring("#include".length()).trim();
+		if (rest.length() >= 2) {
+			char open = rest.charAt(0), close = rest.charAt(rest.length() - 1);
+			if ((open == '"' && close == '"') || (open == '<' && close == '>')) {
+				return rest.substring(1, rest.length() - 1);
+			}
+		}
+		throw new IOException("Malformed include: " + ln);
+	}
+
+	private String getInclude(String file) throws IOException {
+		String text = includes.get(file);
+		if (text == null) {
+			if (resolver == null) {
+				throw new IOException("Can't include '" + file + "' without a resolver");
+			}
+			text = resolver.resolve(file);
+			if (text == null) {
+				throw new IOException("Couldn't resolve include '" + file + "'");
+			}
+			includes.put(file, text);
+		}
+		return text;
+	}
+
+	/**
+	 * Expands every combination of {@code features} for every program in
+	 * {@code programs}, in parallel on {@code pool}.
+	 *
+	 * @param programs
+	 *            - program sources by name
+	 * @param features
+	 *            - defines toggled per variant, at most 30
+	 * @return the variants by {@link #variantKey(String, String[], int)}, where
+	 *         identical expansions share an instance
+	 */
+	public Map<String, PreprocessedShader> preprocessAll(Map<String, String> programs, String[] features,
+			ForkJoinPool pool) throws IOException {
+		Validate.isTrue(features.length <= 30, "Too many features: %d", features.length);
+
+		int variants = 1 << features.length;
+		List<String> names = new ArrayList<>(programs.keySet());
+		String[] keys = new String[names.size() * variants];
+		PreprocessedShader[] results = new PreprocessedShader[keys.length];
+
+		try {
+			pool.invoke(new ExpandTask(programs, names, features, keys, results, 0, keys.length));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+
+		Map<PreprocessedShader, PreprocessedShader> unique = new HashMap<>();
+		Map<String, PreprocessedShader> out = new LinkedHashMap<>();
+		for (int i = 0; i < results.length; i++) {
+			PreprocessedShader shader = unique.get(results[i]);
+			if (shader == null) {
+				unique.put(results[i], shader = results[i]);
+			}
+			out.put(keys[i], shader);
+		}
+		return out;
+	}
+
+	/**
+	 * @return how many distinct programs the variants map to
+	 */
+	public static int countUnique(Map<String, PreprocessedShader> variants) {
+		return new HashSet<>(variants.values()).size();
+	}
+
+	private class ExpandTask extends RecursiveAction {
+
+		private static final long serialVersionUID = 1L;
+		private static final int THRESHOLD = 8;
+
+		private final Map<String, String> programs;
+		private final List<String> names;
+		private final String[] features;
+		private final String[] keys;
+		private final PreprocessedShader[] results;
+		private final int start, end;
+
+		ExpandTask(Map<String, String> programs, List<String> names, String[] features,
+				String[] keys, PreprocessedShader[] results, int start, int end) {
+			this.programs = programs;
+			this.names = names;
+			this.features = features;
+			this.keys = keys;
+			this.results = results;
+			this.start = start;
+			this.end = end;
+		}
+
+		@Override
+		protected void compute() {
+			if (end - start > THRESHOLD) {
+				int mid = (start + end) >>> 1;
+				invokeAll(new ExpandTask(programs, names, features, keys, results, start, mid),
+						new ExpandTask(programs, names, features, keys, results, mid, end));
+				return;
+			}
+
+			int variants = 1 << features.length;
+			List<String> defines = new ArrayList<>(features.length);
+			for (int i = start; i < end; i++) {
+				String name = names.get(i / variants);
+				int mask = i % variants;
+
+				defines.clear();
+				for (int f = 0; f < features.length; f++) {
+					if ((mask & (1 << f)) != 0) defines.add(features[f]);
+				}
+
+				keys[i] = variantKey(name, features, mask);
+				try {
+					results[i] = preprocess(keys[i], programs.get(name), defines.toArray(new String[0]));
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+
+	}
+
+}
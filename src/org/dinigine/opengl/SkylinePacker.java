@@ -0,0 +1,171 @@
+package org.dinigine.opengl;
+
+import org.apache.lang.Validate;
+
+/**
+ * Packs rectangles into a fixed size page with the skyline bottom-left
+ * heuristic: the page's top edge is tracked as a list of horizontal segments,
+ * and each rectangle goes where its top ends up lowest, ties going to the
+ * narrowest fit.
+ * <p>
+ * Packing is online, but sorting rectangles by decreasing height before
+ * inserting them noticeably improves occupancy.
+ */
+public class SkylinePacker {
+
+	private final int width;
+	private final int height;
+	private final int padding;
+
+	/** The skyline, segments ordered left to right */
+	private int[] xs;
+	private int[] ys;
+	private int[] widths;
+	private int count;
+
+	private long usedArea;
+
+	public SkylinePacker(int width, int height, int padding) {
+		Validate.isTrue(width > 0 && height > 0, "Invalid page size");
+		Validate.isTrue(padding >= 0, "Padding can't be negative");
+		this.width = width;
+		this.height = height;
+		this.padding = padding;
+		this.xs = new int[16];
+		this.ys = new int[16];
+		this.widths = new int[16];
+		clear();
+	}
+
+	public void clear() {
+		xs[0] = 0;
+		ys[0] = 0;
+		widths[0] = width;
+		count = 1;
+		usedArea = 0;
+	}
+
+	public static int getX(long packed) {
+		return (int) (packed >>> 32);
+	}
+
+	public static int getY(long packed) {
+		return (int) packed;
+	}
+
+	/**
+	 * @return the position as {@code x << 32 | y}, read with
+	 *         {@link #getX(long)} and {@link #getY(long)}, or -1 if it doesn't
+	 *         fit
+	 */
+	public long insert(int w, int h) {
+		Validate.isTrue(w > 0 && h > 0, "Invalid size: %dx%d", w, h);
+		int pw = w + padding, ph = h + padding;
+
+		int best = -1, bestY = Integer.MAX_VALUE, bestWidth = Integer.MAX_VALUE;
+		for (int i = 0; i < count; i++) {
+			int y = fit(i, pw, ph);
+			if (y < 0) continue;
+			if (y < bestY || (y == bestY && widths[i] < bestWidth)) {
+				best = i;
+				bestY = y;
+				bestWidth = widths[i];
+			}
+		}
+		if (best < 0) return -1;
+
+		int x = xs[best];
+		add(best, x, bestY + ph, pw);
+		usedArea += (long) w * h;
+		return ((long) x << 32) | bestY;
+	}
+
+	/**
+	 * @return the y a rectangle placed at segment {@code index} would rest at,
+	 *         or -1 if it doesn't fit there
+	 */
+	private int fit(int index, int w, int h) {
+		int x = xs[index];
+		if (x + w > width) return -1;
+
+		int y = 0;
+		for (int i = index, left = w; left > 0; i++) {
+			if (i == count) return -1;
+			if (ys[i] > y) y = ys[i];
+			if (y + h > height) return -1;
+			left -= widths[i];
+		}
+		return y;
+	}
+
+	/**
+	 * Raises the skyline under a newly placed rectangle.
+	 */
+	private void add(int index, int x, int y, int w) {
+		insertSegment(index, x, y, w);
+
+		// shrink or drop the segments now covered by the new one
+		for (int i = index + 1; i < count; i++) {
+			int end = xs[i - 1] + widths[i - 1];
+			if (xs[i] >= end) break;
+			int shrink = end - xs[i];
+			xs[i] += shrink;
+			widths[i] -= shrink;
+			if (widths[i] > 0) break;
+			removeSegment(i--);
+		}
+
+		// merge neighbours at the same height
+		for (int i = 0; i < count - 1; i++) {
+			if (ys[i] == ys[i + 1]) {
+				widths[i] += widths[i + 1];
+				removeSegment(i + 1);
+				i--;
+			}
+		}
+	}
+
+	private void insertSegment(int index, int x, int y, int w) {
+		if (count == xs.length) {
+			int capacity = count << 1;
+			int[] nx = new int[capacity], ny = new int[capacity], nw = new int[capacity];
+			System.arraycopy(xs, 0, nx, 0, count);
+			System.arraycopy(ys, 0, ny, 0, count);
+			System.arraycopy(widths, 0, nw, 0, count);
+			xs = nx;
+			ys = ny;
+			widths = nw;
+		}
+		System.arraycopy(xs, index, xs, index + 1, count - index);
+		System.arraycopy(ys, index, ys, index + 1, count - index);
+		System.arraycopy(widths, index, widths, index + 1, count - index);
+		xs[index] = x;
+		ys[index] = y;
+		widths[index] = w;
+		count++;
+	}
+
+	private void removeSegment(int index) {
+		System.arraycopy(xs, index + 1, xs, index, count - index - 1);
+		System.arraycopy(ys, index + 1, ys, index, count - index - 1);
+		System.arraycopy(widths, index + 1, widths, index, count - index - 1);
+		count--;
+	}
+
+	public int getWidth() {
+		return width;
+	}
+
+	public int getHeight() {
+		return height;
+	}
+
+	/**
+	 * @return the fraction of the page covered by packed rectangles, not
+	 *         counting padding
+	 */
+	public float getOccupancy() {
+		return (float) ((double) usedArea / ((long) width * height));
+	}
+
+}
@@ -0,0 +1,127 @@
+package org.dinigine.opengl;
+
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.apache.lang.Validate;
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Draws {@link AtlasRegion}s as textured quads out of one
+ * {@link StreamingMesh}. Quads are only flushed when the atlas page changes,
+ * so sprites from the same page cost a single draw call.
+ * <p>
+ * The shader gets a vec2 position at attribute 0, a vec2 texture coordinate
+ * at 1 and a vec4 color at 2. Its texture is bound to unit 0.
+ */
+public class SpriteBatch {
+
+	private final Shader shader;
+	private final StreamingMesh mesh;
+	private final int maxSprites;
+
+	private Texture texture;
+	private FloatBuffer vertices;
+	private IntBuffer elements;
+	private int sprites;
+	private int flushed;
+	private boolean drawing;
+
+	private int drawCalls;
+
+	public SpriteBatch(Shader shader, int maxSprites) {
+		Validate.notNull(shader, "shader");
+		Validate.isTrue(maxSprites > 0, "Invalid sprite count: %d", maxSprites);
+		this.shader = shader;
+		this.maxSprites = maxSprites;
+		this.mesh = new StreamingMesh(maxSprites << 2, maxSprites * 6, 2, 2, 4);
+	}
+
+	public void begin() {
+		Validate.validState(!drawing, "Batch already begun!");
+		shader.bind();
+		mesh.begin();
+		mesh.bind();
+		texture = null;
+		sprites = 0;
+		flushed = 0;
+		drawCalls = 0;
+		drawing = true;
+	}
+
+	public void draw(AtlasRegion region, float x, float y, float width, float height) {
+		draw(region, x, y, width, height, 1, 1, 1, 1);
+	}
+
+	public void draw(AtlasRegion region, float x, float y, float width, float height,
+			float r, float g, float b, float a) {
+		Validate.validState(drawing, "Batch not begun!");
+		Validate.validState(sprites < maxSprites, "Batch is full (%d sprites)", maxSprites);
+
+		Texture page = region.getTexture();
+		Validate.validState(page != null, "Atlas page %d not uploaded", region.page);
+		if (page != texture) {
+			flush();
+			texture = page;
+		}
+
+		if (vertices == null) {
+			vertices = mesh.getVertices();
+			elements = mesh.getElements();
+		}
+
+		int base = sprites << 2;
+		float x1 = x + width, y1 = y + height;
+		vertices.put(x).put(y).put(region.u0).put(region.v0).put(r).put(g).put(b).put(a);
+		vertices.put(x1).put(y).put(region.u1).put(region.v0).put(r).put(g).put(b).put(a);
+		vertices.put(x1).put(y1).put(region.u1).put(region.v1).put(r).put(g).put(b).put(a);
+		vertices.put(x).put(y1).put(region.u0).put(region.v1).put(r).put(g).put(b).put(a);
+		elements.put(base).put(base + 1).put(base + 2).put(base + 2).put(base + 3).put(base);
+		sprites++;
+	}
+
+	/**
+	 * Draws the sprites added since the last flush.
+	 */
+	public void flush() {
+		int count = sprites * 6 - flushed;
+		if (count == 0) return;
+
+		texture.bind(0);
+		mesh.draw(GL11.GL_TRIANGLES, flushed, count);
+		flushed += count;
+		drawCalls++;
+		// drawing may unmap the mesh, so fetch its buffers again before writing
+		vertices = null;
+		elements = null;
+	}
+
+	public void end() {
+		Validate.validState(drawing, "Batch not begun!");
+		flush();
+		mesh.end();
+		vertices = null;
+		elements = null;
+		drawing = false;
+	}
+
+	public int getSpriteCount() {
+		return sprites;
+	}
+
+	/**
+	 * @return draw calls issued since the last {@link #begin()}
+	 */
+	public int getDrawCalls() {
+		return drawCalls;
+	}
+
+	public int getMaxSprites() {
+		return maxSprites;
+	}
+
+	public void dispose() {
+		mesh.dispose();
+	}
+
+}
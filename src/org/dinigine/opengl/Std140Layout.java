@@ -0,0 +1,67 @@
+package org.dinigine.opengl;
+
+import org.apache.lang.Validate;
+
+/**
+ * Computes field offsets of a uniform block declared with
+ * {@code layout(std140)}. Fields are added in the order the block declares
+ * them, and each {@code add} returns the field's byte offset for use with a
+ * {@link UniformBlock}.
+ */
+public class Std140Layout {
+
+	public static final int FLOAT = 0, INT = 1, VEC2 = 2, VEC3 = 3, VEC4 = 4, MAT4 = 5;
+
+	private static final int[] ALIGNMENTS = { 4, 4, 8, 16, 16, 16 };
+	private static final int[] SIZES = { 4, 4, 8, 12, 16, 64 };
+
+	private int size;
+
+	public static int alignmentOf(int type) {
+		return ALIGNMENTS[type];
+	}
+
+	public static int sizeOf(int type) {
+		return SIZES[type];
+	}
+
+	/**
+	 * @return the byte offset of the field
+	 */
+	public int add(int type) {
+		Validate.isTrue(type >= 0 && type < SIZES.length, "Unknown type: %d", type);
+		int offset = align(size, ALIGNMENTS[type]);
+		size = offset + SIZES[type];
+		return offset;
+	}
+
+	/**
+	 * Adds an array, whose elements are each padded to a multiple of 16
+	 * bytes. Use {@link #arrayStride(int)} to step between elements.
+	 *
+	 * @return the byte offset of the first element
+	 */
+	public int add(int type, int length) {
+		Validate.isTrue(type >= 0 && type < SIZES.length, "Unknown type: %d", type);
+		Validate.isTrue(length > 0, "Array length must be positive");
+		int offset = align(size, 16);
+		size = offset + arrayStride(type) * length;
+		return offset;
+	}
+
+	public static int arrayStride(int type) {
+		return align(SIZES[type], 16);
+	}
+
+	/**
+	 * @return the size of the block so far, padded to 16 bytes
+	 */
+	public int size() {
+		return align(size, 16);
+	}
+
+	private static int align(int offset, int alignment) {
+		return (offset + alignment - 1) & -alignment;
+	}
+
+}
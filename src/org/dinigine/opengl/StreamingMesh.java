@@ -0,0 +1,275 @@
+package org.dinigine.opengl;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+import org.apache.lang.Validate;
+import org.dinigine.util.Buffers;
+import org.lwjgl.opengl.ARBBufferStorage;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL20;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+import org.lwjgl.opengl.GLCapabilities;
+
+/**
+ * A mesh for geometry that changes every frame. Vertices and elements are
+ * written straight into mapped buffer memory, one region of a
+ * {@link BufferRing} per frame, so nothing is reallocated while the GPU is
+ * still drawing the previous frames.
+ *
+ * <pre>
+ * mesh.begin();
+ * mesh.getVertices().put(...);
+ * mesh.getElements().put(...);
+ * mesh.draw(GL11.GL_TRIANGLES);
+ * mesh.end();
+ * </pre>
+ *
+ * Uses persistent, coherent mapping when buffer storage is available and
+ * falls back to unsynchronized per-frame mapping otherwise. In that case draws
+ * unmap the region and the next {@link #getVertices()} or
+ * {@link #getElements()} maps it again, so fetch the buffers anew after each
+ * draw.
+ */
+public class StreamingMesh {
+
+	private static final int PERSISTENT_FLAGS = GL30.GL_MAP_WRITE_BIT
+			| ARBBufferStorage.GL_MAP_PERSISTENT_BIT
+			| ARBBufferStorage.GL_MAP_COHERENT_BIT;
+	private static final int UNSYNCHRONIZED_FLAGS = GL30.GL_MAP_WRITE_BIT
+			| GL30.GL_MAP_UNSYNCHRONIZED_BIT;
+
+	private final int vao;
+	private final int vbo;
+	private final BufferRing ring;
+	private final boolean persistent;
+
+	private final int stride;
+	private final int vertexBytes;
+	private final int maxVertices;
+	private final int maxElements;
+
+	private final FloatBuffer[] vertexRegions;
+	private final IntBuffer[] elementRegions;
+
+	private FloatBuffer vertices;
+	private IntBuffer elements;
+	private boolean mapped;
+
+	public StreamingMesh(int maxVertices, int maxElements, int... attributeSizes) {
+		this(FenceSync.GL, BufferRing.DEFAULT_REGIONS, maxVertices, maxElements, attributeSizes);
+	}
+
+	public StreamingMesh(FenceSync sync, int regions, int maxVertices, int maxElements, int... attributeSizes) {
+		Validate.isTrue(maxVertices > 0, "Need room for at least one vertex");
+		Validate.isTrue(maxElements >= 0, "Element count can't be negative");
+		Validate.isTrue(attributeSizes.length > 0, "Need at least one attribute");
+
+		int stride = 0;
+		for (int i = 0; i < attributeSizes.length; i++) {
+			stride += attributeSizes[i] << 2;
+		}
+
+		// regions start on a vertex boundary so they can be drawn with a base vertex
+		int vertexBytes = maxVertices * stride;
+		int regionSize = vertexBytes + (maxElements << 2);
+		regionSize = (regionSize + stride - 1) / stride * stride;
+
+		this.stride = stride;
+		this.vertexBytes = vertexBytes;
+		this.maxVertices = maxVertices;
+		this.maxElements = maxElements;
+		this.ring = new BufferRing(sync, regions, regionSize);
+		this.vertexRegions = new FloatBuffer[regions];
+		this.elementRegions = new IntBuffer[regions];
+
+		GLCapabilities caps = GL.getCapabilities();
+		this.persistent = caps.OpenGL44 || caps.GL_ARB_buffer_storage;
+
+		this.vao = VideoResources.createVertexArray();
+		this.vbo = VideoResources.createVertexBuffer();
+		GL30.glBindVertexArray(vao);
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, vbo);
+
+		long capacity = ring.getCapacity();
+		if (persistent) {
+			ARBBufferStorage.glBufferStorage(GL15.GL_ARRAY_BUFFER, capacity, PERSISTENT_FLAGS);
+			ByteBuffer memory = GL30.glMapBufferRange(GL15.GL_ARRAY_BUFFER, 0, capacity, PERSISTENT_FLAGS);
+			for (int i = 0; i < regions; i++) {
+				createViews(memory, i * regionSize, i);
+			}
+		} else {
+			GL15.glBufferData(GL15.GL_ARRAY_BUFFER, capacity, GL15.GL_STREAM_DRAW);
+		}
+		VideoResources.setSize(VideoResources.VERTEX_BUFFER, vbo, capacity);
+
+		int offset = 0;
+		for (int i = 0; i < attributeSizes.length; i++) {
+			GL20.glEnableVertexAttribArray(i);
+			GL20.glVertexAttribPointer(i, attributeSizes[i], GL11.GL_FLOAT, false, stride, offset);
+			offset += attributeSizes[i] << 2;
+		}
+
+		GL30.glBindVertexArray(0);
+	}
+
+	private void createViews(ByteBuffer memory, int offset, int region) {
+		memory.limit(offset + vertexBytes).position(offset);
+		vertexRegions[region] = memory.slice().order(Buffers.NATIVE_ORDER).asFloatBuffer();
+		if (maxElements > 0) {
+			memory.limit(offset + vertexBytes + (maxElements << 2)).position(offset + vertexBytes);
+			elementRegions[region] = memory.slice().order(Buffers.NATIVE_ORDER).asIntBuffer();
+		}
+		memory.clear();
+	}
+
+	/**
+	 * Starts writing the next region, waiting for the GPU to finish with it if
+	 * needed.
+	 */
+	public StreamingMesh begin() {
+		ring.acquire();
+		int region = ring.getRegion();
+
+		if (!persistent) {
+			map(UNSYNCHRONIZED_FLAGS | GL30.GL_MAP_INVALIDATE_RANGE_BIT);
+		}
+
+		vertices = vertexRegions[region];
+		vertices.clear();
+		elements = elementRegions[region];
+		if (elements != null) elements.clear();
+		return this;
+	}
+
+	private void map(int flags) {
+		int region = ring.getRegion();
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		ByteBuffer memory = GL30.glMapBufferRange(GL15.GL_ARRAY_BUFFER,
+				ring.getOffset(), ring.getRegionSize(), flags);
+		createViews(memory, 0, region);
+		mapped = true;
+	}
+
+	private void remap() {
+		// draws only read what was written before them, so no need to invalidate
+		int vertexCount = vertices.position();
+		int elementCount = elements == null ? 0 : elements.position();
+		map(UNSYNCHRONIZED_FLAGS);
+		int region = ring.getRegion();
+		vertices = vertexRegions[region];
+		vertices.position(vertexCount);
+		elements = elementRegions[region];
+		if (elements != null) elements.position(elementCount);
+	}
+
+	private void unmap() {
+		GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+		GL15.glUnmapBuffer(GL15.GL_ARRAY_BUFFER);
+		mapped = false;
+	}
+
+	/**
+	 * @return the vertices of the current region, everything before the
+	 *         position is drawn
+	 */
+	public FloatBuffer getVertices() {
+		Validate.validState(ring.isAcquired(), "Mesh not begun!");
+		if (!persistent && !mapped) remap();
+		return vertices;
+	}
+
+	/**
+	 * @return the elements of the current region, everything before the
+	 *         position is drawn
+	 */
+	public IntBuffer getElements() {
+		Validate.validState(ring.isAcquired(), "Mesh not begun!");
+		Validate.validState(elementRegions[0] != null, "Mesh has no elements");
+		if (!persistent && !mapped) remap();
+		return elements;
+	}
+
+	public int getVertexCount() {
+		return vertices == null ? 0 : (vertices.position() << 2) / stride;
+	}
+
+	public int getElementCount() {
+		return elements == null ? 0 : elements.position();
+	}
+
+	public int getMaxVertices() {
+		return maxVertices;
+	}
+
+	public int getMaxElements() {
+		return maxElements;
+	}
+
+	public int getVertexArrayID() {
+		return vao;
+	}
+
+	public void bind() {
+		GL30.glBindVertexArray(vao);
+	}
+
+	public void draw() {
+		draw(GL11.GL_TRIANGLES);
+	}
+
+	/**
+	 * Draws what has been written to the current region so far. The mesh
+	 * must be bound.
+	 */
+	public void draw(int primitive) {
+		draw(primitive, 0, elements == null ? getVertexCount() : getElementCount());
+	}
+
+	/**
+	 * Draws part of what has been written to the current region, counted in
+	 * elements, or in vertices if the mesh has no elements. The mesh must be
+	 * bound.
+	 */
+	public void draw(int primitive, int first, int count) {
+		Validate.validState(ring.isAcquired(), "Mesh not begun!");
+		if (mapped) unmap();
+		if (count <= 0) return;
+
+		int baseVertex = ring.getOffset() / stride;
+		if (elements == null) {
+			GL11.glDrawArrays(primitive, baseVertex + first, count);
+		} else {
+			GL32.glDrawElementsBaseVertex(primitive, count, GL11.GL_UNSIGNED_INT,
+					ring.getOffset() + vertexBytes + (first << 2), baseVertex);
+		}
+	}
+
+	/**
+	 * Fences the current region. Call after the last {@link #draw(int)} for
+	 * this frame.
+	 */
+	public void end() {
+		if (mapped) unmap();
+		ring.release();
+	}
+
+	/**
+	 * @return how many times {@link #begin()} had to wait on the GPU
+	 */
+	public int getStallCount() {
+		return ring.getStallCount();
+	}
+
+	public void dispose() {
+		ring.dispose();
+		VideoResources.deleteVertexBuffer(vbo);
+		VideoResources.deleteVertexArray(vao);
+	}
+
+}
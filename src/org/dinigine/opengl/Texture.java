@@ -2,11 +2,16 @@ package org.dinigine.opengl;
 
 import java.nio.ByteBuffer;
 
+import org.apache.lang.Validate;
 import org.dinigine.decoder.ImageDecoder;
+import org.dinigine.decoder.KTXDecoder;
 import org.dinigine.util.Buffers;
+import org.lwjgl.opengl.GL;
 import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
 import org.lwjgl.opengl.GL13;
 import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GLCapabilities;
 
 public class Texture {
 
@@ -31,6 +36,70 @@ public class Texture {
 		GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, width, height, 0,
 				GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
 		GL30.glGenerateMipmap(GL11.GL_TEXTURE_2D);
+		// a full mip chain adds a third
+		VideoResources.setSize(VideoResources.TEXTURE, texture, ((long) width * height << 2) * 4 / 3);
+	}
+
+	/**
+	 * Uploads a KTX texture and every mip level it holds. Compressed levels
+	 * go to the GPU as they are, with no decoding.
+	 */
+	public Texture(KTXDecoder decoder) {
+		Validate.isTrue(isSupported(decoder.getInternalFormat()) || !decoder.isCompressed(),
+				"Unsupported compressed format: 0x%s", Integer.toHexString(decoder.getInternalFormat()));
+		this.width = decoder.getWidth();
+		this.height = decoder.getHeight();
+
+		int levels = decoder.getLevelCount();
+		long size = 0;
+		this.texture = VideoResources.createTexture();
+		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER,
+				levels > 1 ? GL11.GL_LINEAR_MIPMAP_LINEAR : GL11.GL_LINEAR);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL11.GL_REPEAT);
+		GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL12.GL_TEXTURE_MAX_LEVEL, levels - 1);
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+
+		for (int level = 0; level < levels; level++) {
+			int w = decoder.getLevelWidth(level), h = decoder.getLevelHeight(level);
+			if (decoder.isCompressed()) {
+				GL13.glCompressedTexImage2D(GL11.GL_TEXTURE_2D, level, decoder.getInternalFormat(), w, h, 0,
+						decoder.getLevel(level));
+			} else {
+				GL11.glTexImage2D(GL11.GL_TEXTURE_2D, level, decoder.getInternalFormat(), w, h, 0,
+						decoder.getFormat(), decoder.getType(), decoder.getLevel(level));
+			}
+			size += decoder.getLevel(level).remaining();
+		}
+		GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 4);
+		VideoResources.setSize(VideoResources.TEXTURE, texture, size);
+	}
+
+	/**
+	 * @return true if the current context can sample textures compressed
+	 *         with {@code internalFormat}
+	 */
+	public static boolean isSupported(int internalFormat) {
+		GLCapabilities caps = GL.getCapabilities();
+		switch (internalFormat) {
+		case KTXDecoder.COMPRESSED_RGB_S3TC_DXT1:
+		case KTXDecoder.COMPRESSED_RGBA_S3TC_DXT1:
+		case KTXDecoder.COMPRESSED_RGBA_S3TC_DXT5:
+			return caps.GL_EXT_texture_compression_s3tc;
+		case KTXDecoder.COMPRESSED_RGBA_BPTC_UNORM:
+		case KTXDecoder.COMPRESSED_SRGB_ALPHA_BPTC_UNORM:
+			return caps.OpenGL42 || caps.GL_ARB_texture_compression_bptc;
+		default:
+			return false;
+		}
+	}
+
+	Texture(int texture, int width, int height) {
+		this.texture = texture;
+		this.width = width;
+		this.height = height;
 	}
 
 	public void bind(int unit) {
@@ -38,6 +107,10 @@ public class Texture {
 		GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture);
 	}
 	
+	public int getID() {
+		return texture;
+	}
+
 	public int getWidth() {
 		return width;
 	}
@@ -47,7 +120,7 @@ public class Texture {
 	}
 
 	public void dispose() {
-		GL11.glDeleteTextures(texture);
+		VideoResources.deleteTexture(texture);
 	}
 
 }
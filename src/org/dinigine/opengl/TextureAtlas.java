@@ -0,0 +1,191 @@
+package org.dinigine.opengl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.lang.Validate;
+import org.dinigine.decoder.ImageDecoder;
+import org.dinigine.util.Buffers;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+
+/**
+ * Packs many small images into a few RGBA pages, so sprites drawn from the
+ * same page share one texture. Images are placed by a {@link SkylinePacker}
+ * as they are added, opening a new page when one fills up.
+ * {@link #addAll(Map)} sorts a whole set first for tighter packing.
+ * <p>
+ * Pages are kept in memory and (re)uploaded by {@link #upload()}.
+ */
+public class TextureAtlas {
+
+	private static final class Page {
+		final SkylinePacker packer;
+		final ByteBuffer pixels;
+		Texture texture;
+		boolean dirty;
+
+		Page(int width, int height, int padding) {
+			this.packer = new SkylinePacker(width, height, padding);
+			this.pixels = Buffers.newByteBuffer((width * height) << 2);
+		}
+	}
+
+	private final int pageWidth;
+	private final int pageHeight;
+	private final int padding;
+	private final List<Page> pages = new ArrayList<>();
+	private final Map<String, AtlasRegion> regions = new HashMap<>();
+
+	public TextureAtlas(int pageWidth, int pageHeight) {
+		this(pageWidth, pageHeight, 1);
+	}
+
+	/**
+	 * @param padding
+	 *            - empty pixels kept right of and below each image, to keep
+	 *            filtering from bleeding between neighbours
+	 */
+	public TextureAtlas(int pageWidth, int pageHeight, int padding) {
+		Validate.isTrue(pageWidth > 0 && pageHeight > 0, "Invalid page size");
+		this.pageWidth = pageWidth;
+		this.pageHeight = pageHeight;
+		this.padding = padding;
+	}
+
+	public AtlasRegion add(String name, ImageDecoder decoder) throws Exception {
+		int width = decoder.getWidth(), height = decoder.getHeight();
+		ByteBuffer pixels = Buffers.newByteBuffer(decoder.getSuggestedCapacity());
+		decoder.decode(pixels);
+		pixels.position(0);
+		return add(name, pixels, width, height);
+	}
+
+	/**
+	 * @param pixels
+	 *            - RGBA rows, read from the position
+	 */
+	public AtlasRegion add(String name, ByteBuffer pixels, int width, int height) {
+		Validate.isTrue(!regions.containsKey(name), "Duplicate region: %s", name);
+		Validate.isTrue(width + padding <= pageWidth && height + padding <= pageHeight,
+				"%s (%dx%d) doesn't fit on a page", name, width, height);
+
+		int index = pages.size() - 1;
+		long pos = index < 0 ? -1 : pages.get(index).packer.insert(width, height);
+		if (pos < 0) {
+			// earlier pages may still have holes for small images
+			for (index = 0; index < pages.size() - 1 && pos < 0; index++) {
+				pos = pages.get(index).packer.insert(width, height);
+			}
+			if (pos < 0) {
+				pages.add(new Page(pageWidth, pageHeight, padding));
+				index = pages.size() - 1;
+				pos = pages.get(index).packer.insert(width, height);
+			} else index--;
+		}
+
+		Page page = pages.get(index);
+		int x = SkylinePacker.getX(pos), y = SkylinePacker.getY(pos);
+		int row = width << 2, src = pixels.position();
+		for (int r = 0; r < height; r++) {
+			ByteBuffer line = pixels.duplicate();
+			line.limit(src + (r + 1) * row).position(src + r * row);
+			page.pixels.position(((y + r) * pageWidth + x) << 2);
+			page.pixels.put(line);
+		}
+		page.pixels.clear();
+		page.dirty = true;
+
+		AtlasRegion region = new AtlasRegion(this, name, index, x, y, width, height);
+		regions.put(name, region);
+		return region;
+	}
+
+	/**
+	 * Adds a set of images tallest first, which packs tighter than adding
+	 * them in arbitrary order.
+	 */
+	public List<AtlasRegion> addAll(Map<String, ImageDecoder> images) throws Exception {
+		List<Map.Entry<String, ImageDecoder>> sorted = new ArrayList<>(images.entrySet());
+		Collections.sort(sorted, new Comparator<Map.Entry<String, ImageDecoder>>() {
+			@Override
+			public int compare(Map.Entry<String, ImageDecoder> a, Map.Entry<String, ImageDecoder> b) {
+				return Integer.compare(b.getValue().getHeight(), a.getValue().getHeight());
+			}
+		});
+
+		List<AtlasRegion> added = new ArrayList<>(sorted.size());
+		for (Map.Entry<String, ImageDecoder> e : sorted) {
+			added.add(add(e.getKey(), e.getValue()));
+		}
+		return added;
+	}
+
+	public AtlasRegion get(String name) {
+		return regions.get(name);
+	}
+
+	/**
+	 * Sends every page that changed since the last upload to the GPU.
+	 */
+	public void upload() {
+		for (Page page : pages) {
+			if (!page.dirty) continue;
+			if (page.texture == null) {
+				int id = VideoResources.createTexture();
+				GL11.glBindTexture(GL11.GL_TEXTURE_2D, id);
+				GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
+				GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
+				GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+				GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+				GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, pageWidth, pageHeight, 0,
+						GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, page.pixels);
+				VideoResources.setSize(VideoResources.TEXTURE, id, (long) pageWidth * pageHeight << 2);
+				page.texture = new Texture(id, pageWidth, pageHeight);
+			} else {
+				GL11.glBindTexture(GL11.GL_TEXTURE_2D, page.texture.getID());
+				GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0, pageWidth, pageHeight,
+						GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, page.pixels);
+			}
+			page.dirty = false;
+		}
+	}
+
+	public Texture getTexture(int page) {
+		return pages.get(page).texture;
+	}
+
+	public int getPageCount() {
+		return pages.size();
+	}
+
+	public int getPageWidth() {
+		return pageWidth;
+	}
+
+	public int getPageHeight() {
+		return pageHeight;
+	}
+
+	/**
+	 * @return the fraction of a page covered by images
+	 */
+	public float getOccupancy(int page) {
+		return pages.get(page).packer.getOccupancy();
+	}
+
+	public void dispose() {
+		for (Page page : pages) {
+			if (page.texture != null) {
+				VideoResources.deleteTexture(page.texture.getID());
+				page.texture = null;
+			}
+		}
+	}
+
+}
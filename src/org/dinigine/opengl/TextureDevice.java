@@ -0,0 +1,30 @@
+package org.dinigine.opengl;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The texture calls a {@link TextureLoader} makes on the render thread.
+ * {@link #GL} uploads through a pixel buffer object, anything else (such as a
+ * recording fake) can stand in for it.
+ */
+public interface TextureDevice {
+
+	TextureDevice GL = new GLTextureDevice();
+
+	/**
+	 * @return a new RGBA texture with storage for its base level
+	 */
+	int createTexture(int width, int height);
+
+	/**
+	 * Uploads rows {@code y} to {@code y + rows} of RGBA pixels, read from the
+	 * position of {@code pixels}.
+	 */
+	void uploadRows(int texture, int width, int y, int rows, ByteBuffer pixels);
+
+	/**
+	 * Called once every row is uploaded.
+	 */
+	void finish(int texture);
+
+}
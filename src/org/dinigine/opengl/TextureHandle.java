@@ -0,0 +1,82 @@
+package org.dinigine.opengl;
+
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL13;
+
+/**
+ * A texture being loaded by a {@link TextureLoader}. It can be bound at any
+ * time, binding nothing until the texture is resident.
+ */
+public final class TextureHandle {
+
+	private volatile int width;
+	private volatile int height;
+	private volatile Texture texture;
+	private volatile Throwable error;
+
+	TextureHandle() {}
+
+	public boolean isResident() {
+		return texture != null;
+	}
+
+	public boolean isFailed() {
+		return error != null;
+	}
+
+	public boolean isDone() {
+		return texture != null || error != null;
+	}
+
+	/**
+	 * @return why loading failed, or null
+	 */
+	public Throwable getError() {
+		return error;
+	}
+
+	/**
+	 * @return the texture, or null until it is resident
+	 */
+	public Texture getTexture() {
+		return texture;
+	}
+
+	/**
+	 * @return the width, or 0 until the image is decoded
+	 */
+	public int getWidth() {
+		return width;
+	}
+
+	/**
+	 * @return the height, or 0 until the image is decoded
+	 */
+	public int getHeight() {
+		return height;
+	}
+
+	public void bind(int unit) {
+		Texture t = texture;
+		if (t != null) {
+			t.bind(unit);
+		} else {
+			GL13.glActiveTexture(GL13.GL_TEXTURE0 + unit);
+			GL11.glBindTexture(GL11.GL_TEXTURE_2D, 0);
+		}
+	}
+
+	void setSize(int width, int height) {
+		this.width = width;
+		this.height = height;
+	}
+
+	void setTexture(Texture texture) {
+		this.texture = texture;
+	}
+
+	void setError(Throwable error) {
+		this.error = error;
+	}
+
+}
@@ -0,0 +1,188 @@
+package org.dinigine.opengl;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+
+import org.apache.lang.Validate;
+import org.dinigine.decoder.ImageDecoder;
+import org.dinigine.util.BufferPool;
+import org.dinigine.util.Log;
+
+/**
+ * Loads textures without stalling the render thread. Images are decoded on
+ * worker threads into pooled staging buffers, then {@link #update()} uploads
+ * them a few rows at a time under a per-frame byte budget, so a large texture
+ * spreads over several frames instead of causing a hitch.
+ *
+ * <pre>
+ * TextureHandle grass = loader.load(() -&gt; new FileInputStream("grass.png"));
+ * ...
+ * loader.update(); // once per frame, on the render thread
+ * grass.bind(0);
+ * </pre>
+ */
+public class TextureLoader {
+
+	private static final long DEFAULT_POOL_SIZE = 64L << 20;
+
+	private static final class Upload {
+		final TextureHandle handle;
+		final ByteBuffer pixels;
+		final int width, height;
+		int texture;
+		int row;
+
+		Upload(TextureHandle handle, ByteBuffer pixels, int width, int height) {
+			this.handle = handle;
+			this.pixels = pixels;
+			this.width = width;
+			this.height = height;
+		}
+	}
+
+	private final Executor workers;
+	private final TextureDevice device;
+	private final BufferPool staging;
+	private final ConcurrentLinkedQueue<Upload> decoded = new ConcurrentLinkedQueue<>();
+	private final ArrayDeque<Upload> uploads = new ArrayDeque<>();
+
+	private long budget;
+	private long uploadedBytes;
+	private int completed;
+
+	public TextureLoader(Executor workers, long bytesPerFrame) {
+		this(workers, TextureDevice.GL, new BufferPool(DEFAULT_POOL_SIZE), bytesPerFrame);
+	}
+
+	public TextureLoader(Executor workers, TextureDevice device, BufferPool staging, long bytesPerFrame) {
+		Validate.notNull(workers, "workers");
+		Validate.notNull(device, "device");
+		Validate.notNull(staging, "staging");
+		Validate.isTrue(bytesPerFrame > 0, "Budget must be positive");
+		this.workers = workers;
+		this.device = device;
+		this.staging = staging;
+		this.budget = bytesPerFrame;
+	}
+
+	/**
+	 * Decodes a PNG on a worker thread. The stream is opened and closed on
+	 * that thread.
+	 */
+	public TextureHandle load(final Callable<? extends InputStream> source) {
+		final TextureHandle handle = new TextureHandle();
+		workers.execute(new Runnable() {
+			@Override
+			public void run() {
+				decode(handle, source);
+			}
+		});
+		return handle;
+	}
+
+	/**
+	 * Queues already decoded RGBA pixels, from the position of {@code pixels},
+	 * for upload. May be called from any thread. The buffer must be direct,
+	 * and is released to the staging pool once uploaded.
+	 */
+	public TextureHandle load(ByteBuffer pixels, int width, int height) {
+		Validate.isTrue(width > 0 && height > 0, "Texture size must be positive");
+		Validate.isTrue(pixels.isDirect() && pixels.remaining() >= (long) width * height * 4,
+				"Need a direct buffer with %s bytes remaining", (long) width * height * 4);
+		TextureHandle handle = new TextureHandle();
+		handle.setSize(width, height);
+		decoded.offer(new Upload(handle, pixels, width, height));
+		return handle;
+	}
+
+	private void decode(TextureHandle handle, Callable<? extends InputStream> source) {
+		ByteBuffer pixels = null;
+		try (InputStream in = source.call()) {
+			ImageDecoder decoder = new ImageDecoder(in);
+			int width = decoder.getWidth(), height = decoder.getHeight();
+			pixels = staging.acquire(decoder.getSuggestedCapacity());
+			decoder.decode(pixels);
+			pixels.position(0);
+			handle.setSize(width, height);
+			decoded.offer(new Upload(handle, pixels, width, height));
+		} catch (Throwable e) {
+			Log.warn("[TextureLoader] Couldn't decode texture", e);
+			if (pixels != null) staging.release(pixels);
+			handle.setError(e);
+		}
+	}
+
+	/**
+	 * Uploads decoded textures until this frame's budget is spent. At least
+	 * one row is uploaded per call so even a tiny budget makes progress. Must
+	 * be called on the render thread.
+	 */
+	public void update() {
+		for (Upload u; (u = decoded.poll()) != null;) {
+			uploads.add(u);
+		}
+
+		long remaining = budget;
+		uploadedBytes = 0;
+		while (!uploads.isEmpty() && (remaining > 0 || uploadedBytes == 0)) {
+			Upload u = uploads.peek();
+			if (u.texture == 0) {
+				u.texture = device.createTexture(u.width, u.height);
+			}
+
+			long rowBytes = (long) u.width << 2;
+			int rows = (int) Math.min(u.height - u.row, Math.max(1, remaining / rowBytes));
+			int start = u.pixels.position();
+			u.pixels.position(start + (int) (u.row * rowBytes));
+			device.uploadRows(u.texture, u.width, u.row, rows, u.pixels);
+			u.pixels.position(start);
+
+			u.row += rows;
+			remaining -= rows * rowBytes;
+			uploadedBytes += rows * rowBytes;
+
+			if (u.row == u.height) {
+				uploads.poll();
+				device.finish(u.texture);
+				staging.release(u.pixels);
+				u.handle.setTexture(new Texture(u.texture, u.width, u.height));
+				completed++;
+			}
+		}
+	}
+
+	public void setBudget(long bytesPerFrame) {
+		Validate.isTrue(bytesPerFrame > 0, "Budget must be positive");
+		this.budget = bytesPerFrame;
+	}
+
+	public long getBudget() {
+		return budget;
+	}
+
+	/**
+	 * @return bytes uploaded by the last {@link #update()}
+	 */
+	public long getUploadedBytes() {
+		return uploadedBytes;
+	}
+
+	/**
+	 * @return textures decoded but not yet fully uploaded
+	 */
+	public int getPendingCount() {
+		return uploads.size() + decoded.size();
+	}
+
+	/**
+	 * @return textures made resident so far
+	 */
+	public int getCompletedCount() {
+		return completed;
+	}
+
+}
@@ -0,0 +1,174 @@
+package org.dinigine.opengl;
+
+import java.nio.ByteBuffer;
+
+import org.dinigine.math.Mat4;
+import org.dinigine.math.Vec2;
+import org.dinigine.math.Vec3;
+import org.dinigine.math.Vec4;
+import org.dinigine.util.Buffers;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL31;
+
+/**
+ * A uniform buffer laid out by a {@link Std140Layout}, bound to one binding
+ * point and shared by every program that maps a block to it with
+ * {@link Shader#setUniformBlock(String, int)}.
+ * <p>
+ * Writes only touch the CPU copy and widen a dirty range, {@link #upload()}
+ * then sends that range once.
+ */
+public class UniformBlock {
+
+	private final ByteBuffer data;
+	private final int binding;
+	private int ubo;
+
+	private int dirtyStart;
+	private int dirtyEnd;
+
+	public UniformBlock(Std140Layout layout, int binding) {
+		this(layout.size(), binding);
+	}
+
+	public UniformBlock(int size, int binding) {
+		this.data = Buffers.newByteBuffer(size);
+		this.binding = binding;
+		this.dirtyStart = 0;
+		this.dirtyEnd = size;
+	}
+
+	public int getBinding() {
+		return binding;
+	}
+
+	public int size() {
+		return data.capacity();
+	}
+
+	/**
+	 * @return the CPU copy of the block
+	 */
+	public ByteBuffer getData() {
+		return data;
+	}
+
+	public boolean isDirty() {
+		return dirtyStart < dirtyEnd;
+	}
+
+	public int getDirtyStart() {
+		return dirtyStart;
+	}
+
+	public int getDirtyEnd() {
+		return dirtyEnd;
+	}
+
+	public UniformBlock set(int offset, int i) {
+		data.putInt(offset, i);
+		touch(offset, 4);
+		return this;
+	}
+
+	public UniformBlock set(int offset, float f) {
+		data.putFloat(offset, f);
+		touch(offset, 4);
+		return this;
+	}
+
+	public UniformBlock set(int offset, Vec2 v) {
+		data.putFloat(offset, v.x);
+		data.putFloat(offset + 4, v.y);
+		touch(offset, 8);
+		return this;
+	}
+
+	public UniformBlock set(int offset, Vec3 v) {
+		data.putFloat(offset, v.x);
+		data.putFloat(offset + 4, v.y);
+		data.putFloat(offset + 8, v.z);
+		touch(offset, 12);
+		return this;
+	}
+
+	public UniformBlock set(int offset, Vec4 v) {
+		data.putFloat(offset, v.x);
+		data.putFloat(offset + 4, v.y);
+		data.putFloat(offset + 8, v.z);
+		data.putFloat(offset + 12, v.w);
+		touch(offset, 16);
+		return this;
+	}
+
+	public UniformBlock set(int offset, Mat4 m) {
+		data.putFloat(offset, m.m00);
+		data.putFloat(offset + 4, m.m01);
+		data.putFloat(offset + 8, m.m02);
+		data.putFloat(offset + 12, m.m03);
+		data.putFloat(offset + 16, m.m10);
+		data.putFloat(offset + 20, m.m11);
+		data.putFloat(offset + 24, m.m12);
+		data.putFloat(offset + 28, m.m13);
+		data.putFloat(offset + 32, m.m20);
+		data.putFloat(offset + 36, m.m21);
+		data.putFloat(offset + 40, m.m22);
+		data.putFloat(offset + 44, m.m23);
+		data.putFloat(offset + 48, m.m30);
+		data.putFloat(offset + 52, m.m31);
+		data.putFloat(offset + 56, m.m32);
+		data.putFloat(offset + 60, m.m33);
+		touch(offset, 64);
+		return this;
+	}
+
+	private void touch(int offset, int length) {
+		if (dirtyStart >= dirtyEnd) {
+			dirtyStart = offset;
+			dirtyEnd = offset + length;
+		} else {
+			if (offset < dirtyStart) dirtyStart = offset;
+			if (offset + length > dirtyEnd) dirtyEnd = offset + length;
+		}
+	}
+
+	/**
+	 * Sends everything written since the last upload to the GPU.
+	 */
+	public void upload() {
+		if (ubo == 0) {
+			ubo = VideoResources.createVertexBuffer();
+			GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, ubo);
+			GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, data.capacity(), GL15.GL_DYNAMIC_DRAW);
+			VideoResources.setSize(VideoResources.VERTEX_BUFFER, ubo, data.capacity());
+		} else if (!isDirty()) {
+			return;
+		} else {
+			GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, ubo);
+		}
+
+		if (isDirty()) {
+			data.limit(dirtyEnd).position(dirtyStart);
+			GL15.glBufferSubData(GL31.GL_UNIFORM_BUFFER, dirtyStart, data);
+			data.clear();
+		}
+		dirtyStart = dirtyEnd = 0;
+	}
+
+	/**
+	 * Binds the block to its binding point, once per frame is enough for
+	 * every program using it.
+	 */
+	public void bind() {
+		GL30.glBindBufferBase(GL31.GL_UNIFORM_BUFFER, binding, ubo);
+	}
+
+	public void dispose() {
+		if (ubo != 0) {
+			VideoResources.deleteVertexBuffer(ubo);
+			ubo = 0;
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package org.dinigine.opengl;
+
+import org.dinigine.math.Mat4;
+import org.dinigine.math.Vec2;
+import org.dinigine.math.Vec3;
+import org.dinigine.math.Vec4;
+
+/**
+ * A uniform of a {@link Shader}, looked up once with
+ * {@link Shader#uniform(String)}. Setting a value the uniform already holds
+ * does not reach the driver. Like the shader's setters, values go to the
+ * program currently in use.
+ */
+public final class UniformHandle {
+
+	private final Shader shader;
+	private final int slot;
+
+	UniformHandle(Shader shader, int slot) {
+		this.shader = shader;
+		this.slot = slot;
+	}
+
+	public Shader getShader() {
+		return shader;
+	}
+
+	public int getLocation() {
+		return shader.getLocation(slot);
+	}
+
+	/**
+	 * @return false if the program has no active uniform by this name
+	 */
+	public boolean exists() {
+		return getLocation() != -1;
+	}
+
+	public UniformHandle set(boolean b) {
+		shader.set1i(slot, b ? 1 : 0);
+		return this;
+	}
+
+	public UniformHandle set(int i) {
+		shader.set1i(slot, i);
+		return this;
+	}
+
+	public UniformHandle set(float f) {
+		shader.set1f(slot, f);
+		return this;
+	}
+
+	public UniformHandle set(Vec2 v) {
+		shader.set2f(slot, v.x, v.y);
+		return this;
+	}
+
+	public UniformHandle set(float x, float y) {
+		shader.set2f(slot, x, y);
+		return this;
+	}
+
+	public UniformHandle set(Vec3 v) {
+		shader.set3f(slot, v.x, v.y, v.z);
+		return this;
+	}
+
+	public UniformHandle set(float x, float y, float z) {
+		shader.set3f(slot, x, y, z);
+		return this;
+	}
+
+	public UniformHandle set(Vec4 v) {
+		shader.set4f(slot, v.x, v.y, v.z, v.w);
+		return this;
+	}
+
+	public UniformHandle set(float x, float y, float z, float w) {
+		shader.set4f(slot, x, y, z, w);
+		return this;
+	}
+
+	public UniformHandle set(Mat4 m) {
+		shader.setMat4(slot, m);
+		return this;
+	}
+
+}
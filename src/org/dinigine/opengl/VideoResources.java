@@ -1,115 +1,154 @@
 package org.dinigine.opengl;
 
-import java.util.ArrayList;
-import java.util.List;
-
+import org.dinigine.util.Log;
 import org.lwjgl.opengl.GL11;
 import org.lwjgl.opengl.GL15;
 import org.lwjgl.opengl.GL20;
 import org.lwjgl.opengl.GL30;
 
+/**
+ * Creates and deletes GL objects, keeping track of them in a
+ * {@link ResourceRegistry} so whatever is left can be deleted with the window
+ * and reported on.
+ */
 public final class VideoResources {
 
 	private VideoResources() {}
 
-	private static final List<Integer> vertexArrays = new ArrayList();
-	private static final List<Integer> vertexBuffers = new ArrayList();
-	private static final List<Integer> frameBuffers = new ArrayList();
-	private static final List<Integer> renderBuffers = new ArrayList();
-	private static final List<Integer> textures = new ArrayList();
-	private static final List<Integer> shaders = new ArrayList();
+	public static final int VERTEX_ARRAY = 0,
+			VERTEX_BUFFER = 1,
+			FRAME_BUFFER = 2,
+			RENDER_BUFFER = 3,
+			TEXTURE = 4,
+			SHADER = 5;
+
+	private static final ResourceRegistry registry = new ResourceRegistry(
+			"vertex arrays", "buffers", "frame buffers", "render buffers", "textures", "shaders");
 
 	public static int createVertexArray() {
 		int id = GL30.glGenVertexArrays();
-		vertexArrays.add(id);
+		registry.add(VERTEX_ARRAY, id);
 		return id;
 	}
 
 	public static int createVertexBuffer() {
 		int id = GL15.glGenBuffers();
-		vertexBuffers.add(id);
+		registry.add(VERTEX_BUFFER, id);
 		return id;
 	}
 
 	public static int createFrameBuffer() {
 		int id = GL30.glGenFramebuffers();
-		frameBuffers.add(id);
+		registry.add(FRAME_BUFFER, id);
 		return id;
 	}
 
 	public static int createRenderBuffer() {
 		int id = GL30.glGenRenderbuffers();
-		renderBuffers.add(id);
+		registry.add(RENDER_BUFFER, id);
 		return id;
 	}
 
 	public static int createTexture() {
 		int id = GL11.glGenTextures();
-		textures.add(id);
+		registry.add(TEXTURE, id);
 		return id;
 	}
 
 	public static int createShader() {
 		int id = GL20.glCreateProgram();
-		shaders.add(id);
+		registry.add(SHADER, id);
 		return id;
 	}
 
-	public static void deleteVertexArray(Integer id) {
+	public static void deleteVertexArray(int id) {
 		GL30.glDeleteVertexArrays(id);
-		vertexArrays.remove(id);
+		registry.remove(VERTEX_ARRAY, id);
 	}
 
-	public static void deleteVertexBuffer(Integer id) {
+	public static void deleteVertexBuffer(int id) {
 		GL15.glDeleteBuffers(id);
-		vertexBuffers.remove(id);
+		registry.remove(VERTEX_BUFFER, id);
 	}
 
-	public static void deleteFrameBuffer(Integer id) {
+	public static void deleteFrameBuffer(int id) {
 		GL30.glDeleteFramebuffers(id);
-		frameBuffers.remove(id);
+		registry.remove(FRAME_BUFFER, id);
 	}
 
-	public static void deleteRenderBuffer(Integer id) {
+	public static void deleteRenderBuffer(int id) {
 		GL30.glDeleteRenderbuffers(id);
-		renderBuffers.remove(id);
+		registry.remove(RENDER_BUFFER, id);
 	}
 
-	public static void deleteTexture(Integer id) {
+	public static void deleteTexture(int id) {
 		GL11.glDeleteTextures(id);
-		textures.remove(id);
+		registry.remove(TEXTURE, id);
 	}
 
-	public static void deleteShader(Integer id) {
+	public static void deleteShader(int id) {
 		GL20.glDeleteProgram(id);
-		shaders.remove(id);
+		registry.remove(SHADER, id);
+	}
+
+	/**
+	 * @return a handle to the object, which unlike its id goes stale once the
+	 *         object is deleted, or 0 if there is no such object
+	 */
+	public static long getHandle(int type, int id) {
+		return registry.getHandle(type, id);
+	}
+
+	/**
+	 * @return the id of the handle's object
+	 * @throws IllegalStateException
+	 *             if the object has been deleted
+	 */
+	public static int getID(long handle) {
+		return registry.getId(handle);
+	}
+
+	public static boolean isValid(long handle) {
+		return registry.isValid(handle);
+	}
+
+	/**
+	 * Sets roughly how much video memory an object takes, after its storage
+	 * is allocated or resized.
+	 */
+	public static void setSize(int type, int id, long bytes) {
+		registry.setBytes(type, id, bytes);
 	}
 
+	/**
+	 * Remembers where every object created from now on was created, so
+	 * {@link #dispose()} can report the ones never deleted.
+	 */
+	public static void setLeakTracking(boolean enabled) {
+		registry.setCaptureSites(enabled);
+	}
+
+	public static ResourceRegistry getRegistry() {
+		return registry;
+	}
+
+	/**
+	 * Deletes everything still alive, as a batch per type.
+	 */
 	public static void dispose() {
-		Object[] ids = vertexArrays.toArray();
-		for (Object i : ids) {
-			deleteVertexArray((Integer) i);
-		}
-		ids = vertexBuffers.toArray();
-		for (Object i : ids) {
-			deleteVertexBuffer((Integer) i);
+		if (registry.isCapturingSites() && registry.size() > 0) {
+			Log.warn(registry.getLeakReport());
 		}
-		ids = frameBuffers.toArray();
-		for (Object i : ids) {
-			deleteFrameBuffer((Integer) i);
-		}
-		ids = renderBuffers.toArray();
-		for (Object i : ids) {
-			deleteRenderBuffer((Integer) i);
-		}
-		ids = textures.toArray();
-		for (Object i : ids) {
-			deleteTexture((Integer) i);
-		}
-		ids = shaders.toArray();
-		for (Object i : ids) {
-			deleteShader((Integer) i);
+
+		GL30.glDeleteVertexArrays(registry.getIds(VERTEX_ARRAY));
+		GL15.glDeleteBuffers(registry.getIds(VERTEX_BUFFER));
+		GL30.glDeleteFramebuffers(registry.getIds(FRAME_BUFFER));
+		GL30.glDeleteRenderbuffers(registry.getIds(RENDER_BUFFER));
+		GL11.glDeleteTextures(registry.getIds(TEXTURE));
+		for (int id : registry.getIds(SHADER)) {
+			GL20.glDeleteProgram(id);
 		}
+		registry.clear();
 	}
 
 }
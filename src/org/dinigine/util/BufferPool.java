@@ -0,0 +1,81 @@
+package org.dinigine.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.lang.Validate;
+
+/**
+ * A thread safe pool of direct byte buffers, bucketed by power of two
+ * capacity so buffers of similar sizes get reused.
+ *
+ * @see Buffers#newByteBuffer(int)
+ */
+public class BufferPool {
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private final ConcurrentLinkedQueue<ByteBuffer>[] buckets = new ConcurrentLinkedQueue[31];
+	private final long maxPooledBytes;
+	private final AtomicLong pooledBytes = new AtomicLong();
+
+	/**
+	 * @param maxPooledBytes
+	 *            - released buffers beyond this many pooled bytes are left to
+	 *            the garbage collector
+	 */
+	public BufferPool(long maxPooledBytes) {
+		this.maxPooledBytes = maxPooledBytes;
+		for (int i = 0; i < buckets.length; i++) {
+			buckets[i] = new ConcurrentLinkedQueue<>();
+		}
+	}
+
+	/**
+	 * @param size
+	 *            - the minimum capacity needed, at most 2^30
+	 * @return a cleared buffer with a limit of {@code size}
+	 */
+	public ByteBuffer acquire(int size) {
+		Validate.isTrue(size >= 0 && size <= 1 << 30, "Buffer size out of range: %s", size);
+		int bucket = bucketOf(size);
+		ByteBuffer buf = buckets[bucket].poll();
+		if (buf == null) {
+			buf = Buffers.newByteBuffer(1 << bucket);
+		} else {
+			pooledBytes.addAndGet(-buf.capacity());
+		}
+		buf.clear().limit(size);
+		return buf;
+	}
+
+	/**
+	 * Hands a buffer from {@link #acquire(int)} back to the pool. It must not
+	 * be used afterwards. Heap buffers are never pooled.
+	 */
+	public void release(ByteBuffer buf) {
+		int capacity = buf.capacity();
+		if (!buf.isDirect() || Integer.bitCount(capacity) != 1) return;
+		if (pooledBytes.addAndGet(capacity) > maxPooledBytes) {
+			pooledBytes.addAndGet(-capacity);
+			return;
+		}
+		buckets[Integer.numberOfTrailingZeros(capacity)].offer(buf);
+	}
+
+	public long getPooledBytes() {
+		return pooledBytes.get();
+	}
+
+	public void clear() {
+		for (ConcurrentLinkedQueue<ByteBuffer> bucket : buckets) {
+			bucket.clear();
+		}
+		pooledBytes.set(0);
+	}
+
+	private static int bucketOf(int size) {
+		return size <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(size - 1);
+	}
+
+}
@@ -0,0 +1,45 @@
+package org.dinigine.util;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A source of time for the game loop, which tests can replace with one they
+ * advance themselves.
+ */
+public interface Clock {
+
+	Clock SYSTEM = new Clock() {
+		@Override
+		public long nanoTime() {
+			return System.nanoTime();
+		}
+
+		@Override
+		public void sleep(long nanos) {
+			LockSupport.parkNanos(nanos);
+		}
+
+		@Override
+		public void spin() {
+			Thread.yield();
+		}
+	};
+
+	/**
+	 * @return nanoseconds from an arbitrary origin, never going backwards
+	 */
+	long nanoTime();
+
+	/**
+	 * Sleeps for about {@code nanos}, maybe longer or, if interrupted,
+	 * shorter.
+	 */
+	void sleep(long nanos);
+
+	/**
+	 * Called over and over while busy waiting, so a fake clock must move on
+	 * here for a wait to end.
+	 */
+	void spin();
+
+}
@@ -0,0 +1,78 @@
+package org.dinigine.util;
+
+/**
+ * Holds frames to a target rate. It sleeps through most of the wait, then
+ * spins for the last stretch, since sleeps can overshoot by a millisecond or
+ * more. The stretch adapts to the largest overshoot seen lately.
+ */
+public class FrameLimiter {
+
+	private static final long MIN_SPIN = 200000;
+	private static final long INITIAL_SPIN = 2000000;
+
+	private final Clock clock;
+	private long period;
+	private long next;
+	private boolean started;
+	private long spin = INITIAL_SPIN;
+
+	public FrameLimiter(int fps) {
+		this(Clock.SYSTEM, fps);
+	}
+
+	public FrameLimiter(Clock clock, int fps) {
+		this.clock = clock;
+		setTargetFps(fps);
+	}
+
+	public void setTargetFps(int fps) {
+		if (fps <= 0) throw new IllegalArgumentException("Frame rate must be positive: " + fps);
+		period = 1000000000L / fps;
+		started = false;
+	}
+
+	public int getTargetFps() {
+		return (int) (1000000000L / period);
+	}
+
+	/**
+	 * @return nanoseconds spent spinning after each sleep
+	 */
+	public long getSpinTime() {
+		return spin;
+	}
+
+	/**
+	 * Waits until the current frame's time is up. A frame that ran over by
+	 * more than a whole period starts the schedule again rather than letting
+	 * the next ones rush to catch up.
+	 *
+	 * @return nanoseconds waited
+	 */
+	public long sync() {
+		long start = clock.nanoTime();
+		if (!started || start - next > period) {
+			started = true;
+			next = start + period;
+			return 0;
+		}
+
+		long now = start;
+		long sleep = next - now - spin;
+		if (sleep > 0) {
+			clock.sleep(sleep);
+			now = clock.nanoTime();
+			long over = now - start - sleep;
+			// decay slowly so one bad sleep doesn't spin for long
+			spin = Math.max(MIN_SPIN, Math.max(over + over / 4, spin - spin / 16));
+			spin = Math.min(spin, period);
+		}
+		while (next - now > 0) {
+			clock.spin();
+			now = clock.nanoTime();
+		}
+		next += period;
+		return now - start;
+	}
+
+}
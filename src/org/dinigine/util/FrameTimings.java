@@ -0,0 +1,126 @@
+package org.dinigine.util;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.dinigine.math.Maths;
+
+/**
+ * The timings of the last few frames, in nanoseconds. One thread records
+ * frames, and any thread can read them without locks: a reader copies what it
+ * wants, then drops any frames the writer overwrote while it was copying.
+ */
+public class FrameTimings {
+
+	/** Time since the start of the previous frame */
+	public static final int FRAME = 0;
+	public static final int UPDATE = 1;
+	public static final int RENDER = 2;
+	public static final int SWAP = 3;
+	/** Garbage collection during the frame, to the millisecond */
+	public static final int GC = 4;
+	/** Time the frame limiter waited */
+	public static final int IDLE = 5;
+	public static final int METRICS = 6;
+
+	private static final String[] NAMES = { "frame", "update", "render", "swap", "gc", "idle" };
+
+	private final AtomicLongArray values;
+	private final int mask;
+	/** Frames recorded, published after their values */
+	private final AtomicLong written = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            - frames kept, rounded up to a power of two
+	 */
+	public FrameTimings(int capacity) {
+		if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity) size <<= 1;
+		values = new AtomicLongArray(size * METRICS);
+		mask = size - 1;
+	}
+
+	/**
+	 * Records a frame. Only one thread may call this.
+	 */
+	public void record(long frame, long update, long render, long swap, long gc, long idle) {
+		long n = written.get();
+		int i = (int) (n & mask) * METRICS;
+		values.lazySet(i + FRAME, frame);
+		values.lazySet(i + UPDATE, update);
+		values.lazySet(i + RENDER, render);
+		values.lazySet(i + SWAP, swap);
+		values.lazySet(i + GC, gc);
+		values.lazySet(i + IDLE, idle);
+		written.lazySet(n + 1);
+	}
+
+	/**
+	 * @return frames recorded so far, including those no longer kept
+	 */
+	public long getFrameCount() {
+		return written.get();
+	}
+
+	public int getCapacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Copies one metric of the most recent frames, oldest first.
+	 *
+	 * @param dest
+	 *            - where to copy, as many frames as fit
+	 * @return how many were copied
+	 */
+	public int snapshot(int metric, long[] dest) {
+		if (metric < 0 || metric >= METRICS) throw new IllegalArgumentException("Unknown metric: " + metric);
+		long end = written.get();
+		long start = Math.max(0, end - Math.min(dest.length, mask + 1));
+		for (long n = start; n < end; n++) {
+			dest[(int) (n - start)] = values.get((int) (n & mask) * METRICS + metric);
+		}
+		// the writer reuses the slot of frame n - capacity for frame n
+		long valid = Math.max(start, written.get() - mask);
+		int count = (int) (end - valid);
+		if (valid > start && count > 0) {
+			System.arraycopy(dest, (int) (valid - start), dest, 0, count);
+		}
+		return Math.max(count, 0);
+	}
+
+	/**
+	 * @param p
+	 *            - the percentile, between [0 -> 100]
+	 * @param scratch
+	 *            - room for the frames to look at, sorted in place
+	 * @return the metric's value at the percentile over the recent frames, or
+	 *         0 if there are none
+	 */
+	public long percentile(int metric, double p, long[] scratch) {
+		int count = snapshot(metric, scratch);
+		if (count == 0) return 0;
+		Arrays.sort(scratch, 0, count);
+		int i = (int) Math.ceil(p / 100 * count) - 1;
+		return scratch[Math.max(0, Math.min(count - 1, i))];
+	}
+
+	/**
+	 * @return p50 and p99 of every metric in milliseconds, for logging
+	 */
+	public String report() {
+		long[] scratch = new long[mask + 1];
+		StringBuilder builder = new StringBuilder();
+		for (int metric = 0; metric < METRICS; metric++) {
+			if (metric > 0) builder.append(", ");
+			builder.append(NAMES[metric]).append(' ')
+					.append(Maths.format(percentile(metric, 50, scratch) / 1e6)).append('/')
+					.append(Maths.format(percentile(metric, 99, scratch) / 1e6));
+		}
+		return builder.append(" ms (p50/p99)").toString();
+	}
+
+}
@@ -0,0 +1,186 @@
+package org.dinigine.util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+
+/**
+ * Drives a game with a fixed simulation step and a free render rate. Each
+ * frame runs as many whole steps as the time since the last frame allows, then
+ * renders with how far the simulation is into the next step, so motion can be
+ * interpolated between the last two states.
+ *
+ * <pre>
+ * GameLoop loop = new GameLoop(60);
+ * loop.setTargetFps(144);
+ * Display.run(loop, game);
+ * </pre>
+ *
+ * Nothing here touches the window, so with a fake {@link Clock} it runs
+ * anywhere.
+ */
+public class GameLoop {
+
+	public interface Game {
+
+		/**
+		 * Advances the simulation by one step.
+		 *
+		 * @param step
+		 *            - seconds per step, always the same
+		 */
+		void update(float step);
+
+		/**
+		 * @param alpha
+		 *            - how far between the last update and the next one to
+		 *            draw, between [0 -> 1)
+		 */
+		void render(float alpha);
+
+	}
+
+	private static final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+
+	private final Clock clock;
+	private final long step;
+	private final float stepSeconds;
+	private int maxSteps = 5;
+	private FrameLimiter limiter;
+	private final FrameTimings timings = new FrameTimings(512);
+
+	private boolean started;
+	private long last;
+	private long accumulator;
+	private long lastGC;
+	private float alpha;
+	private float deltaTime;
+	private long steps;
+	private long dropped;
+
+	/**
+	 * @param stepsPerSecond
+	 *            - simulation steps per second
+	 */
+	public GameLoop(double stepsPerSecond) {
+		this(Clock.SYSTEM, stepsPerSecond);
+	}
+
+	public GameLoop(Clock clock, double stepsPerSecond) {
+		if (!(stepsPerSecond > 0)) throw new IllegalArgumentException("Step rate must be positive: " + stepsPerSecond);
+		this.clock = clock;
+		this.step = Math.max(1, Math.round(1e9 / stepsPerSecond));
+		this.stepSeconds = (float) (step / 1e9);
+	}
+
+	/**
+	 * Limits the frame rate, or not with 0.
+	 */
+	public void setTargetFps(int fps) {
+		if (fps == 0) limiter = null;
+		else if (limiter == null) limiter = new FrameLimiter(clock, fps);
+		else limiter.setTargetFps(fps);
+	}
+
+	/**
+	 * Caps the steps run in one frame. If the simulation can't keep up, time
+	 * past the cap is dropped and the game slows down, rather than every
+	 * frame taking longer to catch up than the last.
+	 */
+	public void setMaxStepsPerFrame(int maxSteps) {
+		if (maxSteps <= 0) throw new IllegalArgumentException("Need at least one step per frame");
+		this.maxSteps = maxSteps;
+	}
+
+	/**
+	 * Runs one frame: the updates that are due, a render, then {@code swap} if
+	 * it isn't null, then waits for the frame limiter.
+	 */
+	public void frame(Game game, Runnable swap) {
+		long start = clock.nanoTime();
+		long elapsed = started ? start - last : step;
+		if (!started) {
+			started = true;
+			lastGC = gcTime();
+		}
+		last = start;
+		deltaTime = elapsed / 1e9f;
+
+		accumulator += elapsed;
+		int n = 0;
+		while (accumulator >= step && n < maxSteps) {
+			game.update(stepSeconds);
+			accumulator -= step;
+			n++;
+		}
+		if (accumulator >= step) {
+			dropped += accumulator / step;
+			accumulator %= step;
+		}
+		steps += n;
+		long updated = clock.nanoTime();
+
+		alpha = (float) accumulator / step;
+		game.render(alpha);
+		long rendered = clock.nanoTime();
+
+		if (swap != null) swap.run();
+		long swapped = clock.nanoTime();
+
+		long gc = gcTime();
+		long idle = limiter != null ? limiter.sync() : 0;
+		timings.record(elapsed, updated - start, rendered - updated, swapped - rendered, (gc - lastGC) * 1000000, idle);
+		lastGC = gc;
+	}
+
+	/**
+	 * @return milliseconds spent collecting garbage since the JVM started
+	 */
+	private static long gcTime() {
+		long total = 0;
+		for (int i = 0; i < collectors.size(); i++) {
+			total += Math.max(0, collectors.get(i).getCollectionTime());
+		}
+		return total;
+	}
+
+	/**
+	 * @return how far the last render was between updates, between [0 -> 1)
+	 */
+	public float getAlpha() {
+		return alpha;
+	}
+
+	/**
+	 * @return seconds per simulation step
+	 */
+	public float getStep() {
+		return stepSeconds;
+	}
+
+	/**
+	 * @return seconds between the starts of the last two frames
+	 */
+	public float getDeltaTime() {
+		return deltaTime;
+	}
+
+	/**
+	 * @return simulation steps run so far
+	 */
+	public long getStepCount() {
+		return steps;
+	}
+
+	/**
+	 * @return steps skipped because a frame needed more than the maximum
+	 */
+	public long getDroppedSteps() {
+		return dropped;
+	}
+
+	public FrameTimings getTimings() {
+		return timings;
+	}
+
+}
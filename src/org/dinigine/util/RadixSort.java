@@ -0,0 +1,86 @@
+package org.dinigine.util;
+
+/**
+ * LSD radix sort over 64-bit keys, 8 bits per pass.
+ */
+public final class RadixSort {
+
+	/** Static only */
+	private RadixSort() {}
+
+	/**
+	 * Sorts {@code keys} as unsigned values, moving {@code values} along with
+	 * them. The sort is stable.
+	 *
+	 * @param keys
+	 *            - the keys to sort
+	 * @param values
+	 *            - the values paired with each key
+	 * @param length
+	 *            - the number of entries to sort
+	 */
+	public static void sort(long[] keys, int[] values, int length) {
+		sort(keys, values, length, new long[length], new int[length]);
+	}
+
+	/**
+	 * Sorts {@code keys} as unsigned values, moving {@code values} along with
+	 * them. The sort is stable and, apart from a small
+	 * histogram, allocates nothing.
+	 *
+	 * @param keys
+	 *            - the keys to sort
+	 * @param values
+	 *            - the values paired with each key
+	 * @param length
+	 *            - the number of entries to sort
+	 * @param keyScratch
+	 *            - scratch space of at least {@code length} keys
+	 * @param valueScratch
+	 *            - scratch space of at least {@code length} values
+	 */
+	public static void sort(long[] keys, int[] values, int length, long[] keyScratch, int[] valueScratch) {
+		if (length < 2) return;
+
+		long[] srcKeys = keys, dstKeys = keyScratch;
+		int[] srcValues = values, dstValues = valueScratch;
+		int[] counts = new int[256];
+
+		for (int shift = 0; shift < 64; shift += 8) {
+			for (int i = 0; i < 256; i++) {
+				counts[i] = 0;
+			}
+			for (int i = 0; i < length; i++) {
+				counts[(int) (srcKeys[i] >>> shift) & 255]++;
+			}
+
+			// every key shares this byte, the pass wouldn't move anything
+			if (counts[(int) (srcKeys[0] >>> shift) & 255] == length) continue;
+
+			for (int i = 0, sum = 0; i < 256; i++) {
+				int c = counts[i];
+				counts[i] = sum;
+				sum += c;
+			}
+			for (int i = 0; i < length; i++) {
+				long key = srcKeys[i];
+				int dst = counts[(int) (key >>> shift) & 255]++;
+				dstKeys[dst] = key;
+				dstValues[dst] = srcValues[i];
+			}
+
+			long[] tk = srcKeys;
+			srcKeys = dstKeys;
+			dstKeys = tk;
+			int[] tv = srcValues;
+			srcValues = dstValues;
+			dstValues = tv;
+		}
+
+		if (srcKeys != keys) {
+			System.arraycopy(srcKeys, 0, keys, 0, length);
+			System.arraycopy(srcValues, 0, values, 0, length);
+		}
+	}
+
+}